@@ -0,0 +1,144 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.benchmark;
+
+import com.geophile.z.Index;
+import com.geophile.z.Space;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.index.RecordWithSpatialObject;
+import com.geophile.z.index.columnar.ColumnarSortedArray;
+import com.geophile.z.index.sortedarray.SortedArray;
+import com.geophile.z.space.SpaceImpl;
+import com.geophile.z.spatialobject.d2.Box;
+import com.geophile.z.spatialobject.d2.Point;
+import com.geophile.z.spatialobject.jts.JTS;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Generated datasets shared by the benchmarks. All spatial objects are located in SPACE, a 2d space with
+// 20 bits of resolution per dimension. Generation is seeded, so that every fork of a benchmark sees the same data.
+
+class BenchmarkData
+{
+    public static SpaceImpl space()
+    {
+        return SPACE;
+    }
+
+    public static List<SpatialObject> points(int n, long seed)
+    {
+        Random random = new Random(seed);
+        List<SpatialObject> points = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            points.add(new Point(random.nextDouble() * NX, random.nextDouble() * NY));
+        }
+        return points;
+    }
+
+    public static List<SpatialObject> boxes(int n, int maxSize, long seed)
+    {
+        Random random = new Random(seed);
+        List<SpatialObject> boxes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            boxes.add(box(random, maxSize));
+        }
+        return boxes;
+    }
+
+    // A regular polygon approximating a circle, with the given number of vertices.
+    public static SpatialObject polygon(double xCenter, double yCenter, double radius, int vertices)
+    {
+        Coordinate[] coordinates = new Coordinate[vertices + 1];
+        for (int i = 0; i < vertices; i++) {
+            double angle = (2 * Math.PI * i) / vertices;
+            coordinates[i] = new Coordinate(xCenter + radius * Math.cos(angle), yCenter + radius * Math.sin(angle));
+        }
+        coordinates[vertices] = coordinates[0];
+        return JTS.spatialObject(SPACE,
+                                 GEOMETRY_FACTORY.createPolygon(GEOMETRY_FACTORY.createLinearRing(coordinates), null));
+    }
+
+    public static Box box(Random random, int maxSize)
+    {
+        double width = 1 + random.nextInt(maxSize);
+        double height = 1 + random.nextInt(maxSize);
+        double xLo = random.nextDouble() * (NX - width);
+        double yLo = random.nextDouble() * (NY - height);
+        return new Box(xLo, xLo + width, yLo, yLo + height);
+    }
+
+    public static SpatialIndex<RecordWithSpatialObject> spatialIndex(IndexType indexType,
+                                                                     List<SpatialObject> spatialObjects)
+        throws IOException, InterruptedException
+    {
+        return spatialIndex(indexType.newIndex(), spatialObjects);
+    }
+
+    public static SpatialIndex<RecordWithSpatialObject> spatialIndex(Index<RecordWithSpatialObject> index,
+                                                                     List<SpatialObject> spatialObjects)
+        throws IOException, InterruptedException
+    {
+        SpatialIndex<RecordWithSpatialObject> spatialIndex = SpatialIndex.newSpatialIndex(SPACE, index);
+        RecordWithSpatialObject.Factory recordFactory = new RecordWithSpatialObject.Factory();
+        for (SpatialObject spatialObject : spatialObjects) {
+            spatialIndex.add(spatialObject, recordFactory.setup(spatialObject));
+        }
+        return spatialIndex;
+    }
+
+    // Class state
+
+    public static final double NX = 1_000_000;
+    public static final double NY = 1_000_000;
+    // Accepts all pairs, of records, or of a query object and a record.
+    public static final SpatialJoin.Filter<Object, Object> NO_FILTER =
+        new SpatialJoin.Filter<Object, Object>()
+        {
+            @Override
+            public boolean overlap(Object r, Object s)
+            {
+                return true;
+            }
+        };
+    private static final SpaceImpl SPACE = (SpaceImpl) Space.newSpace(new double[]{0, 0},
+                                                                       new double[]{NX, NY},
+                                                                       new int[]{20, 20});
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    // Inner classes
+
+    // The Index implementations compared by the benchmarks. Each holds RecordWithSpatialObjects.
+    public enum IndexType
+    {
+        SORTED_ARRAY
+        {
+            @Override
+            public Index<RecordWithSpatialObject> newIndex()
+            {
+                return new SortedArray.OfBaseRecord();
+            }
+        },
+
+        COLUMNAR_SORTED_ARRAY
+        {
+            @Override
+            public Index<RecordWithSpatialObject> newIndex()
+            {
+                return new ColumnarSortedArray.OfSpatialObjects();
+            }
+        };
+
+        public abstract Index<RecordWithSpatialObject> newIndex();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.benchmark;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.index.RecordWithSpatialObject;
+import com.geophile.z.space.SpaceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Cursor access to an Index of points: random access, (goTo followed by next), and a sequential scan
+// of SCAN_LENGTH records, (goTo followed by repeated next).
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CursorBenchmark
+{
+    @Setup
+    public void setup() throws IOException, InterruptedException
+    {
+        index = indexType.newIndex();
+        BenchmarkData.spatialIndex(index, BenchmarkData.points(n, 1234));
+        Random random = new Random(5678);
+        for (int i = 0; i < KEYS; i++) {
+            long[] cell = new long[]{random.nextInt(1 << 20), random.nextInt(1 << 20)};
+            keys[i] = index.newKeyRecord();
+            keys[i].z(space.shuffle(cell));
+        }
+        cursor = index.cursor();
+    }
+
+    @Benchmark
+    public Record goToNext() throws IOException, InterruptedException
+    {
+        cursor.goTo(nextKey());
+        return cursor.next();
+    }
+
+    @Benchmark
+    public void scan(Blackhole blackhole) throws IOException, InterruptedException
+    {
+        cursor.goTo(nextKey());
+        for (int i = 0; i < SCAN_LENGTH; i++) {
+            blackhole.consume(cursor.next());
+        }
+    }
+
+    private RecordWithSpatialObject nextKey()
+    {
+        return keys[next++ & (KEYS - 1)];
+    }
+
+    // Class state
+
+    private static final int KEYS = 1 << 12; // Must be a power of 2
+    private static final int SCAN_LENGTH = 100;
+
+    // Object state
+
+    @Param({"SORTED_ARRAY", "COLUMNAR_SORTED_ARRAY"})
+    public BenchmarkData.IndexType indexType;
+
+    @Param({"10000", "1000000"})
+    public int n;
+
+    private final SpaceImpl space = BenchmarkData.space();
+    private Index<RecordWithSpatialObject> index;
+    private Cursor<RecordWithSpatialObject> cursor;
+    private final RecordWithSpatialObject[] keys = new RecordWithSpatialObject[KEYS];
+    private int next;
+}
@@ -0,0 +1,114 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.benchmark;
+
+import com.geophile.z.SpatialObject;
+import com.geophile.z.space.SpaceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Decomposition of spatial objects into z-values, (SpaceImpl.decompose), by shape and maxZ. Points always
+// decompose to a single z-value, so maxZ only affects the boxes and polygons. The decomposition array is
+// returned so that its contents aren't dead code.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DecomposeBenchmark
+{
+    @Setup
+    public void setup()
+    {
+        space = BenchmarkData.space();
+        zs = new long[maxZ];
+        Random random = new Random(9001);
+        for (int i = 0; i < OBJECTS; i++) {
+            spatialObjects.add(shape.spatialObject(random));
+        }
+    }
+
+    @Benchmark
+    public long[] decompose()
+    {
+        SpatialObject spatialObject = spatialObjects.get(next++ & (OBJECTS - 1));
+        space.decompose(spatialObject, zs);
+        return zs;
+    }
+
+    // Class state
+
+    private static final int OBJECTS = 1 << 8; // Must be a power of 2
+    private static final int BOX_MAX_SIZE = 10_000;
+    private static final double POLYGON_RADIUS = 5_000;
+    private static final int POLYGON_VERTICES = 200;
+
+    // Object state
+
+    @Param({"BOX", "POINT", "POLYGON"})
+    public Shape shape;
+
+    @Param({"1", "4", "8", "16", "32"})
+    public int maxZ;
+
+    private SpaceImpl space;
+    private long[] zs;
+    private final List<SpatialObject> spatialObjects = new ArrayList<>();
+    private int next;
+
+    // Inner classes
+
+    public enum Shape
+    {
+        BOX
+        {
+            @Override
+            SpatialObject spatialObject(Random random)
+            {
+                return BenchmarkData.box(random, BOX_MAX_SIZE);
+            }
+        },
+
+        POINT
+        {
+            @Override
+            SpatialObject spatialObject(Random random)
+            {
+                return BenchmarkData.points(1, random.nextLong()).get(0);
+            }
+        },
+
+        POLYGON
+        {
+            @Override
+            SpatialObject spatialObject(Random random)
+            {
+                double x = POLYGON_RADIUS + random.nextDouble() * (BenchmarkData.NX - 2 * POLYGON_RADIUS);
+                double y = POLYGON_RADIUS + random.nextDouble() * (BenchmarkData.NY - 2 * POLYGON_RADIUS);
+                return BenchmarkData.polygon(x, y, POLYGON_RADIUS, POLYGON_VERTICES);
+            }
+        };
+
+        abstract SpatialObject spatialObject(Random random);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.benchmark;
+
+import com.geophile.z.space.SpaceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Interleaving of cell coordinates into a z-value, (SpaceImpl.shuffle), and back, (SpaceImpl.unshuffle). Cycles
+// through precomputed random cells so that the table lookups aren't all for the same bytes. The implementation
+// benchmarked is the one SpaceImpl picks, which can be forced using the shuffle system property, e.g.
+// -Dshuffle=table.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ShuffleBenchmark
+{
+    @Setup
+    public void setup()
+    {
+        space = BenchmarkData.space();
+        Random random = new Random(419);
+        for (int i = 0; i < CELLS; i++) {
+            cells[i][0] = random.nextInt(1 << 20);
+            cells[i][1] = random.nextInt(1 << 20);
+            zs[i] = space.shuffle(cells[i]);
+        }
+    }
+
+    @Benchmark
+    public long shuffle()
+    {
+        long[] cell = cells[next++ & (CELLS - 1)];
+        return space.shuffle(cell);
+    }
+
+    @Benchmark
+    public long unshuffle()
+    {
+        space.unshuffle(zs[next++ & (CELLS - 1)], cell);
+        return cell[0] + cell[1];
+    }
+
+    // Class state
+
+    private static final int CELLS = 1 << 12; // Must be a power of 2
+
+    // Object state
+
+    private SpaceImpl space;
+    private final long[][] cells = new long[CELLS][2];
+    private final long[] zs = new long[CELLS];
+    private final long[] cell = new long[2];
+    private int next;
+}
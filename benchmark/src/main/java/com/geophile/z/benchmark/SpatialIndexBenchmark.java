@@ -0,0 +1,96 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.benchmark;
+
+import com.geophile.z.Record;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.index.RecordWithSpatialObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// SpatialIndex.add and SpatialIndex.remove of n boxes. Each invocation starts with a new spatial index:
+// empty for add, loaded with the boxes for remove. Boxes are removed in the order in which they were added.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(2)
+public class SpatialIndexBenchmark
+{
+    @Setup(Level.Trial)
+    public void setupTrial()
+    {
+        boxes = BenchmarkData.boxes(n, BOX_MAX_SIZE, 31337);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() throws IOException, InterruptedException
+    {
+        empty = SpatialIndex.newSpatialIndex(BenchmarkData.space(), indexType.newIndex());
+        loaded = BenchmarkData.spatialIndex(indexType, boxes);
+    }
+
+    @Benchmark
+    public SpatialIndex<RecordWithSpatialObject> add() throws IOException, InterruptedException
+    {
+        RecordWithSpatialObject.Factory recordFactory = new RecordWithSpatialObject.Factory();
+        for (SpatialObject box : boxes) {
+            empty.add(box, recordFactory.setup(box));
+        }
+        return empty;
+    }
+
+    @Benchmark
+    public SpatialIndex<RecordWithSpatialObject> remove() throws IOException, InterruptedException
+    {
+        for (final SpatialObject box : boxes) {
+            loaded.remove(box,
+                          new Record.Filter<RecordWithSpatialObject>()
+                          {
+                              @Override
+                              public boolean select(RecordWithSpatialObject record)
+                              {
+                                  return record.spatialObject() == box;
+                              }
+                          });
+        }
+        return loaded;
+    }
+
+    // Class state
+
+    private static final int BOX_MAX_SIZE = 10_000;
+
+    // Object state
+
+    @Param({"SORTED_ARRAY", "COLUMNAR_SORTED_ARRAY"})
+    public BenchmarkData.IndexType indexType;
+
+    @Param({"10000", "100000"})
+    public int n;
+
+    private List<SpatialObject> boxes;
+    private SpatialIndex<RecordWithSpatialObject> empty;
+    private SpatialIndex<RecordWithSpatialObject> loaded;
+}
@@ -0,0 +1,124 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.benchmark;
+
+import com.geophile.z.Pair;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.index.RecordWithSpatialObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Spatial join of points with boxes, (the pair iterator, and the push-based join), and of single query boxes with the points,
+// (the query iterator). No filter is applied, so the benchmarks measure the join itself, not refinement.
+// Every output is consumed.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SpatialJoinBenchmark
+{
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException
+    {
+        points = BenchmarkData.spatialIndex(indexType, BenchmarkData.points(nPoints, 2718));
+        boxes = BenchmarkData.spatialIndex(indexType, BenchmarkData.boxes(nBoxes, BOX_MAX_SIZE, 3141));
+        queries = BenchmarkData.boxes(QUERIES, QUERY_MAX_SIZE, 1618);
+        spatialJoin = SpatialJoin.newSpatialJoin(duplicates, BenchmarkData.NO_FILTER);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public void pairs(Blackhole blackhole) throws IOException, InterruptedException
+    {
+        Iterator<Pair<RecordWithSpatialObject, RecordWithSpatialObject>> iterator =
+            spatialJoin.iterator(points, boxes);
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public void pushPairs(final Blackhole blackhole) throws IOException, InterruptedException
+    {
+        spatialJoin.join(points,
+                         boxes,
+                         new SpatialJoin.PairConsumer<RecordWithSpatialObject, RecordWithSpatialObject>()
+                         {
+                             @Override
+                             public boolean accept(RecordWithSpatialObject left, RecordWithSpatialObject right)
+                             {
+                                 blackhole.consume(left);
+                                 blackhole.consume(right);
+                                 return true;
+                             }
+                         });
+    }
+
+    @Benchmark
+    public void query(Blackhole blackhole) throws IOException, InterruptedException
+    {
+        SpatialObject query = queries.get(next++ & (QUERIES - 1));
+        Iterator<RecordWithSpatialObject> iterator = spatialJoin.iterator(query, points);
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    // Class state
+
+    private static final int BOX_MAX_SIZE = 10_000;
+    private static final int QUERIES = 1 << 10; // Must be a power of 2
+    private static final int QUERY_MAX_SIZE = 20_000;
+
+    // Object state
+
+    @Param({"SORTED_ARRAY", "COLUMNAR_SORTED_ARRAY"})
+    public BenchmarkData.IndexType indexType;
+
+    @Param({"INCLUDE", "EXCLUDE"})
+    public SpatialJoin.Duplicates duplicates;
+
+    @Param({"1000000"})
+    public int nPoints;
+
+    @Param({"10000"})
+    public int nBoxes;
+
+    private SpatialIndex<RecordWithSpatialObject> points;
+    private SpatialIndex<RecordWithSpatialObject> boxes;
+    private List<SpatialObject> queries;
+    private SpatialJoin spatialJoin;
+    private int next;
+}
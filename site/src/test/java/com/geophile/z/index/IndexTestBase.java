@@ -79,11 +79,134 @@ public abstract class IndexTestBase
         }
     }
 
+    @Test
+    public void testGoToDuplicateKeys() throws Exception
+    {
+        int nObjects = 100;
+        int copies = 8;
+        Index<TestRecord> index = newIndex();
+        try {
+            load(index, nObjects, copies);
+            for (long x = 0; x < nObjects + copies - 1; x++) {
+                // Up to copies records share the z-value. goTo must position the cursor before all of them.
+                long z = z(x * GAP);
+                Cursor<TestRecord> cursor = newCursor(index, z);
+                TestRecord record;
+                long count = 0;
+                while ((record = cursor.next()) != null && record.z() == z) {
+                    count++;
+                }
+                assertEquals(Math.min(x, nObjects - 1) - Math.max(0, x - copies + 1) + 1, count);
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    @Test
+    public void testGoToSequence() throws Exception
+    {
+        int nObjects = 100;
+        int copies = 4;
+        // z-values are z(x * GAP), for x in [0, nX)
+        int nX = nObjects + copies - 1;
+        Index<TestRecord> index = newIndex();
+        try {
+            load(index, nObjects, copies);
+            // Reuse one cursor for goTos by varying distances, forward and then backward, to keys that are present
+            // and keys that are not.
+            Cursor<TestRecord> cursor = index.cursor();
+            for (int step : new int[]{1, 3, 17, 200}) {
+                List<Long> keys = new ArrayList<>();
+                for (long k = 0; k <= nX * GAP; k += step * GAP / 2) {
+                    keys.add(k);
+                }
+                List<Long> reversed = new ArrayList<>(keys);
+                Collections.reverse(reversed);
+                keys.addAll(reversed);
+                for (long k : keys) {
+                    cursor.goTo(key(index, z(k)));
+                    TestRecord record = cursor.next();
+                    long x = (k + GAP - 1) / GAP;
+                    if (x < nX) {
+                        assertEquals(z(x * GAP), record.z());
+                    } else {
+                        assertNull(record);
+                    }
+                }
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
+    @Test
+    public void testNextBatch() throws Exception
+    {
+        int nObjects = 500;
+        int copies = 3;
+        Index<TestRecord> index = newIndex();
+        try {
+            load(index, nObjects, copies);
+            // Delete every third record, so that batches span gaps, (e.g. tombstones).
+            Cursor<TestRecord> cursor = newCursor(index, SpaceImpl.Z_MIN);
+            int position = 0;
+            while (cursor.next() != null) {
+                if (position++ % 3 == 0) {
+                    cursor.deleteCurrent();
+                }
+            }
+            cursor = rescanCursor(index, cursor);
+            cursor.goTo(key(index, SpaceImpl.Z_MIN));
+            List<TestRecord> expected = new ArrayList<>();
+            TestRecord record;
+            while ((record = cursor.next()) != null) {
+                TestRecord copy = index.newRecord();
+                record.copyTo(copy);
+                expected.add(copy);
+            }
+            for (int batchSize : new int[]{1, 7, 64, expected.size() + 1}) {
+                TestRecord[] records = new TestRecord[batchSize];
+                for (int i = 0; i < batchSize; i++) {
+                    records[i] = index.newRecord();
+                }
+                long[] zs = new long[batchSize];
+                cursor = newCursor(index, SpaceImpl.Z_MIN);
+                int count = 0;
+                int n;
+                do {
+                    n = cursor.nextBatch(zs, records, batchSize);
+                    for (int i = 0; i < n; i++) {
+                        assertEquals(records[i].z(), zs[i]);
+                        assertEquals(expected.get(count++), records[i]);
+                    }
+                    // Alternate batches with next()
+                    if (n == batchSize && (record = cursor.next()) != null) {
+                        assertEquals(expected.get(count++), record);
+                    }
+                } while (n == batchSize);
+                assertEquals(expected.size(), count);
+                assertEquals(0, cursor.nextBatch(zs, records, batchSize));
+            }
+        } finally {
+            shutdown();
+        }
+    }
+
     protected abstract Index<TestRecord> newIndex() throws IOException, InterruptedException;
 
     protected void commit()
     {}
 
+    // Returns a cursor for rescanning an index after deleting records through the given cursor. The default
+    // reuses the cursor. An index whose cursors see a snapshot, and so never see later deletions, must override
+    // this to return a new cursor.
+    protected Cursor<TestRecord> rescanCursor(Index<TestRecord> index, Cursor<TestRecord> cursor)
+        throws IOException, InterruptedException
+    {
+        return cursor;
+    }
+
     protected void shutdown() throws IOException, InterruptedException
     {}
 
@@ -243,6 +366,7 @@ public abstract class IndexTestBase
                     cursor.deleteCurrent();
                     id++;
                 }
+                cursor = rescanCursor(index, cursor);
                 cursor.goTo(key(index, SpaceImpl.Z_MIN));
                 assertNull(cursor.next());
                 assertEquals(id, nObjects);
@@ -263,12 +387,14 @@ public abstract class IndexTestBase
                 }
                 // Check odd ids remain
                 id = 1;
+                cursor = rescanCursor(index, cursor);
                 cursor.goTo(key(index, SpaceImpl.Z_MIN));
                 while ((record = cursor.next()) != null) {
                     assertEquals(z(id * GAP), record.z());
                     cursor.deleteCurrent();
                     id += 2;
                 }
+                cursor = rescanCursor(index, cursor);
                 cursor.goTo(key(index, SpaceImpl.Z_MIN));
                 assertNull(cursor.next());
                 assertEquals(id, nObjects + 1);
@@ -0,0 +1,73 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.columnar;
+
+import com.geophile.z.Index;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.IndexTestBase;
+
+import java.util.Arrays;
+
+public class ColumnarSortedArrayTest extends IndexTestBase
+{
+    @Override
+    protected Index<TestRecord> newIndex()
+    {
+        return
+            new ColumnarSortedArray<TestRecord>()
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+
+                @Override
+                protected void ensurePayloadCapacity(int capacity)
+                {
+                    spatialObjects = Arrays.copyOf(spatialObjects, capacity);
+                    soids = Arrays.copyOf(soids, capacity);
+                }
+
+                @Override
+                protected void storePayload(int position, TestRecord record)
+                {
+                    spatialObjects[position] = record.spatialObject();
+                    soids[position] = record.soid();
+                }
+
+                @Override
+                protected void loadPayload(int position, TestRecord record)
+                {
+                    record.spatialObject(spatialObjects[position]);
+                    record.soid(soids[position]);
+                }
+
+                @Override
+                protected void movePayload(int from, int to, int count)
+                {
+                    System.arraycopy(spatialObjects, from, spatialObjects, to, count);
+                    System.arraycopy(soids, from, soids, to, count);
+                }
+
+                @Override
+                protected void swapPayload(int i, int j)
+                {
+                    SpatialObject spatialObject = spatialObjects[i];
+                    spatialObjects[i] = spatialObjects[j];
+                    spatialObjects[j] = spatialObject;
+                    int soid = soids[i];
+                    soids[i] = soids[j];
+                    soids[j] = soid;
+                }
+
+                private SpatialObject[] spatialObjects = new SpatialObject[0];
+                private int[] soids = new int[0];
+            };
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.mapped;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.IndexTestBase;
+import com.geophile.z.index.TestSpatialObject;
+import com.geophile.z.space.SpaceImpl;
+import com.geophile.z.spatialobject.d2.Box;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MappedIndexTest extends IndexTestBase
+{
+    @Test
+    public void testReopen() throws IOException, InterruptedException
+    {
+        File directory = newDirectory();
+        try {
+            MappedIndex.OfSpatialObjects index =
+                new MappedIndex.OfSpatialObjects(directory, SEGMENT_SIZE, BOX_FACTORY);
+            MappedRecord.Factory recordFactory = new MappedRecord.Factory();
+            // Add in descending z order so that the directory has to be sorted.
+            for (int i = N - 1; i >= 0; i--) {
+                MappedRecord record = recordFactory.setup(box(i)).newRecord();
+                record.z(z(i));
+                index.add(record);
+            }
+            // Remove the multiples of 3, through a cursor.
+            Cursor<MappedRecord> cursor = index.cursor();
+            MappedRecord key = index.newKeyRecord();
+            key.z(SpaceImpl.Z_MIN);
+            cursor.goTo(key);
+            MappedRecord record;
+            int i = 0;
+            while ((record = cursor.next()) != null) {
+                if (i % 3 == 0) {
+                    assertTrue(cursor.deleteCurrent());
+                    assertFalse(cursor.deleteCurrent());
+                }
+                i++;
+            }
+            // Deleted entries remain in the directory until it is compacted.
+            assertEquals(N, index.entries());
+            assertEquals(N - (N + 2) / 3, index.size());
+            index.close();
+            // Reopen and check the surviving records, and their serialized spatial objects.
+            index = new MappedIndex.OfSpatialObjects(directory, BOX_FACTORY);
+            assertEquals(N - (N + 2) / 3, index.size());
+            cursor = index.cursor();
+            // Starting a cursor compacted the directory.
+            assertEquals(N - (N + 2) / 3, index.entries());
+            cursor.goTo(key);
+            List<Integer> found = new ArrayList<>();
+            while ((record = cursor.next()) != null) {
+                ByteBuffer bytes = record.spatialObjectBytes();
+                int id = (int) ((Box) record.spatialObject()).xLo();
+                found.add(id);
+                assertEquals(z(id), record.z());
+                Box expected = box(id);
+                ByteBuffer expectedBytes = ByteBuffer.allocate(100);
+                expected.writeTo(expectedBytes);
+                expectedBytes.flip();
+                assertEquals(expectedBytes, bytes);
+                assertEquals(expected, record.spatialObject());
+            }
+            assertEquals(N - (N + 2) / 3, found.size());
+            for (int id : found) {
+                assertTrue(id % 3 != 0);
+            }
+            // Reopened index can be updated.
+            MappedRecord added = recordFactory.setup(box(0)).newRecord();
+            added.z(z(0));
+            index.add(added);
+            cursor = index.cursor();
+            cursor.goTo(key);
+            record = cursor.next();
+            assertEquals(z(0), record.z());
+            assertEquals(box(0), record.spatialObject());
+            index.close();
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testRemoveDuringScan() throws IOException, InterruptedException
+    {
+        File directory = newDirectory();
+        try {
+            MappedIndex.OfSpatialObjects index =
+                new MappedIndex.OfSpatialObjects(directory, SEGMENT_SIZE, BOX_FACTORY);
+            MappedRecord.Factory recordFactory = new MappedRecord.Factory();
+            for (int i = 0; i < N; i++) {
+                MappedRecord record = recordFactory.setup(box(i)).newRecord();
+                record.z(z(i));
+                index.add(record);
+            }
+            Cursor<MappedRecord> cursor = index.cursor();
+            MappedRecord key = index.newKeyRecord();
+            key.z(SpaceImpl.Z_MIN);
+            cursor.goTo(key);
+            // While scanning, remove the odd records ahead of the cursor, enough to need compaction. Removals
+            // don't compact, so the cursor isn't disturbed.
+            List<Integer> found = new ArrayList<>();
+            MappedRecord record;
+            while ((record = cursor.next()) != null) {
+                int id = (int) ((Box) record.spatialObject()).xLo();
+                found.add(id);
+                if (id + 1 < N) {
+                    assertTrue(index.remove(z(id + 1), ANY_RECORD));
+                }
+            }
+            assertEquals(N, index.entries());
+            List<Integer> expected = new ArrayList<>();
+            for (int id = 0; id < N; id += 2) {
+                expected.add(id);
+            }
+            assertEquals(expected, found);
+            index.cursor();
+            assertEquals(expected.size(), index.entries());
+            index.close();
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testNotAnIndex() throws IOException
+    {
+        File directory = newDirectory();
+        try {
+            Files.write(new File(directory, "keys").toPath(), new byte[100]);
+            try {
+                new MappedIndex.OfSpatialObjects(directory, BOX_FACTORY);
+                assertTrue(false);
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Override
+    protected Index<TestRecord> newIndex() throws IOException
+    {
+        MappedIndex<TestRecord> index =
+            new MappedIndex<TestRecord>(newDirectory(), SEGMENT_SIZE)
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+
+                @Override
+                protected void writePayload(TestRecord record, ByteBuffer buffer)
+                {
+                    buffer.putInt(record.soid());
+                    record.spatialObject().writeTo(buffer);
+                }
+
+                @Override
+                protected void readPayload(ByteBuffer payload, TestRecord record)
+                {
+                    record.soid(payload.getInt());
+                    TestSpatialObject spatialObject = new TestSpatialObject();
+                    spatialObject.readFrom(payload);
+                    record.spatialObject(spatialObject);
+                }
+            };
+        indexes.add(index);
+        return index;
+    }
+
+    @Override
+    protected void shutdown() throws IOException
+    {
+        for (MappedIndex<TestRecord> index : indexes) {
+            index.close();
+        }
+        indexes.clear();
+        for (File directory : directories) {
+            delete(directory);
+        }
+        directories.clear();
+    }
+
+    private File newDirectory() throws IOException
+    {
+        File directory = Files.createTempDirectory("mappedindex").toFile();
+        directories.add(directory);
+        return directory;
+    }
+
+    private static void delete(File directory)
+    {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+        directory.delete();
+    }
+
+    private static long z(int id)
+    {
+        return SpaceImpl.z(((long) id) << 32, 32);
+    }
+
+    private static Box box(int id)
+    {
+        return new Box(id, id + 1, 2 * id, 2 * id + 1);
+    }
+
+    // Small enough that records are written in many data segments.
+    private static final int SEGMENT_SIZE = MappedFile.MIN_SEGMENT_SIZE;
+    private static final int N = 1000;
+    private static final MappedRecord.SpatialObjectFactory BOX_FACTORY =
+        new MappedRecord.SpatialObjectFactory()
+        {
+            @Override
+            public SpatialObject newSpatialObject()
+            {
+                return new Box();
+            }
+        };
+
+    private static final Record.Filter<MappedRecord> ANY_RECORD =
+        new Record.Filter<MappedRecord>()
+        {
+            @Override
+            public boolean select(MappedRecord record)
+            {
+                return true;
+            }
+        };
+
+    private final List<MappedIndex<TestRecord>> indexes = new ArrayList<>();
+    private final List<File> directories = new ArrayList<>();
+}
@@ -0,0 +1,177 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.skiplist;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.Space;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.IndexTestBase;
+import com.geophile.z.space.SpaceImpl;
+import com.geophile.z.space.SpatialIndexImpl;
+import com.geophile.z.spatialjoin.BoxOverlapTester;
+import com.geophile.z.spatialjoin.OverlapTester;
+import com.geophile.z.spatialobject.d2.Box;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SkipListIndexTest extends IndexTestBase
+{
+    // Spatial joins run while other threads add and remove spatial objects. The joins must find exactly the
+    // spatial objects that are present throughout.
+    @Test
+    public void testConcurrentUpdates() throws Exception
+    {
+        final SpatialIndex<TestRecord> spatialIndex = SpatialIndex.newSpatialIndex(SPACE, newIndex());
+        TestRecord.Factory recordFactory = new TestRecord.Factory();
+        List<Box> stableBoxes = new ArrayList<>();
+        Random random = new Random(271828);
+        for (int id = 0; id < N_STABLE; id++) {
+            Box box = randomBox(random);
+            stableBoxes.add(box);
+            spatialIndex.add(box, recordFactory.setup(box, id));
+        }
+        final AtomicBoolean stop = new AtomicBoolean(false);
+        final AtomicReference<Throwable> writerFailure = new AtomicReference<>();
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < N_WRITERS; w++) {
+            final int writer = w;
+            Thread thread =
+                new Thread()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try {
+                            Random random = new Random(writer);
+                            TestRecord.Factory recordFactory = new TestRecord.Factory();
+                            int id = (writer + 1) * TRANSIENT_ID_BASE;
+                            while (!stop.get()) {
+                                Box box = randomBox(random);
+                                spatialIndex.add(box, recordFactory.setup(box, id));
+                                assertTrue(spatialIndex.remove(box, soidFilter(id)));
+                                id++;
+                            }
+                        } catch (Throwable e) {
+                            writerFailure.set(e);
+                        }
+                    }
+                };
+            writers.add(thread);
+            thread.start();
+        }
+        try {
+            SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.EXCLUDE, FILTER);
+            for (int q = 0; q < N_QUERIES; q++) {
+                Box query = randomBox(random);
+                Set<Integer> expected = new HashSet<>();
+                for (int id = 0; id < N_STABLE; id++) {
+                    if (OVERLAP_TESTER.overlap(query, stableBoxes.get(id))) {
+                        expected.add(id);
+                    }
+                }
+                Set<Integer> actual = new HashSet<>();
+                Iterator<TestRecord> iterator = spatialJoin.iterator(query, spatialIndex);
+                while (iterator.hasNext()) {
+                    int id = iterator.next().soid();
+                    if (id < N_STABLE) {
+                        actual.add(id);
+                    }
+                }
+                assertEquals(expected, actual);
+            }
+        } finally {
+            stop.set(true);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+        assertNull(writerFailure.get());
+        // Only the stable spatial objects remain.
+        Index<TestRecord> index = ((SpatialIndexImpl<TestRecord>) spatialIndex).index();
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(SpaceImpl.Z_MIN);
+        cursor.goTo(key);
+        TestRecord record;
+        while ((record = cursor.next()) != null) {
+            assertTrue(record.soid() < N_STABLE);
+        }
+    }
+
+    @Override
+    protected Index<TestRecord> newIndex()
+    {
+        return
+            new SkipListIndex<TestRecord>()
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+            };
+    }
+
+    private static Box randomBox(Random random)
+    {
+        double xLo = random.nextInt(NX - MAX_SIZE);
+        double yLo = random.nextInt(NY - MAX_SIZE);
+        return new Box(xLo, xLo + 1 + random.nextInt(MAX_SIZE), yLo, yLo + 1 + random.nextInt(MAX_SIZE));
+    }
+
+    private static Record.Filter<TestRecord> soidFilter(final int soid)
+    {
+        return
+            new Record.Filter<TestRecord>()
+            {
+                @Override
+                public boolean select(TestRecord record)
+                {
+                    return record.soid() == soid;
+                }
+            };
+    }
+
+    private static final int N_STABLE = 2_000;
+    private static final int N_WRITERS = 2;
+    private static final int N_QUERIES = 1_000;
+    private static final int TRANSIENT_ID_BASE = 1_000_000;
+    private static final int NX = 1_000_000;
+    private static final int NY = 1_000_000;
+    private static final int MAX_SIZE = 50_000;
+    private static final Space SPACE = Space.newSpace(new double[]{0, 0},
+                                                      new double[]{NX, NY},
+                                                      new int[]{20, 20});
+    private static final OverlapTester OVERLAP_TESTER = new BoxOverlapTester();
+    private static final SpatialJoin.Filter<SpatialObject, TestRecord> FILTER =
+        new SpatialJoin.Filter<SpatialObject, TestRecord>()
+        {
+            @Override
+            public boolean overlap(SpatialObject query, TestRecord record)
+            {
+                return OVERLAP_TESTER.overlap(query, record.spatialObject());
+            }
+        };
+}
@@ -0,0 +1,131 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.sortedarray;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.IndexTestBase;
+import com.geophile.z.space.SpaceImpl;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SnapshotSortedArrayTest extends IndexTestBase
+{
+    // A cursor sees the generation that was current when it was created, regardless of later updates.
+    @Test
+    public void testSnapshot() throws IOException, InterruptedException
+    {
+        SnapshotSortedArray<TestRecord> index = (SnapshotSortedArray<TestRecord>) newIndex();
+        for (int id = 0; id < N; id++) {
+            index.add(record(id));
+        }
+        Cursor<TestRecord> before = cursor(index);
+        for (int id = 0; id < N; id += 2) {
+            assertTrue(index.remove(id, soidFilter(id)));
+        }
+        for (int id = N; id < 2 * N; id++) {
+            index.add(record(id));
+        }
+        Cursor<TestRecord> after = cursor(index);
+        List<Integer> expected = new ArrayList<>();
+        for (int id = 0; id < N; id++) {
+            expected.add(id);
+        }
+        assertEquals(expected, soids(before));
+        expected.clear();
+        for (int id = 0; id < 2 * N; id++) {
+            if (id >= N || id % 2 == 1) {
+                expected.add(id);
+            }
+        }
+        assertEquals(expected, soids(after));
+        // Deleting through a cursor on an old generation is not possible once the record has been removed.
+        Cursor<TestRecord> old = cursor(index);
+        old.goTo(key(0));
+        TestRecord record = old.next();
+        assertEquals(1, record.soid());
+        assertTrue(index.remove(1, soidFilter(1)));
+        index.publish();
+        assertFalse(old.deleteCurrent());
+    }
+
+    @Override
+    protected Index<TestRecord> newIndex()
+    {
+        return
+            new SnapshotSortedArray<TestRecord>()
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+            };
+    }
+
+    @Override
+    protected Cursor<TestRecord> rescanCursor(Index<TestRecord> index, Cursor<TestRecord> cursor)
+        throws IOException, InterruptedException
+    {
+        return index.cursor();
+    }
+
+    private Cursor<TestRecord> cursor(Index<TestRecord> index) throws IOException, InterruptedException
+    {
+        Cursor<TestRecord> cursor = index.cursor();
+        cursor.goTo(key(SpaceImpl.Z_MIN));
+        return cursor;
+    }
+
+    private List<Integer> soids(Cursor<TestRecord> cursor) throws IOException, InterruptedException
+    {
+        List<Integer> soids = new ArrayList<>();
+        TestRecord record;
+        while ((record = cursor.next()) != null) {
+            soids.add(record.soid());
+        }
+        return soids;
+    }
+
+    private TestRecord record(int id)
+    {
+        TestRecord record = key(id);
+        record.soid(id);
+        return record;
+    }
+
+    private TestRecord key(long z)
+    {
+        TestRecord key = new TestRecord();
+        key.z(z);
+        return key;
+    }
+
+    private Record.Filter<TestRecord> soidFilter(final int soid)
+    {
+        return
+            new Record.Filter<TestRecord>()
+            {
+                @Override
+                public boolean select(TestRecord record)
+                {
+                    return record.soid() == soid;
+                }
+            };
+    }
+
+    private static final int N = 100;
+}
@@ -12,12 +12,60 @@
 
 package com.geophile.z.index.sortedarray;
 
+import com.geophile.z.Cursor;
 import com.geophile.z.Index;
 import com.geophile.z.TestRecord;
 import com.geophile.z.index.IndexTestBase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
 
 public class SortedArrayTest extends IndexTestBase
 {
+    // Adds between scans are sorted and merged into the records already sorted. The result must be the same
+    // as sorting everything: in z-order, and records with the same z-value in the order in which they were added.
+    @Test
+    public void testInterleavedAddsAndScans() throws IOException, InterruptedException
+    {
+        Random random = new Random(314159);
+        Index<TestRecord> index = newIndex();
+        List<TestRecord> expected = new ArrayList<>();
+        int id = 0;
+        for (int batch = 0; batch < 200; batch++) {
+            int batchSize = random.nextInt(batch < 100 ? 5 : 500);
+            for (int i = 0; i < batchSize; i++) {
+                TestRecord record = new TestRecord();
+                record.z(random.nextInt(1000));
+                record.soid(id++);
+                index.add(record);
+                expected.add(record);
+            }
+            // soids are assigned in the order of adds, so TestRecord.COMPARATOR orders records with the same z-value
+            // by order of addition.
+            Collections.sort(expected, TestRecord.COMPARATOR);
+            List<TestRecord> actual = new ArrayList<>();
+            Cursor<TestRecord> cursor = index.cursor();
+            TestRecord key = index.newKeyRecord();
+            key.z(0);
+            cursor.goTo(key);
+            TestRecord record;
+            while ((record = cursor.next()) != null) {
+                actual.add(record);
+            }
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).z(), actual.get(i).z());
+                assertEquals(expected.get(i).soid(), actual.get(i).soid());
+            }
+        }
+    }
+
     @Override
     protected Index<TestRecord> newIndex()
     {
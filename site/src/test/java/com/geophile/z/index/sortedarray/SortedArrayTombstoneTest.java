@@ -0,0 +1,242 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.sortedarray;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.IndexTestBase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Runs the Index tests against a SortedArray that deletes using tombstones, and checks background compaction.
+
+public class SortedArrayTombstoneTest extends IndexTestBase
+{
+    @Test
+    public void testBackgroundCompaction() throws IOException, InterruptedException
+    {
+        // Compactions are queued, and run when the test says so.
+        final List<Runnable> compactions = new ArrayList<>();
+        Executor executor =
+            new Executor()
+            {
+                @Override
+                public void execute(Runnable compaction)
+                {
+                    compactions.add(compaction);
+                }
+            };
+        SortedArray<TestRecord> index = newSortedArray(THRESHOLD, executor);
+        for (int id = 0; id < N; id++) {
+            index.add(record(id));
+        }
+        index.cursor();
+        // Delete enough records to start a compaction, and then some more.
+        int id = 0;
+        while (compactions.isEmpty()) {
+            assertTrue(index.remove(id, soidFilter(id)));
+            id++;
+        }
+        int nDeletedBeforeCompaction = id;
+        assertEquals(N, index.n);
+        for (int i = 0; i < MORE; i++) {
+            assertTrue(index.remove(id, soidFilter(id)));
+            id++;
+        }
+        assertFalse(index.remove(0, soidFilter(0)));
+        // Records added while the compaction is running.
+        for (int i = 0; i < MORE; i++) {
+            index.add(record(N + i));
+        }
+        assertEquals(1, compactions.size());
+        compactions.get(0).run();
+        // add swaps in the compacted array.
+        index.add(record(N + MORE));
+        assertEquals(N + MORE + 1 - nDeletedBeforeCompaction, index.n);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = id; i <= N + MORE; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, soids(index));
+        // Records deleted after the compaction started are still deleted.
+        for (int i = nDeletedBeforeCompaction; i < id; i++) {
+            assertFalse(index.remove(i, soidFilter(i)));
+        }
+    }
+
+    @Test
+    public void testCursorDoesNotSwapInCompaction() throws IOException, InterruptedException
+    {
+        final List<Runnable> compactions = new ArrayList<>();
+        Executor executor =
+            new Executor()
+            {
+                @Override
+                public void execute(Runnable compaction)
+                {
+                    compactions.add(compaction);
+                }
+            };
+        SortedArray<TestRecord> index = newSortedArray(THRESHOLD, executor);
+        for (int id = 0; id < N; id++) {
+            index.add(record(id));
+        }
+        index.cursor();
+        int id = 0;
+        while (compactions.isEmpty()) {
+            assertTrue(index.remove(id, soidFilter(id)));
+            id++;
+        }
+        compactions.get(0).run();
+        // Creating a cursor doesn't swap in the compacted array, which would move records under open cursors.
+        Cursor<TestRecord> cursor = index.cursor();
+        cursor.goTo(record(0));
+        assertEquals(id, cursor.next().soid());
+        index.cursor().close();
+        assertEquals(N, index.n);
+        assertEquals(id + 1, cursor.next().soid());
+        // remove does.
+        assertTrue(index.remove(id, soidFilter(id)));
+        assertEquals(N - id, index.n);
+    }
+
+    @Test
+    public void testCursorSkipsTombstones() throws IOException, InterruptedException
+    {
+        SortedArray<TestRecord> index = newSortedArray(1.0, null);
+        for (int id = 0; id < N; id++) {
+            index.add(record(id));
+        }
+        Cursor<TestRecord> cursor = index.cursor();
+        cursor.goTo(record(0));
+        TestRecord record;
+        while ((record = cursor.next()) != null) {
+            if (record.soid() % 3 != 0) {
+                assertTrue(cursor.deleteCurrent());
+                assertFalse(cursor.deleteCurrent());
+            }
+        }
+        // Nothing has been compacted.
+        assertEquals(N, index.n);
+        List<Integer> expected = new ArrayList<>();
+        for (int id = 0; id < N; id += 3) {
+            expected.add(id);
+        }
+        assertEquals(expected, soids(index));
+    }
+
+    @Test
+    public void testCursorDeleteCompacts() throws IOException, InterruptedException
+    {
+        SortedArray<TestRecord> index = newSortedArray(THRESHOLD, null);
+        for (int id = 0; id < N; id++) {
+            index.add(record(id));
+        }
+        Cursor<TestRecord> cursor = index.cursor();
+        cursor.goTo(record(0));
+        TestRecord record;
+        List<Integer> expected = new ArrayList<>();
+        int compactions = 0;
+        while ((record = cursor.next()) != null) {
+            if (record.soid() % 3 == 0) {
+                expected.add(record.soid());
+            } else {
+                int n = index.n;
+                assertTrue(cursor.deleteCurrent());
+                assertFalse(cursor.deleteCurrent());
+                if (index.n < n) {
+                    compactions++;
+                }
+            }
+        }
+        // Deleting through the cursor compacts the array, without disturbing the cursor.
+        assertTrue(compactions > 0);
+        assertTrue(index.n < N);
+        assertEquals(expected, soids(index));
+        // The same, using a cursor for each deletion, as SpatialIndex.remove does.
+        for (int i = 1; i < expected.size(); i += 2) {
+            int soid = expected.get(i);
+            cursor = index.cursor();
+            cursor.goTo(record(soid));
+            record = cursor.next();
+            assertEquals(soid, record.soid());
+            assertTrue(cursor.deleteCurrent());
+        }
+        List<Integer> remaining = new ArrayList<>();
+        for (int i = 0; i < expected.size(); i += 2) {
+            remaining.add(expected.get(i));
+        }
+        assertTrue(index.n < expected.size());
+        assertEquals(remaining, soids(index));
+    }
+
+    @Override
+    protected Index<TestRecord> newIndex()
+    {
+        return newSortedArray(THRESHOLD, null);
+    }
+
+    private SortedArray<TestRecord> newSortedArray(double threshold, Executor executor)
+    {
+        return
+            new SortedArray<TestRecord>(threshold, executor)
+            {
+                @Override
+                public TestRecord newRecord()
+                {
+                    return new TestRecord();
+                }
+            };
+    }
+
+    private List<Integer> soids(Index<TestRecord> index) throws IOException, InterruptedException
+    {
+        List<Integer> soids = new ArrayList<>();
+        Cursor<TestRecord> cursor = index.cursor();
+        cursor.goTo(record(0));
+        TestRecord record;
+        while ((record = cursor.next()) != null) {
+            soids.add(record.soid());
+        }
+        return soids;
+    }
+
+    private TestRecord record(int id)
+    {
+        TestRecord record = new TestRecord();
+        record.z(id);
+        record.soid(id);
+        return record;
+    }
+
+    private Record.Filter<TestRecord> soidFilter(final int soid)
+    {
+        return
+            new Record.Filter<TestRecord>()
+            {
+                @Override
+                public boolean select(TestRecord record)
+                {
+                    return record.soid() == soid;
+                }
+            };
+    }
+
+    private static final double THRESHOLD = 0.25;
+    private static final int N = 1000;
+    private static final int MORE = 50;
+}
@@ -0,0 +1,160 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.space;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.Space;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.TestIndex;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.sortedarray.SortedArray;
+import com.geophile.z.spatialobject.d2.Box;
+import com.geophile.z.spatialobject.d2.Point;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+// Checks that bulkLoad produces the same index contents, in the same order, as a sequence of adds.
+
+public class BulkLoadTest
+{
+    @Test
+    public void testSortedArray() throws IOException, InterruptedException
+    {
+        test(new IndexFactory()
+        {
+            @Override
+            public Index<TestRecord> newIndex()
+            {
+                return new SortedArray<TestRecord>()
+                {
+                    @Override
+                    public TestRecord newRecord()
+                    {
+                        return new TestRecord();
+                    }
+                };
+            }
+        });
+    }
+
+    @Test
+    public void testTree() throws IOException, InterruptedException
+    {
+        test(new IndexFactory()
+        {
+            @Override
+            public Index<TestRecord> newIndex()
+            {
+                return new TestIndex();
+            }
+        });
+    }
+
+    private void test(IndexFactory indexFactory) throws IOException, InterruptedException
+    {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int n : N) {
+                List<SpatialObject> spatialObjects = spatialObjects(n);
+                // Bulk load into an empty index, and into an index that already has records.
+                for (int preloaded : new int[]{0, n / 3}) {
+                    SpatialIndex<TestRecord> expected = SpatialIndex.newSpatialIndex(SPACE, indexFactory.newIndex());
+                    TestRecord.Factory recordFactory = new TestRecord.Factory();
+                    for (int id = 0; id < n; id++) {
+                        SpatialObject spatialObject = spatialObjects.get(id);
+                        expected.add(spatialObject, recordFactory.setup(spatialObject, id));
+                    }
+                    SpatialIndex<TestRecord> actual = SpatialIndex.newSpatialIndex(SPACE, indexFactory.newIndex());
+                    for (int id = 0; id < preloaded; id++) {
+                        SpatialObject spatialObject = spatialObjects.get(id);
+                        actual.add(spatialObject, recordFactory.setup(spatialObject, id));
+                    }
+                    // Scanning the preloaded records gives the index a chance to sort them, (SortedArray sorts when
+                    // a cursor is created), so that the bulk loaded records have to be merged with them.
+                    contents(actual);
+                    actual.bulkLoad(spatialObjects.subList(preloaded, n).iterator(), converter(spatialObjects), pool);
+                    assertEquals(contents(expected), contents(actual));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private List<SpatialObject> spatialObjects(int n)
+    {
+        List<SpatialObject> spatialObjects = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            double x = random.nextInt(X_MAX - MAX_SIZE);
+            double y = random.nextInt(Y_MAX - MAX_SIZE);
+            spatialObjects.add(
+                i % 2 == 0
+                ? new Point(x, y)
+                : new Box(x, x + random.nextInt(MAX_SIZE), y, y + random.nextInt(MAX_SIZE)));
+        }
+        return spatialObjects;
+    }
+
+    private Record.Converter<TestRecord> converter(List<SpatialObject> spatialObjects)
+    {
+        final Map<SpatialObject, Integer> ids = new IdentityHashMap<>();
+        for (int id = 0; id < spatialObjects.size(); id++) {
+            ids.put(spatialObjects.get(id), id);
+        }
+        return
+            new Record.Converter<TestRecord>()
+            {
+                @Override
+                public TestRecord newRecord(SpatialObject spatialObject)
+                {
+                    return new TestRecord(spatialObject, ids.get(spatialObject));
+                }
+            };
+    }
+
+    private List<String> contents(SpatialIndex<TestRecord> spatialIndex) throws IOException, InterruptedException
+    {
+        List<String> contents = new ArrayList<>();
+        Index<TestRecord> index = ((SpatialIndexImpl<TestRecord>) spatialIndex).index();
+        Cursor<TestRecord> cursor = index.cursor();
+        TestRecord key = index.newKeyRecord();
+        key.z(SpaceImpl.Z_MIN);
+        cursor.goTo(key);
+        TestRecord record;
+        while ((record = cursor.next()) != null) {
+            contents.add(String.format("%016x:%s", record.z(), record.soid()));
+        }
+        return contents;
+    }
+
+    private static final int[] N = new int[]{0, 1, 1000, 20_000};
+    private static final int X_MAX = 1_000_000;
+    private static final int Y_MAX = 1_000_000;
+    private static final int MAX_SIZE = 10_000;
+    private static final Space SPACE = Space.newSpace(new double[]{0, 0},
+                                                      new double[]{X_MAX, Y_MAX},
+                                                      new int[]{20, 20});
+
+    private final Random random = new Random(5555);
+
+    private interface IndexFactory
+    {
+        Index<TestRecord> newIndex();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.space;
+
+import com.geophile.z.Record;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.TestIndex;
+import com.geophile.z.TestRecord;
+import com.geophile.z.spatialobject.d2.Box;
+import com.geophile.z.spatialobject.d2.Point;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+// Checks that decomposition using a ForkJoinPool yields exactly the z-values of a sequential decomposition.
+
+public class ParallelDecompositionTest
+{
+    @AfterClass
+    public static void afterClass()
+    {
+        POOL.shutdown();
+    }
+
+    @Test
+    public void testBoxes()
+    {
+        Random random = new Random(419);
+        for (int maxZ : MAX_ZS) {
+            for (int i = 0; i < 200; i++) {
+                check(box(random), maxZ);
+            }
+        }
+    }
+
+    @Test
+    public void testPoints()
+    {
+        Random random = new Random(419);
+        for (int maxZ : MAX_ZS) {
+            for (int i = 0; i < 20; i++) {
+                check(new Point(random.nextInt(N), random.nextInt(N)), maxZ);
+            }
+        }
+    }
+
+    @Test
+    public void testSpatialIndex() throws IOException, InterruptedException
+    {
+        // Records added using a pool can be removed by a sequential decomposition.
+        Random random = new Random(419);
+        SpatialIndex<TestRecord> spatialIndex = SpatialIndex.newSpatialIndex(SPACE, new TestIndex());
+        TestRecord.Factory recordFactory = new TestRecord.Factory();
+        Box[] boxes = new Box[100];
+        for (int id = 0; id < boxes.length; id++) {
+            boxes[id] = box(random);
+            spatialIndex.add(boxes[id], recordFactory.setup(boxes[id], id), 1000, POOL);
+        }
+        for (int id = 0; id < boxes.length; id++) {
+            final int soid = id;
+            assertTrue(spatialIndex.remove(boxes[id],
+                                           new Record.Filter<TestRecord>()
+                                           {
+                                               @Override
+                                               public boolean select(TestRecord record)
+                                               {
+                                                   return record.soid() == soid;
+                                               }
+                                           },
+                                           1000));
+        }
+    }
+
+    private void check(SpatialObject spatialObject, int maxZ)
+    {
+        long[] expected = new long[maxZ];
+        SPACE.decompose(spatialObject, expected);
+        long[] actual = new long[maxZ];
+        Arrays.fill(actual, 0x12345L);
+        SPACE.decompose(spatialObject, actual, POOL);
+        assertArrayEquals(expected, actual);
+    }
+
+    private Box box(Random random)
+    {
+        int xSize = 1 + random.nextInt(N / 4);
+        int ySize = 1 + random.nextInt(N / 4);
+        int xLo = random.nextInt(N - xSize);
+        int yLo = random.nextInt(N - ySize);
+        return new Box(xLo, xLo + xSize, yLo, yLo + ySize);
+    }
+
+    private static final int N = 1_000_000;
+    private static final int[] MAX_ZS = new int[]{2, 8, 32, 100, 1000, 5000};
+    private static final SpaceImpl SPACE = new SpaceImpl(new double[]{0, 0}, new double[]{N, N}, new int[]{20, 20}, null);
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+}
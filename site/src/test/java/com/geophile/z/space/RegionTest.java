@@ -9,7 +9,11 @@ package com.geophile.z.space;
 import com.geophile.z.Space;
 import org.junit.Test;
 
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class RegionTest
 {
@@ -305,6 +309,67 @@ public class RegionTest
         assertTrue(lowerLeft.hiGE(1, 64.0));
     }
 
+    // Regions from z-values
+
+    @Test
+    public void regionFromZ()
+    {
+        Random random = new Random(419);
+        for (int i = 0; i < 1000; i++) {
+            Region expected = region(random.nextInt(64), random.nextInt(64), random.nextInt(SPACE.zBits() + 1));
+            long z = expected.z();
+            Region actual = SPACE.region(z);
+            assertEquals(expected.level(), actual.level());
+            long[] cellLo = new long[2];
+            long[] cellHi = new long[2];
+            SPACE.unshuffle(z, cellLo, cellHi);
+            for (int d = 0; d < 2; d++) {
+                assertEquals(expected.loCell(d), actual.loCell(d));
+                assertEquals(expected.hiCell(d), actual.hiCell(d));
+                assertEquals(expected.loCell(d), cellLo[d]);
+                assertEquals(expected.hiCell(d), cellHi[d]);
+            }
+            assertEquals(z, actual.z());
+            // The reconstructed region can be navigated like any other.
+            if (!actual.isPoint()) {
+                actual.downLeft();
+                expected.downLeft();
+                assertEquals(expected.z(), actual.z());
+            }
+            if (actual.level() > 1) {
+                actual.up();
+                actual.up();
+                expected.up();
+                expected.up();
+                assertEquals(expected.z(), actual.z());
+            }
+        }
+    }
+
+    @Test
+    public void regionFromZCorners()
+    {
+        Region root = SPACE.region(SpaceImpl.z(0, 0));
+        assertEquals(0, root.level());
+        for (int d = 0; d < 2; d++) {
+            assertEquals(0, root.loCell(d));
+            assertEquals(63, root.hiCell(d));
+        }
+        Region upperRight = region(52, 52, 4); // (48:64, 48:64)
+        Region actual = SPACE.region(upperRight.z());
+        for (int d = 0; d < 2; d++) {
+            assertEquals(48, actual.loCell(d));
+            assertEquals(63, actual.hiCell(d));
+        }
+        assertTrue(actual.hiGE(0, 64.0));
+        try {
+            SPACE.region(SpaceImpl.z(0, SPACE.zBits() + 1));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
     private static Region region(double x, double y, int level)
     {
         Region region = new Region(SPACE, doubles(x, y));
@@ -7,9 +7,20 @@
 package com.geophile.z.space;
 
 import com.geophile.z.Space;
+import com.geophile.z.SpatialObject;
 import com.geophile.z.spatialobject.d2.Box;
+import com.geophile.z.spatialobject.d2.Point;
 import org.junit.Test;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -241,6 +252,209 @@ public class SpaceTest
         space.decompose(box, zs);
     }
 
+    @Test
+    public void testShufflers()
+    {
+        Random random = new Random(419);
+        List<SpaceImpl> spaces = new ArrayList<>();
+        spaces.add(new SpaceImpl(doubles(0, 0), doubles(1, 1), ints(20, 20), null));
+        spaces.add(new SpaceImpl(doubles(0, 0), doubles(1, 1), ints(28, 29), null));
+        spaces.add(new SpaceImpl(doubles(0, 0, 0), doubles(1, 1, 1), ints(3, 17, 9), null));
+        // Each dimension's bits together, so that there are few runs to deposit.
+        spaces.add(new SpaceImpl(doubles(0, 0), doubles(1, 1), ints(12, 12),
+                                 ints(0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 1, 1)));
+        for (int i = 0; i < 10; i++) {
+            int dimensions = 1 + random.nextInt(Space.MAX_DIMENSIONS);
+            int[] gBits = new int[dimensions];
+            List<Integer> interleave = new ArrayList<>();
+            for (int d = 0; d < dimensions; d++) {
+                gBits[d] = 1 + random.nextInt(SpaceImpl.MAX_Z_BITS / dimensions);
+                for (int b = 0; b < gBits[d]; b++) {
+                    interleave.add(d);
+                }
+            }
+            Collections.shuffle(interleave, random);
+            int[] interleaveArray = new int[interleave.size()];
+            for (int z = 0; z < interleaveArray.length; z++) {
+                interleaveArray[z] = interleave.get(z);
+            }
+            spaces.add(new SpaceImpl(new double[dimensions], ones(dimensions), gBits, interleaveArray));
+        }
+        for (SpaceImpl space : spaces) {
+            long[] x = new long[space.dimensions];
+            long[] expectedX = new long[space.dimensions];
+            long[] actualX = new long[space.dimensions];
+            for (int i = 0; i < 1000; i++) {
+                for (int d = 0; d < space.dimensions; d++) {
+                    x[d] = random.nextLong() & space.gHi[d];
+                }
+                long expected = shuffleBitwise(space, x);
+                int length = random.nextInt(space.zBits() + 1);
+                long prefix = SpaceImpl.z(expected & ~(~0L >>> length), length);
+                unshuffleBitwise(space, prefix, expectedX);
+                assertEquals(SpaceImpl.z(expected, space.zBits()), space.shuffle(x));
+                for (Shuffler.Kind kind : Shuffler.available()) {
+                    Shuffler shuffler = Shuffler.newShuffler(space, kind);
+                    assertEquals(expected >>> 1, shuffler.shuffle(x));
+                    shuffler.unshuffle(SpaceImpl.z(expected, space.zBits()), actualX);
+                    assertArrayEquals(x, actualX);
+                    shuffler.unshuffle(prefix, actualX);
+                    assertArrayEquals(expectedX, actualX);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDecomposeVsReference()
+    {
+        // Spaces with different resolutions share decomposition state, so alternate between them.
+        Random random = new Random(419);
+        SpaceImpl[] spaces = new SpaceImpl[]{
+            new SpaceImpl(doubles(0, 0), doubles(1_000_000, 1_000_000), ints(20, 20), null),
+            new SpaceImpl(doubles(0, 0), doubles(1_000_000, 1_000_000), ints(10, 14), null)
+        };
+        int[] maxZs = ints(1, 2, 4, 8, 32, 100, 1000);
+        for (int i = 0; i < 2000; i++) {
+            SpaceImpl space = spaces[i % spaces.length];
+            int maxZ = maxZs[random.nextInt(maxZs.length)];
+            SpatialObject spatialObject;
+            if (random.nextInt(10) == 0) {
+                spatialObject = new Point(random.nextInt(1_000_000), random.nextInt(1_000_000));
+            } else {
+                int xSize = 1 + random.nextInt(250_000);
+                int ySize = 1 + random.nextInt(250_000);
+                int xLo = random.nextInt(1_000_000 - xSize);
+                int yLo = random.nextInt(1_000_000 - ySize);
+                spatialObject = new Box(xLo, xLo + xSize, yLo, yLo + ySize);
+            }
+            long[] expected = new long[maxZ];
+            decomposeReference(space, spatialObject, expected);
+            long[] actual = new long[maxZ];
+            Arrays.fill(actual, 0x12345L);
+            space.decompose(spatialObject, actual);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    // Straightforward decomposition, allocating a Region for each one queued.
+    private static void decomposeReference(SpaceImpl space, SpatialObject spatialObject, long[] zs)
+    {
+        int maxRegions = zs.length;
+        int zCount = 0;
+        Region region = new Region(space, spatialObject.arbitraryPoint());
+        while (!spatialObject.containedBy(region)) {
+            region.up();
+        }
+        if (zs.length == 1) {
+            zs[0] = region.z();
+            return;
+        }
+        Queue<Region> queue = new ArrayDeque<>();
+        queue.add(region);
+        while (!queue.isEmpty()) {
+            region = queue.poll();
+            if (region.isPoint()) {
+                zs[zCount++] = region.z();
+                continue;
+            }
+            region.downLeft();
+            RegionComparison left = spatialObject.compare(region);
+            Region leftRegion = copy(space, region);
+            region.up();
+            region.downRight();
+            RegionComparison right = spatialObject.compare(region);
+            Region rightRegion = copy(space, region);
+            region.up();
+            boolean leftInside = left == RegionComparison.REGION_INSIDE_OBJECT;
+            boolean rightInside = right == RegionComparison.REGION_INSIDE_OBJECT;
+            boolean leftOverlaps = left == RegionComparison.REGION_OVERLAPS_OBJECT;
+            boolean rightOverlaps = right == RegionComparison.REGION_OVERLAPS_OBJECT;
+            boolean room = queue.size() + 1 + zCount < maxRegions;
+            if (leftInside && rightInside) {
+                zs[zCount++] = region.z();
+            } else if (leftInside && rightOverlaps || leftOverlaps && rightInside || leftOverlaps && rightOverlaps) {
+                if (room) {
+                    // Queue the right child before the left, as SpaceImpl does.
+                    if (rightOverlaps) {
+                        queue.add(rightRegion);
+                    } else {
+                        zs[zCount++] = rightRegion.z();
+                    }
+                    if (leftOverlaps) {
+                        queue.add(leftRegion);
+                    } else {
+                        zs[zCount++] = leftRegion.z();
+                    }
+                } else {
+                    zs[zCount++] = region.z();
+                }
+            } else {
+                // One child is outside the object
+                boolean leftOutside = left == RegionComparison.REGION_OUTSIDE_OBJECT;
+                Region child = leftOutside ? rightRegion : leftRegion;
+                if (leftOutside ? rightOverlaps : leftOverlaps) {
+                    queue.add(child);
+                } else {
+                    zs[zCount++] = child.z();
+                }
+            }
+        }
+        Arrays.fill(zs, zCount, maxRegions, Space.Z_NULL);
+        Arrays.sort(zs, 0, zCount);
+        boolean merge;
+        do {
+            merge = false;
+            for (int i = 1; i < zCount; i++) {
+                if ((merge = SpaceImpl.siblings(zs[i - 1], zs[i]))) {
+                    zs[i - 1] = SpaceImpl.parent(zs[i - 1]);
+                    System.arraycopy(zs, i + 1, zs, i, zCount - i - 1);
+                    zs[--zCount] = Space.Z_NULL;
+                }
+            }
+        } while (merge);
+    }
+
+    private static Region copy(SpaceImpl space, Region region)
+    {
+        Region copy = new Region(space);
+        copy.copyFrom(region);
+        return copy;
+    }
+
+    // Interleaves one bit at a time. The result is left-justified, without a length.
+    private static long shuffleBitwise(SpaceImpl space, long[] x)
+    {
+        long z = 0;
+        int[] xBits = new int[space.dimensions];
+        int[] interleave = space.interleave();
+        for (int zBit = 0; zBit < space.zBits(); zBit++) {
+            int d = interleave[zBit];
+            long xBit = (x[d] >>> (space.gBits[d] - 1 - xBits[d]++)) & 1;
+            z |= xBit << (63 - zBit);
+        }
+        return z;
+    }
+
+    private static void unshuffleBitwise(SpaceImpl space, long z, long[] x)
+    {
+        Arrays.fill(x, 0);
+        int[] xBits = new int[space.dimensions];
+        int[] interleave = space.interleave();
+        for (int zBit = 0; zBit < SpaceImpl.length(z); zBit++) {
+            int d = interleave[zBit];
+            long zb = (z >>> (62 - zBit)) & 1;
+            x[d] |= zb << (space.gBits[d] - 1 - xBits[d]++);
+        }
+    }
+
+    private static double[] ones(int n)
+    {
+        double[] ones = new double[n];
+        Arrays.fill(ones, 1);
+        return ones;
+    }
+
     private static int[] ints(int ... ints)
     {
         return ints;
@@ -268,6 +482,17 @@ public class SpaceTest
 
     private void check(SpaceImpl space, long expected, long[] x)
     {
-        assertEquals(SpaceImpl.z(expected, space.zBits()), space.shuffle(x));
+        long z = SpaceImpl.z(expected, space.zBits());
+        assertEquals(z, space.shuffle(x));
+        long[] unshuffled = new long[x.length];
+        space.unshuffle(z, unshuffled);
+        assertArrayEquals(x, unshuffled);
+        for (Shuffler.Kind kind : Shuffler.available()) {
+            Shuffler shuffler = Shuffler.newShuffler(space, kind);
+            assertEquals(kind, shuffler.kind());
+            assertEquals(z & ~SpaceImpl.LENGTH_MASK, shuffler.shuffle(x));
+            shuffler.unshuffle(z, unshuffled);
+            assertArrayEquals(x, unshuffled);
+        }
     }
 }
@@ -22,9 +22,11 @@ import org.junit.Test;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -174,6 +176,77 @@ public abstract class SpatialIndexTestBase
         }
     }
 
+    @Test
+    public void testBatchRemoveAll() throws Exception
+    {
+        Index<TestRecord> index = newIndex();
+        SpatialIndexImpl<TestRecord> spatialIndex = new SpatialIndexImpl<>(SPACE, index, SpatialIndex.Options.DEFAULT);
+        final Set<SpatialObject> points = new HashSet<>();
+        int id = 0;
+        for (long x = 0; x < X_MAX; x += 10) {
+            for (long y = 0; y < Y_MAX; y += 10) {
+                Point point = new Point(x, y);
+                spatialIndex.add(point, RECORD_FACTORY.setup(point, id++));
+                points.add(point);
+            }
+        }
+        commitTransaction();
+        // Remove everything
+        assertEquals(points.size(), spatialIndex.removeAll(points, batchRemovalFilter(points)));
+        commitTransaction();
+        assertEquals(0, spatialIndex.removeAll(points, batchRemovalFilter(points)));
+        Random random = new Random(SEED);
+        for (int i = 0; i < 1000; i++) {
+            generateRandomBox(random);
+            test(spatialIndex,
+                 xLo, xHi, yLo, yHi,
+                 new Filter()
+                 {
+                     @Override
+                     public boolean keep(SpatialObject spatialObject)
+                     {
+                         return false;
+                     }
+                 });
+        }
+    }
+
+    @Test
+    public void testBatchRemoveSome() throws Exception
+    {
+        Index<TestRecord> index = newIndex();
+        SpatialIndexImpl<TestRecord> spatialIndex = new SpatialIndexImpl<>(SPACE, index, SpatialIndex.Options.DEFAULT);
+        // Boxes, so that spatial objects have multiple z-values, and z-values are shared by spatial objects.
+        List<Box> boxes = new ArrayList<>();
+        int id = 0;
+        for (long x = 0; x < X_MAX - 20; x += 10) {
+            for (long y = 0; y < Y_MAX - 20; y += 10) {
+                Box box = new Box(x, x + 15, y, y + 15);
+                spatialIndex.add(box, RECORD_FACTORY.setup(box, id++));
+                boxes.add(box);
+            }
+        }
+        commitTransaction();
+        // Remove boxes with odd x/10 and even y/10
+        Set<SpatialObject> removed = new HashSet<>();
+        int removedRecords = 0;
+        for (Box box : boxes) {
+            if (((long) box.xLo() / 10) % 2 == 1 && ((long) box.yLo() / 10) % 2 == 0) {
+                removed.add(box);
+                removedRecords += zCount(box);
+            }
+        }
+        assertEquals(removedRecords, spatialIndex.removeAll(removed, batchRemovalFilter(removed)));
+        commitTransaction();
+        // Each remaining box is still present, and each removed box is gone.
+        for (Box box : boxes) {
+            RemovalFilter removalFilter = new RemovalFilter();
+            removalFilter.spatialObject(box);
+            assertEquals(!removed.contains(box), spatialIndex.remove(box, removalFilter));
+        }
+        commitTransaction();
+    }
+
     @Test
     public void testRemovalVsDuplicates() throws Exception
     {
@@ -254,6 +327,30 @@ public abstract class SpatialIndexTestBase
         assertEquals(expected, actual);
     }
 
+    private Record.Filter<TestRecord> batchRemovalFilter(final Set<SpatialObject> spatialObjects)
+    {
+        return
+            new Record.Filter<TestRecord>()
+            {
+                @Override
+                public boolean select(TestRecord record)
+                {
+                    return spatialObjects.contains(record.spatialObject());
+                }
+            };
+    }
+
+    private int zCount(SpatialObject spatialObject)
+    {
+        long[] zs = new long[spatialObject.maxZ()];
+        SPACE.decompose(spatialObject, zs);
+        int count = 0;
+        while (count < zs.length && zs[count] != SpaceImpl.Z_NULL) {
+            count++;
+        }
+        return count;
+    }
+
     private void generateRandomBox(Random random)
     {
         do {
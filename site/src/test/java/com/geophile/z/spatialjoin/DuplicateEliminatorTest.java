@@ -0,0 +1,230 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Pair;
+import com.geophile.z.Record;
+import com.geophile.z.Space;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.TestIndex;
+import com.geophile.z.TestRecord;
+import com.geophile.z.space.SpaceImpl;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+// Checks that Duplicates.EXCLUDE returns each overlapping pair exactly once, both when the z-values of the
+// spatial objects can be recomputed, (default maxZ), and when they can't.
+
+public class DuplicateEliminatorTest
+{
+    @Test
+    public void testDefaultMaxZ() throws IOException, InterruptedException
+    {
+        test(DEFAULT_MAX_Z, DEFAULT_MAX_Z);
+    }
+
+    @Test
+    public void testExplicitMaxZ() throws IOException, InterruptedException
+    {
+        test(2, DEFAULT_MAX_Z);
+        test(DEFAULT_MAX_Z, 3);
+    }
+
+    @Test
+    public void testRecordsProvidingSpatialObjects()
+    {
+        // The records are not RecordWithSpatialObjects, but each overlap is decided by reference regions, without
+        // using the set of outputs.
+        Set<Object> outputs = new HashSet<>();
+        DuplicateEliminator duplicateEliminator = new DuplicateEliminator(SPACE, true, outputs);
+        for (int maxSize : MAX_SIZES) {
+            List<SpatialObject> boxes = boxes(maxSize).subList(0, 100);
+            for (SpatialObject leftBox : boxes) {
+                long[] leftZs = decomposition(leftBox);
+                for (SpatialObject rightBox : boxes) {
+                    if (OVERLAP_TESTER.overlap(leftBox, rightBox)) {
+                        long[] rightZs = decomposition(rightBox);
+                        int reported = 0;
+                        for (int l = 0; l < leftZs.length && leftZs[l] != SpaceImpl.Z_NULL; l++) {
+                            for (int r = 0; r < rightZs.length && rightZs[r] != SpaceImpl.Z_NULL; r++) {
+                                long leftZ = leftZs[l];
+                                long rightZ = rightZs[r];
+                                if (SpaceImpl.contains(leftZ, rightZ) || SpaceImpl.contains(rightZ, leftZ)) {
+                                    Boolean first =
+                                        duplicateEliminator.firstOccurrence(new SpatialRecord(leftBox, leftZ),
+                                                                            new SpatialRecord(rightBox, rightZ));
+                                    assertNotNull(first);
+                                    if (first) {
+                                        reported++;
+                                    }
+                                }
+                            }
+                        }
+                        assertEquals(1, reported);
+                    }
+                }
+            }
+        }
+        assertTrue(outputs.isEmpty());
+    }
+
+    private void test(int leftMaxZ, int rightMaxZ) throws IOException, InterruptedException
+    {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int maxSize : MAX_SIZES) {
+                List<SpatialObject> leftBoxes = boxes(maxSize);
+                List<SpatialObject> rightBoxes = boxes(maxSize);
+                SpatialIndex<TestRecord> left = spatialIndex(leftBoxes, leftMaxZ);
+                SpatialIndex<TestRecord> right = spatialIndex(rightBoxes, rightMaxZ);
+                Set<String> expected = new HashSet<>();
+                for (int l = 0; l < leftBoxes.size(); l++) {
+                    for (int r = 0; r < rightBoxes.size(); r++) {
+                        if (OVERLAP_TESTER.overlap(leftBoxes.get(l), rightBoxes.get(r))) {
+                            expected.add(l + ":" + r);
+                        }
+                    }
+                }
+                SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.EXCLUDE, FILTER);
+                assertEquals(expected, pairs(spatialJoin.iterator(left, right)));
+                assertEquals(expected, pairs(spatialJoin.iterator(left, right, pool)));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private List<SpatialObject> boxes(int maxSize)
+    {
+        BoxGenerator boxGenerator = new BoxGenerator(SPACE, random, maxSize, maxSize);
+        List<SpatialObject> boxes = new ArrayList<>();
+        for (int i = 0; i < N; i++) {
+            boxes.add(boxGenerator.newSpatialObject());
+        }
+        return boxes;
+    }
+
+    private SpatialIndex<TestRecord> spatialIndex(List<SpatialObject> boxes, int maxZ)
+        throws IOException, InterruptedException
+    {
+        SpatialIndex<TestRecord> spatialIndex = SpatialIndex.newSpatialIndex(SPACE, new TestIndex());
+        TestRecord.Factory recordFactory = new TestRecord.Factory();
+        for (int id = 0; id < boxes.size(); id++) {
+            SpatialObject box = boxes.get(id);
+            recordFactory.setup(box, id);
+            if (maxZ == DEFAULT_MAX_Z) {
+                spatialIndex.add(box, recordFactory);
+            } else {
+                spatialIndex.add(box, recordFactory, maxZ);
+            }
+        }
+        return spatialIndex;
+    }
+
+    private static long[] decomposition(SpatialObject spatialObject)
+    {
+        long[] zs = new long[spatialObject.maxZ()];
+        SPACE.decompose(spatialObject, zs);
+        return zs;
+    }
+
+    private Set<String> pairs(Iterator<Pair<TestRecord, TestRecord>> iterator)
+    {
+        Set<String> pairs = new HashSet<>();
+        while (iterator.hasNext()) {
+            Pair<TestRecord, TestRecord> pair = iterator.next();
+            assertTrue(pairs.add(pair.left().soid() + ":" + pair.right().soid()));
+        }
+        return pairs;
+    }
+
+    private static final int DEFAULT_MAX_Z = -1;
+    private static final int N = 1_000;
+    private static final int[] MAX_SIZES = new int[]{1, 10_000, 100_000};
+    private static final int NX = 1_000_000;
+    private static final int NY = 1_000_000;
+    private static final Space SPACE = Space.newSpace(new double[]{0, 0},
+                                                      new double[]{NX, NY},
+                                                      new int[]{20, 20});
+    private static final OverlapTester OVERLAP_TESTER = new BoxOverlapTester();
+    private static final SpatialJoin.Filter<TestRecord, TestRecord> FILTER =
+        new SpatialJoin.Filter<TestRecord, TestRecord>()
+        {
+            @Override
+            public boolean overlap(TestRecord r, TestRecord s)
+            {
+                return OVERLAP_TESTER.overlap(r.spatialObject(), s.spatialObject());
+            }
+        };
+
+    private final Random random = new Random(6006);
+
+    // A Record that isn't a RecordWithSpatialObject, but provides its spatial object.
+    private static class SpatialRecord implements Record.HasSpatialObject
+    {
+        @Override
+        public int hashCode()
+        {
+            return spatialObject.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof SpatialRecord && ((SpatialRecord) o).spatialObject.equals(spatialObject);
+        }
+
+        @Override
+        public long z()
+        {
+            return z;
+        }
+
+        @Override
+        public void z(long z)
+        {
+            this.z = z;
+        }
+
+        @Override
+        public void copyTo(Record record)
+        {
+            SpatialRecord that = (SpatialRecord) record;
+            that.spatialObject = this.spatialObject;
+            that.z = this.z;
+        }
+
+        @Override
+        public SpatialObject spatialObject()
+        {
+            return spatialObject;
+        }
+
+        SpatialRecord(SpatialObject spatialObject, long z)
+        {
+            this.spatialObject = spatialObject;
+            this.z = z;
+        }
+
+        private SpatialObject spatialObject;
+        private long z;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.TestRecord;
+import com.geophile.z.space.Region;
+import com.geophile.z.space.SpaceImpl;
+import com.geophile.z.spatialobject.jts.JTS;
+import com.geophile.z.spatialobject.jts.JTSIntersectsFilter;
+import com.geophile.z.spatialobject.jts.JTSSpatialObject;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Checks decomposition of JTSPreparedSpatialObjects, and JTSIntersectsFilter.
+
+public class JTSPreparedGeometryTest
+{
+    @Test
+    public void testDecomposition()
+    {
+        Random random = new Random(419);
+        for (int maxZ : MAX_ZS) {
+            for (int i = 0; i < 100; i++) {
+                Geometry polygon = polygon(random, 3 + random.nextInt(50));
+                JTSSpatialObject prepared = JTS.preparedSpatialObject(SPACE, polygon);
+                long[] zs = new long[maxZ];
+                SPACE.decompose(prepared, zs);
+                // Every z-value's region touches the polygon.
+                for (long z : zs) {
+                    if (z != SpaceImpl.Z_NULL) {
+                        Region region = SPACE.region(z);
+                        Envelope envelope = new Envelope(region.lo(0), region.hi(0), region.lo(1), region.hi(1));
+                        assertTrue(polygon.intersects(FACTORY.toGeometry(envelope)));
+                    }
+                }
+                // Every point of the polygon is in some z-value's region.
+                Envelope envelope = polygon.getEnvelopeInternal();
+                for (int p = 0; p < 100; p++) {
+                    double x = envelope.getMinX() + random.nextDouble() * envelope.getWidth();
+                    double y = envelope.getMinY() + random.nextDouble() * envelope.getHeight();
+                    if (polygon.contains(FACTORY.createPoint(new Coordinate(x, y)))) {
+                        long cellZ = SPACE.shuffle(new long[]{SPACE.cellCoord(0, x), SPACE.cellCoord(1, y)});
+                        boolean covered = false;
+                        for (int j = 0; !covered && j < zs.length && zs[j] != SpaceImpl.Z_NULL; j++) {
+                            covered = SpaceImpl.contains(zs[j], cellZ);
+                        }
+                        assertTrue(covered);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFilter()
+    {
+        Random random = new Random(419);
+        SpatialJoin.Filter<SpatialObject, SpatialObject> filter = new JTSIntersectsFilter<>();
+        SpatialJoin.Filter<TestRecord, TestRecord> recordFilter = new JTSIntersectsFilter<>();
+        TestRecord leftRecord = new TestRecord();
+        TestRecord rightRecord = new TestRecord();
+        for (int i = 0; i < 100; i++) {
+            // Same left object for many consecutive pairs, as in spatial join output.
+            Geometry leftGeometry = polygon(random, 3 + random.nextInt(100));
+            JTSSpatialObject left =
+                random.nextBoolean()
+                ? JTS.preparedSpatialObject(SPACE, leftGeometry)
+                : JTS.spatialObject(SPACE, leftGeometry);
+            leftRecord.spatialObject(left);
+            for (int j = 0; j < 20; j++) {
+                Geometry rightGeometry = polygon(random, 3 + random.nextInt(100));
+                JTSSpatialObject right =
+                    random.nextBoolean()
+                    ? JTS.preparedSpatialObject(SPACE, rightGeometry)
+                    : JTS.spatialObject(SPACE, rightGeometry);
+                rightRecord.spatialObject(right);
+                boolean expected = leftGeometry.intersects(rightGeometry);
+                assertEquals(expected, filter.overlap(left, right));
+                assertEquals(expected, filter.overlap(right, left));
+                assertEquals(expected, recordFilter.overlap(leftRecord, rightRecord));
+            }
+        }
+    }
+
+    // A star-shaped polygon with the given number of vertices, around a random center.
+    private Geometry polygon(Random random, int vertices)
+    {
+        double cx = MAX_RADIUS + random.nextDouble() * (N - 2 * MAX_RADIUS);
+        double cy = MAX_RADIUS + random.nextDouble() * (N - 2 * MAX_RADIUS);
+        Coordinate[] coords = new Coordinate[vertices + 1];
+        for (int v = 0; v < vertices; v++) {
+            double angle = 2 * Math.PI * v / vertices;
+            double radius = MAX_RADIUS * (0.2 + 0.8 * random.nextDouble());
+            coords[v] = new Coordinate(cx + radius * Math.cos(angle), cy + radius * Math.sin(angle));
+        }
+        coords[vertices] = coords[0];
+        return FACTORY.createPolygon(FACTORY.createLinearRing(coords), null);
+    }
+
+    private static final int N = 1_000_000;
+    private static final double MAX_RADIUS = 50_000;
+    private static final int[] MAX_ZS = new int[]{1, 8, 32, 200};
+    private static final SpaceImpl SPACE = new SpaceImpl(new double[]{0, 0}, new double[]{N, N}, new int[]{20, 20}, null);
+    private static final GeometryFactory FACTORY = new GeometryFactory();
+}
@@ -0,0 +1,207 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.JoinStatistics;
+import com.geophile.z.Pair;
+import com.geophile.z.Record;
+import com.geophile.z.Space;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.TestIndex;
+import com.geophile.z.TestRecord;
+import com.geophile.z.space.SpaceImpl;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Checks that JoinStatistics agree with the spatial join output and with the events reported to InputObservers,
+// and that they can be published through JMX.
+
+public class JoinStatisticsTest
+{
+    @Test
+    public void testStatistics() throws IOException, InterruptedException
+    {
+        for (int maxSize : MAX_SIZES) {
+            TestInput leftInput = newTestInput(N, maxSize);
+            TestInput rightInput = newTestInput(N, maxSize);
+            for (SpatialJoin.Duplicates duplicates : SpatialJoin.Duplicates.values()) {
+                CountingObserver leftObserver = new CountingObserver();
+                CountingObserver rightObserver = new CountingObserver();
+                SpatialJoin spatialJoin =
+                    SpatialJoin.newSpatialJoin(duplicates, FILTER, leftObserver, rightObserver);
+                Iterator<Pair<TestRecord, TestRecord>> iterator =
+                    spatialJoin.iterator(leftInput.spatialIndex(), rightInput.spatialIndex());
+                JoinStatistics statistics = SpatialJoin.statistics(iterator);
+                long outputs = 0;
+                while (iterator.hasNext()) {
+                    iterator.next();
+                    outputs++;
+                }
+                assertEquals(outputs, statistics.getOutputs());
+                assertEquals(statistics.getZValuesEntered(), statistics.getZValuesExited());
+                assertEquals(leftObserver.exits + rightObserver.exits, statistics.getZValuesExited());
+                assertEquals(leftObserver.randomAccesses + rightObserver.randomAccesses,
+                             statistics.getRandomAccesses());
+                assertEquals(leftObserver.sequentialAccesses + rightObserver.sequentialAccesses,
+                             statistics.getSequentialAccesses());
+                assertEquals(leftObserver.ancestorsFound + rightObserver.ancestorsFound,
+                             statistics.getAncestorSearchesFound());
+                assertEquals(leftObserver.ancestorsNotFound + rightObserver.ancestorsNotFound,
+                             statistics.getAncestorSearchesNotFound());
+                long accepted = statistics.getFilterInvocations() - statistics.getFilterRejections();
+                if (duplicates == SpatialJoin.Duplicates.INCLUDE) {
+                    assertEquals(outputs, accepted);
+                } else {
+                    assertTrue(outputs <= accepted);
+                }
+                assertTrue(outputs == 0 || statistics.getMaxNestDepth() > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testParallelStatistics() throws IOException, InterruptedException
+    {
+        TestInput leftInput = newTestInput(N, MAX_SIZES[1]);
+        TestInput rightInput = newTestInput(N, MAX_SIZES[1]);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.INCLUDE, FILTER);
+            Iterator<Pair<TestRecord, TestRecord>> iterator =
+                spatialJoin.iterator(leftInput.spatialIndex(), rightInput.spatialIndex(), pool);
+            JoinStatistics statistics = SpatialJoin.statistics(iterator);
+            long outputs = 0;
+            while (iterator.hasNext()) {
+                iterator.next();
+                outputs++;
+            }
+            assertTrue(outputs > 0);
+            assertEquals(outputs, statistics.getOutputs());
+            assertEquals(outputs, statistics.getFilterInvocations() - statistics.getFilterRejections());
+            assertEquals(statistics.getZValuesEntered(), statistics.getZValuesExited());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testJMX() throws Exception
+    {
+        TestInput input = newTestInput(N, MAX_SIZES[1]);
+        SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.EXCLUDE, FILTER);
+        Iterator<Pair<TestRecord, TestRecord>> iterator = spatialJoin.iterator(input.spatialIndex(),
+                                                                                input.spatialIndex());
+        JoinStatistics statistics = SpatialJoin.statistics(iterator);
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = statistics.register("self join");
+        try {
+            assertTrue(mbeanServer.isRegistered(objectName));
+            while (iterator.hasNext()) {
+                iterator.next();
+            }
+            assertEquals(statistics.getOutputs(), mbeanServer.getAttribute(objectName, "Outputs"));
+            assertEquals(statistics.getRandomAccesses(), mbeanServer.getAttribute(objectName, "RandomAccesses"));
+        } finally {
+            statistics.unregister();
+        }
+        assertFalse(mbeanServer.isRegistered(objectName));
+    }
+
+    @Test
+    public void testNotASpatialJoinIterator()
+    {
+        try {
+            SpatialJoin.statistics(Collections.emptyList().iterator());
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private TestInput newTestInput(int n, int maxSize) throws IOException, InterruptedException
+    {
+        SpatialIndex<TestRecord> spatialIndex = SpatialIndex.newSpatialIndex(SPACE, new TestIndex());
+        TestInput testInput = new TestInput(spatialIndex, String.format("max size %s", maxSize));
+        BoxGenerator boxGenerator = new BoxGenerator(SPACE, random, maxSize, maxSize);
+        for (int i = 0; i < n; i++) {
+            testInput.add(boxGenerator.newSpatialObject());
+        }
+        return testInput;
+    }
+
+    private static final int N = 2_000;
+    private static final int[] MAX_SIZES = new int[]{1, 10_000, 300_000};
+    private static final int NX = 1_000_000;
+    private static final int NY = 1_000_000;
+    private static final Space SPACE = Space.newSpace(new double[]{0, 0},
+                                                      new double[]{NX, NY},
+                                                      new int[]{20, 20});
+    private static final OverlapTester OVERLAP_TESTER = new BoxOverlapTester();
+    private static final SpatialJoin.Filter<TestRecord, TestRecord> FILTER =
+        new SpatialJoin.Filter<TestRecord, TestRecord>()
+        {
+            @Override
+            public boolean overlap(TestRecord r, TestRecord s)
+            {
+                return OVERLAP_TESTER.overlap(r.spatialObject(), s.spatialObject());
+            }
+        };
+
+    private final Random random = new Random(1729);
+
+    private static class CountingObserver extends SpatialJoin.InputObserver
+    {
+        @Override
+        public void exit(long z)
+        {
+            exits++;
+        }
+
+        @Override
+        public void randomAccess(Cursor cursor, long z)
+        {
+            randomAccesses++;
+        }
+
+        @Override
+        public void sequentialAccess(Cursor cursor, long zRandomAccess, Record record)
+        {
+            sequentialAccesses++;
+        }
+
+        @Override
+        public void ancestorSearch(Cursor cursor, long zStart, long zAncestor)
+        {
+            if (zAncestor == SpaceImpl.Z_NULL) {
+                ancestorsNotFound++;
+            } else {
+                ancestorsFound++;
+            }
+        }
+
+        long exits;
+        long randomAccesses;
+        long sequentialAccesses;
+        long ancestorsFound;
+        long ancestorsNotFound;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Pair;
+import com.geophile.z.Space;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.TestIndex;
+import com.geophile.z.TestRecord;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+// Checks that a parallel spatial join produces exactly the output of the serial spatial join,
+// including duplicates, for a variety of object sizes and degrees of parallelism.
+
+public class ParallelSpatialJoinTest
+{
+    @Test
+    public void testParallelSpatialJoin() throws IOException, InterruptedException
+    {
+        for (int parallelism : PARALLELISM) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                for (int maxLeftSize : MAX_SIZES) {
+                    for (int maxRightSize : MAX_SIZES) {
+                        TestInput leftInput = newTestInput(N, maxLeftSize);
+                        TestInput rightInput = newTestInput(N, maxRightSize);
+                        for (SpatialJoin.Duplicates duplicates : SpatialJoin.Duplicates.values()) {
+                            SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(duplicates);
+                            Map<Pair<TestRecord, TestRecord>, Integer> expected =
+                                count(spatialJoin.iterator(leftInput.spatialIndex(),
+                                                           rightInput.spatialIndex()));
+                            Map<Pair<TestRecord, TestRecord>, Integer> actual =
+                                count(spatialJoin.iterator(leftInput.spatialIndex(),
+                                                           rightInput.spatialIndex(),
+                                                           pool));
+                            assertEquals(expected, actual);
+                        }
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testPartitionFailure() throws IOException, InterruptedException
+    {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            TestInput leftInput = newTestInput(N, 10_000);
+            TestInput rightInput = newTestInput(N, 10_000);
+            final RuntimeException failure = new RuntimeException();
+            SpatialJoin spatialJoin =
+                SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.INCLUDE,
+                                           new SpatialJoin.Filter<TestRecord, TestRecord>()
+                                           {
+                                               @Override
+                                               public boolean overlap(TestRecord left, TestRecord right)
+                                               {
+                                                   throw failure;
+                                               }
+                                           });
+            Iterator<Pair<TestRecord, TestRecord>> iterator =
+                spatialJoin.iterator(leftInput.spatialIndex(), rightInput.spatialIndex(), pool);
+            try {
+                iterator.hasNext();
+                fail();
+            } catch (RuntimeException e) {
+                // ForkJoinPool may rethrow a copy of the exception, whose cause is the original.
+                assertTrue(e == failure || e.getCause() == failure);
+            }
+            // The outstanding partitions were cancelled, and no more are started.
+            assertFalse(iterator.hasNext());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private TestInput newTestInput(int n, int maxSize) throws IOException, InterruptedException
+    {
+        SpatialIndex<TestRecord> spatialIndex = SpatialIndex.newSpatialIndex(SPACE, new TestIndex());
+        TestInput testInput = new TestInput(spatialIndex, String.format("max size %s", maxSize));
+        BoxGenerator boxGenerator = new BoxGenerator(SPACE, random, maxSize, maxSize);
+        for (int i = 0; i < n; i++) {
+            testInput.add(boxGenerator.newSpatialObject());
+        }
+        return testInput;
+    }
+
+    private Map<Pair<TestRecord, TestRecord>, Integer> count(Iterator<Pair<TestRecord, TestRecord>> joinScan)
+    {
+        Map<Pair<TestRecord, TestRecord>, Integer> counts = new HashMap<>();
+        while (joinScan.hasNext()) {
+            Pair<TestRecord, TestRecord> pair = joinScan.next();
+            Integer count = counts.get(pair);
+            counts.put(pair, count == null ? 1 : count + 1);
+        }
+        return counts;
+    }
+
+    private static final int N = 2_000;
+    private static final int[] PARALLELISM = new int[]{1, 4, 32};
+    private static final int[] MAX_SIZES = new int[]{1, 10_000, 300_000};
+    private static final int NX = 1_000_000;
+    private static final int NY = 1_000_000;
+    private static final int X_BITS = 20;
+    private static final int Y_BITS = 20;
+    private static final Space SPACE = Space.newSpace(new double[]{0, 0},
+                                                      new double[]{NX, NY},
+                                                      new int[]{X_BITS, Y_BITS});
+
+    private final Random random = new Random(419);
+}
@@ -0,0 +1,126 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.JoinStatistics;
+import com.geophile.z.Pair;
+import com.geophile.z.Space;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.TestIndex;
+import com.geophile.z.TestRecord;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// Checks that SpatialJoin.join passes the consumer exactly the output of SpatialJoin.iterator, in the same order,
+// and that the consumer can stop the join.
+
+public class PushSpatialJoinTest
+{
+    @Test
+    public void testJoin() throws IOException, InterruptedException
+    {
+        for (boolean stableRecords : new boolean[]{true, false}) {
+            for (int maxLeftSize : MAX_SIZES) {
+                for (int maxRightSize : MAX_SIZES) {
+                    TestInput leftInput = newTestInput(N, maxLeftSize, stableRecords);
+                    TestInput rightInput = newTestInput(N, maxRightSize, stableRecords);
+                    for (SpatialJoin.Duplicates duplicates : SpatialJoin.Duplicates.values()) {
+                        SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(duplicates);
+                        List<Pair<TestRecord, TestRecord>> expected = new ArrayList<>();
+                        Iterator<Pair<TestRecord, TestRecord>> iterator =
+                            spatialJoin.iterator(leftInput.spatialIndex(), rightInput.spatialIndex());
+                        while (iterator.hasNext()) {
+                            expected.add(iterator.next());
+                        }
+                        Collector collector = new Collector(Integer.MAX_VALUE);
+                        JoinStatistics statistics =
+                            spatialJoin.join(leftInput.spatialIndex(), rightInput.spatialIndex(), collector);
+                        assertEquals(expected, collector.pairs);
+                        assertEquals(expected.size(), statistics.getOutputs());
+                        // Stop partway through
+                        if (expected.size() > 1) {
+                            int limit = expected.size() / 2;
+                            collector = new Collector(limit);
+                            spatialJoin.join(leftInput.spatialIndex(), rightInput.spatialIndex(), collector);
+                            assertEquals(expected.subList(0, limit), collector.pairs);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyInput() throws IOException, InterruptedException
+    {
+        TestInput leftInput = newTestInput(0, 1, true);
+        TestInput rightInput = newTestInput(N, 10_000, true);
+        Collector collector = new Collector(Integer.MAX_VALUE);
+        SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.INCLUDE)
+                   .join(leftInput.spatialIndex(), rightInput.spatialIndex(), collector);
+        assertTrue(collector.pairs.isEmpty());
+    }
+
+    private TestInput newTestInput(int n, int maxSize, boolean stableRecords)
+        throws IOException, InterruptedException
+    {
+        SpatialIndex<TestRecord> spatialIndex = SpatialIndex.newSpatialIndex(SPACE, new TestIndex(stableRecords));
+        TestInput testInput = new TestInput(spatialIndex, String.format("max size %s", maxSize));
+        BoxGenerator boxGenerator = new BoxGenerator(SPACE, random, maxSize, maxSize);
+        for (int i = 0; i < n; i++) {
+            testInput.add(boxGenerator.newSpatialObject());
+        }
+        return testInput;
+    }
+
+    private static final int N = 1_000;
+    private static final int[] MAX_SIZES = new int[]{1, 10_000, 300_000};
+    private static final int NX = 1_000_000;
+    private static final int NY = 1_000_000;
+    private static final int X_BITS = 20;
+    private static final int Y_BITS = 20;
+    private static final Space SPACE = Space.newSpace(new double[]{0, 0},
+                                                      new double[]{NX, NY},
+                                                      new int[]{X_BITS, Y_BITS});
+
+    private final Random random = new Random(419);
+
+    // Copies the records it is given, since they may be reused by the spatial join.
+    private static class Collector implements SpatialJoin.PairConsumer<TestRecord, TestRecord>
+    {
+        @Override
+        public boolean accept(TestRecord left, TestRecord right)
+        {
+            pairs.add(new Pair<>(copy(left), copy(right)));
+            return pairs.size() < limit;
+        }
+
+        Collector(int limit)
+        {
+            this.limit = limit;
+        }
+
+        private TestRecord copy(TestRecord record)
+        {
+            TestRecord copy = new TestRecord();
+            record.copyTo(copy);
+            return copy;
+        }
+
+        final int limit;
+        final List<Pair<TestRecord, TestRecord>> pairs = new ArrayList<>();
+    }
+}
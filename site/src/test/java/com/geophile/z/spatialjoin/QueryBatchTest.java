@@ -0,0 +1,179 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Pair;
+import com.geophile.z.Space;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.TestIndex;
+import com.geophile.z.TestRecord;
+import com.geophile.z.index.QueryRecord;
+import com.geophile.z.spatialobject.d2.Box;
+import com.geophile.z.spatialobject.d2.Point;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+// Checks that a batch of queries returns, for each query, the same records as the query run by itself.
+
+public class QueryBatchTest
+{
+    @Test
+    public void testBoxes() throws IOException, InterruptedException
+    {
+        for (int maxQuerySize : MAX_QUERY_SIZES) {
+            test(boxes(N_DATA, MAX_DATA_SIZE), boxes(N_QUERIES, maxQuerySize));
+        }
+    }
+
+    @Test
+    public void testPoints() throws IOException, InterruptedException
+    {
+        // Query points decompose to one z-value each, so the queries are joined using the single-cell optimization.
+        List<SpatialObject> points = new ArrayList<>();
+        for (int i = 0; i < N_QUERIES; i++) {
+            points.add(new Point(random.nextInt(NX), random.nextInt(NY)));
+        }
+        test(boxes(N_DATA, MAX_DATA_SIZE), points);
+    }
+
+    @Test
+    public void testQueriesDecomposedOnce() throws IOException, InterruptedException
+    {
+        // Decomposition asks a query object for an arbitrary point exactly once.
+        SpatialIndex<TestRecord> data = spatialIndex(boxes(N_DATA, MAX_DATA_SIZE));
+        final int[] decompositions = new int[N_QUERIES];
+        List<SpatialObject> queries = new ArrayList<>();
+        for (SpatialObject box : boxes(N_QUERIES, 100_000)) {
+            final int q = queries.size();
+            Box b = (Box) box;
+            queries.add(new Box(b.xLo(), b.xHi(), b.yLo(), b.yHi())
+                        {
+                            @Override
+                            public double[] arbitraryPoint()
+                            {
+                                decompositions[q]++;
+                                return super.arbitraryPoint();
+                            }
+                        });
+        }
+        SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.EXCLUDE, QUERY_FILTER);
+        Iterator<Pair<QueryRecord, TestRecord>> iterator = spatialJoin.iterator(queries, data);
+        int pairs = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            pairs++;
+        }
+        assertTrue(pairs > 0);
+        for (int q = 0; q < N_QUERIES; q++) {
+            assertEquals(1, decompositions[q]);
+        }
+    }
+
+    @Test
+    public void testEmptyBatch() throws IOException, InterruptedException
+    {
+        SpatialIndex<TestRecord> data = spatialIndex(boxes(N_DATA, MAX_DATA_SIZE));
+        SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.EXCLUDE, QUERY_FILTER);
+        assertFalse(spatialJoin.iterator(Collections.<SpatialObject>emptyList(), data).hasNext());
+    }
+
+    private void test(List<SpatialObject> dataBoxes, List<SpatialObject> queries)
+        throws IOException, InterruptedException
+    {
+        SpatialIndex<TestRecord> data = spatialIndex(dataBoxes);
+        for (SpatialJoin.Duplicates duplicates : SpatialJoin.Duplicates.values()) {
+            SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(duplicates, QUERY_FILTER);
+            List<Set<Integer>> expected = new ArrayList<>();
+            for (SpatialObject query : queries) {
+                Set<Integer> soids = new HashSet<>();
+                Iterator<TestRecord> iterator = spatialJoin.iterator(query, data);
+                while (iterator.hasNext()) {
+                    soids.add(iterator.next().soid());
+                }
+                expected.add(soids);
+            }
+            List<Set<Integer>> actual = new ArrayList<>();
+            for (int q = 0; q < queries.size(); q++) {
+                actual.add(new HashSet<Integer>());
+            }
+            Iterator<Pair<QueryRecord, TestRecord>> iterator = spatialJoin.iterator(queries, data);
+            while (iterator.hasNext()) {
+                Pair<QueryRecord, TestRecord> pair = iterator.next();
+                int q = pair.left().query();
+                assertSame(queries.get(q), pair.left().spatialObject());
+                boolean added = actual.get(q).add(pair.right().soid());
+                if (duplicates == SpatialJoin.Duplicates.EXCLUDE) {
+                    assertTrue(added);
+                }
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    private List<SpatialObject> boxes(int n, int maxSize)
+    {
+        BoxGenerator boxGenerator = new BoxGenerator(SPACE, random, maxSize, maxSize);
+        List<SpatialObject> boxes = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            boxes.add(boxGenerator.newSpatialObject());
+        }
+        return boxes;
+    }
+
+    private SpatialIndex<TestRecord> spatialIndex(List<SpatialObject> boxes)
+        throws IOException, InterruptedException
+    {
+        SpatialIndex<TestRecord> spatialIndex = SpatialIndex.newSpatialIndex(SPACE, new TestIndex());
+        TestRecord.Factory recordFactory = new TestRecord.Factory();
+        for (int id = 0; id < boxes.size(); id++) {
+            SpatialObject box = boxes.get(id);
+            spatialIndex.add(box, recordFactory.setup(box, id));
+        }
+        return spatialIndex;
+    }
+
+    private static final int N_DATA = 10_000;
+    private static final int MAX_DATA_SIZE = 10_000;
+    private static final int N_QUERIES = 100;
+    private static final int[] MAX_QUERY_SIZES = new int[]{1, 1_000, 100_000};
+    private static final int NX = 1_000_000;
+    private static final int NY = 1_000_000;
+    private static final Space SPACE = Space.newSpace(new double[]{0, 0},
+                                                      new double[]{NX, NY},
+                                                      new int[]{20, 20});
+    private static final OverlapTester BOX_OVERLAP_TESTER = new BoxOverlapTester();
+    private static final OverlapTester BOX_POINT_OVERLAP_TESTER = new BoxPointOverlapTester();
+    private static final SpatialJoin.Filter<SpatialObject, TestRecord> QUERY_FILTER =
+        new SpatialJoin.Filter<SpatialObject, TestRecord>()
+        {
+            @Override
+            public boolean overlap(SpatialObject query, TestRecord record)
+            {
+                return
+                    query instanceof Point
+                    ? BOX_POINT_OVERLAP_TESTER.overlap(record.spatialObject(), query)
+                    : BOX_OVERLAP_TESTER.overlap(query, record.spatialObject());
+            }
+        };
+
+    private final Random random = new Random(8008);
+}
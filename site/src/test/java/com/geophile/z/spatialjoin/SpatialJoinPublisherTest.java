@@ -0,0 +1,275 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Flow;
+import com.geophile.z.Pair;
+import com.geophile.z.Space;
+import com.geophile.z.SpatialIndex;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.TestIndex;
+import com.geophile.z.TestRecord;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// Checks that a spatial join publisher delivers the output of the spatial join iterator, no more than requested,
+// and that it handles cancellation and errors.
+
+public class SpatialJoinPublisherTest
+{
+    @Test
+    public void testUnboundedDemand() throws IOException, InterruptedException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.EXCLUDE);
+            for (int i = 0; i < 3; i++) {
+                TestInput left = newTestInput();
+                TestInput right = newTestInput();
+                List<Pair<TestRecord, TestRecord>> expected =
+                    list(spatialJoin.iterator(left.spatialIndex(), right.spatialIndex()));
+                TestSubscriber<Pair<TestRecord, TestRecord>> subscriber = new TestSubscriber<>();
+                spatialJoin.publisher(left.spatialIndex(), right.spatialIndex(), executor).subscribe(subscriber);
+                subscriber.subscription.request(Long.MAX_VALUE);
+                assertTrue(subscriber.terminated.await(1, TimeUnit.MINUTES));
+                assertNull(subscriber.error);
+                assertTrue(subscriber.completed);
+                assertEquals(expected, subscriber.items);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDemand() throws IOException, InterruptedException
+    {
+        SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.INCLUDE);
+        TestInput left = newTestInput();
+        TestInput right = newTestInput();
+        List<Pair<TestRecord, TestRecord>> expected =
+            list(spatialJoin.iterator(left.spatialIndex(), right.spatialIndex()));
+        int batchSize = SpatialJoinPublisher.BATCH_SIZE;
+        assertTrue(expected.size() > 3 * batchSize);
+        QueueExecutor executor = new QueueExecutor();
+        TestSubscriber<Pair<TestRecord, TestRecord>> subscriber = new TestSubscriber<>();
+        spatialJoin.publisher(left.spatialIndex(), right.spatialIndex(), executor).subscribe(subscriber);
+        // Nothing happens until there is demand.
+        assertTrue(executor.tasks.isEmpty());
+        subscriber.subscription.request(10);
+        subscriber.subscription.request(5);
+        assertEquals(1, executor.runAll());
+        assertEquals(expected.subList(0, 15), subscriber.items);
+        // Demand exceeding the batch size is met by several tasks.
+        subscriber.subscription.request(2 * batchSize);
+        assertEquals(2, executor.runAll());
+        assertEquals(expected.subList(0, 15 + 2 * batchSize), subscriber.items);
+        // Nothing more is delivered after cancellation.
+        subscriber.subscription.request(10);
+        subscriber.subscription.cancel();
+        executor.runAll();
+        assertEquals(expected.subList(0, 15 + 2 * batchSize), subscriber.items);
+        subscriber.subscription.request(10);
+        executor.runAll();
+        assertEquals(15 + 2 * batchSize, subscriber.items.size());
+        assertFalse(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    public void testQuery() throws IOException, InterruptedException
+    {
+        SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.EXCLUDE);
+        TestInput data = newTestInput();
+        BoxGenerator boxGenerator = new BoxGenerator(SPACE, random, 100_000, 100_000);
+        QueueExecutor executor = new QueueExecutor();
+        for (int i = 0; i < 10; i++) {
+            SpatialObject query = boxGenerator.newSpatialObject();
+            List<TestRecord> expected = list(spatialJoin.iterator(query, data.spatialIndex()));
+            TestSubscriber<TestRecord> subscriber = new TestSubscriber<>();
+            spatialJoin.publisher(query, data.spatialIndex(), executor).subscribe(subscriber);
+            // Request one at a time.
+            while (!subscriber.completed) {
+                subscriber.subscription.request(1);
+                executor.runAll();
+            }
+            assertEquals(expected, subscriber.items);
+        }
+    }
+
+    @Test
+    public void testExactDemand() throws IOException, InterruptedException
+    {
+        SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.EXCLUDE);
+        TestInput left = newTestInput();
+        TestInput right = newTestInput();
+        List<Pair<TestRecord, TestRecord>> expected =
+            list(spatialJoin.iterator(left.spatialIndex(), right.spatialIndex()));
+        // Queued tasks
+        QueueExecutor queueExecutor = new QueueExecutor();
+        TestSubscriber<Pair<TestRecord, TestRecord>> subscriber = new TestSubscriber<>();
+        spatialJoin.publisher(left.spatialIndex(), right.spatialIndex(), queueExecutor).subscribe(subscriber);
+        subscriber.subscription.request(expected.size());
+        queueExecutor.runAll();
+        assertEquals(expected, subscriber.items);
+        assertTrue(subscriber.completed);
+        // Tasks run by a thread pool
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            subscriber = new TestSubscriber<>();
+            spatialJoin.publisher(left.spatialIndex(), right.spatialIndex(), executor).subscribe(subscriber);
+            subscriber.subscription.request(expected.size());
+            assertTrue(subscriber.terminated.await(1, TimeUnit.MINUTES));
+            assertNull(subscriber.error);
+            assertTrue(subscriber.completed);
+            assertEquals(expected, subscriber.items);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testErrors() throws IOException, InterruptedException
+    {
+        SpatialJoin spatialJoin = SpatialJoin.newSpatialJoin(SpatialJoin.Duplicates.INCLUDE);
+        TestInput left = newTestInput();
+        TestInput right = newTestInput();
+        // Non-positive request
+        QueueExecutor executor = new QueueExecutor();
+        TestSubscriber<Pair<TestRecord, TestRecord>> subscriber = new TestSubscriber<>();
+        spatialJoin.publisher(left.spatialIndex(), right.spatialIndex(), executor).subscribe(subscriber);
+        subscriber.subscription.request(0);
+        executor.runAll();
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertTrue(subscriber.items.isEmpty());
+        // Rejected execution
+        Executor rejecting =
+            new Executor()
+            {
+                @Override
+                public void execute(Runnable task)
+                {
+                    throw new RejectedExecutionException();
+                }
+            };
+        subscriber = new TestSubscriber<>();
+        spatialJoin.publisher(left.spatialIndex(), right.spatialIndex(), rejecting).subscribe(subscriber);
+        subscriber.subscription.request(1);
+        assertTrue(subscriber.error instanceof RejectedExecutionException);
+        assertTrue(subscriber.items.isEmpty());
+    }
+
+    private TestInput newTestInput() throws IOException, InterruptedException
+    {
+        SpatialIndex<TestRecord> spatialIndex = SpatialIndex.newSpatialIndex(SPACE, new TestIndex());
+        TestInput testInput = new TestInput(spatialIndex, "boxes");
+        BoxGenerator boxGenerator = new BoxGenerator(SPACE, random, MAX_SIZE, MAX_SIZE);
+        for (int i = 0; i < N; i++) {
+            testInput.add(boxGenerator.newSpatialObject());
+        }
+        return testInput;
+    }
+
+    private static <T> List<T> list(Iterator<T> iterator)
+    {
+        List<T> list = new ArrayList<>();
+        while (iterator.hasNext()) {
+            list.add(iterator.next());
+        }
+        return list;
+    }
+
+    private static final int N = 1_000;
+    private static final int MAX_SIZE = 50_000;
+    private static final int NX = 1_000_000;
+    private static final int NY = 1_000_000;
+    private static final int X_BITS = 20;
+    private static final int Y_BITS = 20;
+    private static final Space SPACE = Space.newSpace(new double[]{0, 0},
+                                                      new double[]{NX, NY},
+                                                      new int[]{X_BITS, Y_BITS});
+
+    private final Random random = new Random(419);
+
+    private static class TestSubscriber<T> implements Flow.Subscriber<T>
+    {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription)
+        {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(T item)
+        {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable)
+        {
+            error = throwable;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete()
+        {
+            completed = true;
+            terminated.countDown();
+        }
+
+        volatile Flow.Subscription subscription;
+        final List<T> items = new ArrayList<>();
+        volatile Throwable error;
+        volatile boolean completed;
+        final CountDownLatch terminated = new CountDownLatch(1);
+    }
+
+    // Runs tasks when the test says so.
+    private static class QueueExecutor implements Executor
+    {
+        @Override
+        public void execute(Runnable task)
+        {
+            tasks.add(task);
+        }
+
+        // Runs tasks, including those submitted by the tasks run, until there are none. Returns the number run.
+        int runAll()
+        {
+            int count = 0;
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+                count++;
+            }
+            return count;
+        }
+
+        final Queue<Runnable> tasks = new ArrayDeque<>();
+    }
+}
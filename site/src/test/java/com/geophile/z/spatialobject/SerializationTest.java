@@ -13,6 +13,7 @@ import com.geophile.z.spatialobject.d2.Box;
 import com.geophile.z.spatialobject.d2.Point;
 import com.geophile.z.spatialobject.jts.JTS;
 import com.geophile.z.spatialobject.jts.JTSPoint;
+import com.geophile.z.spatialobject.jts.JTSSpatialObject;
 import com.geophile.z.spatialobject.jts.JTSSpatialObjectWithBoundingBox;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.GeometryFactory;
@@ -22,6 +23,8 @@ import org.junit.Test;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
@@ -104,6 +107,24 @@ public class SerializationTest
         test(JTS.spatialObject(SPACE, FACTORY.createMultiPoint(coords)));
     }
 
+    @Test
+    public void testJTSLazyPolygon()
+    {
+        Coordinate[] coords = new Coordinate[4];
+        coords[0] = new Coordinate(123, 456);
+        coords[1] = new Coordinate(789, 12);
+        coords[2] = new Coordinate(345, 678);
+        coords[3] = coords[0];
+        testLazy(JTS.spatialObject(SPACE, FACTORY.createPolygon(FACTORY.createLinearRing(coords), null)),
+                 new JTSSpatialObjectWithBoundingBox());
+    }
+
+    @Test
+    public void testJTSLazyPoint()
+    {
+        testLazy(JTS.spatialObject(SPACE, FACTORY.createPoint(new Coordinate(123.4, 567.8))), new JTSPoint());
+    }
+
     private void test(SpatialObject original)
     {
         test(original, buffer);
@@ -118,6 +139,45 @@ public class SerializationTest
         assertTrue(reconstituted.equals(original));
     }
 
+    // A lazily read JTSSpatialObject is equal to the original, and envelope-only operations don't look at the WKB.
+    private void testLazy(JTSSpatialObject original, JTSSpatialObject lazy)
+    {
+        original.writeTo(buffer);
+        buffer.flip();
+        lazy.readLazilyFrom(buffer);
+        assertEquals(buffer.limit(), buffer.position());
+        assertTrue(lazy.equals(original));
+        // Reserializing a lazy spatial object copies the WKB view.
+        ByteBuffer copy = ByteBuffer.allocate(buffer.capacity());
+        lazy.writeTo(copy);
+        assertEquals(buffer.limit(), copy.position());
+        // Corrupt the WKB, (after the WKB length), of a new lazy spatial object. Decomposition doesn't need
+        // the WKB.
+        buffer.rewind();
+        JTSSpatialObject corrupted = newInstance(lazy);
+        corrupted.readLazilyFrom(buffer);
+        for (int i = 4; i < 4 + 5; i++) {
+            buffer.put(i, (byte) 0x7f);
+        }
+        long[] expected = new long[original.maxZ()];
+        SPACE.decompose(original, expected);
+        long[] actual = new long[corrupted.maxZ()];
+        SPACE.decompose(corrupted, actual);
+        assertArrayEquals(expected, actual);
+        // Nor does hashing, which gives the same result as for the original.
+        assertEquals(original.hashCode(), corrupted.hashCode());
+        buffer.clear();
+    }
+
+    private static JTSSpatialObject newInstance(JTSSpatialObject spatialObject)
+    {
+        try {
+            return spatialObject.getClass().newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     private static final SpatialObjectSerializer SERIALIZER = SpatialObjectSerializer.newSerializer();
     private static final Space SPACE = Space.newSpace(new double[]{0, 0},
                                                       new double[]{1_000_000, 1_000_000},
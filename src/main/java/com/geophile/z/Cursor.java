@@ -60,6 +60,51 @@ public abstract class Cursor<RECORD extends Record>
      */
     public abstract boolean deleteCurrent() throws IOException, InterruptedException;
 
+    /**
+     * Retrieves up to max {@link com.geophile.z.Record}s, as if by calling {@link #next()} repeatedly.
+     * The z-value of the ith record retrieved is stored in zs[i]. If the index has stable records
+     * (see {@link com.geophile.z.Index#stableRecords()}), then records[i] is set to the ith record.
+     * Otherwise, the ith record is copied into records[i], which must not be null, (e.g. it could
+     * be created by {@link com.geophile.z.Index#newRecord()}). Following this call, the Cursor is positioned
+     * at the last record retrieved, so {@link #next()} and {@link #deleteCurrent()} behave as they would
+     * following the last of the equivalent calls to next(). If fewer than max records are retrieved, then
+     * the Cursor was moved past the last record, and is closed.
+     * <p>
+     * The default implementation calls next(). Subclasses for which a batch can be retrieved more cheaply should
+     * override this method, and {@link #batchesSupported()}.
+     * @param zs Receives the z-values of the records retrieved.
+     * @param records Receives the records retrieved.
+     * @param max The maximum number of records to retrieve. Must not exceed the length of zs or records.
+     * @return The number of records retrieved.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public int nextBatch(long[] zs, RECORD[] records, int max) throws IOException, InterruptedException
+    {
+        int count = 0;
+        RECORD record;
+        while (count < max && (record = next()) != null) {
+            zs[count] = record.z();
+            if (stableRecords) {
+                records[count] = record;
+            } else {
+                record.copyTo(records[count]);
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Indicates whether {@link #nextBatch(long[], Record[], int)} is cheaper than the equivalent calls
+     * to {@link #next()}.
+     * @return true iff nextBatch is cheaper than the equivalent calls to next.
+     */
+    public boolean batchesSupported()
+    {
+        return false;
+    }
+
     /**
      * Mark the Cursor as no longer usable. Subsequent calls to {@link #goTo(Record)}, {@link #next()},
      * or {@link #deleteCurrent()} will have undefined results.
@@ -83,6 +128,8 @@ public abstract class Cursor<RECORD extends Record>
         if (stableRecords) {
             current = record;
         } else {
+            // current is null if the cursor was closed, and then repositioned by goTo.
+            current = recordBuffer;
             record.copyTo(current);
         }
     }
@@ -101,12 +148,15 @@ public abstract class Cursor<RECORD extends Record>
     protected Cursor(Index<RECORD> index)
     {
         stableRecords = index.stableRecords();
-        current = stableRecords ? null : index.newRecord();
+        recordBuffer = stableRecords ? null : index.newRecord();
+        current = recordBuffer;
     }
 
     // Object state
 
     private final boolean stableRecords;
+    // Receives copies of records if !stableRecords
+    private final RECORD recordBuffer;
     private RECORD current;
     private State state = State.NEVER_USED;
 
@@ -0,0 +1,90 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z;
+
+/**
+ * Interfaces for streaming spatial join results to subscribers, with flow control, (see
+ * {@link com.geophile.z.SpatialJoin#publisher(SpatialIndex, SpatialIndex, java.util.concurrent.Executor)}).
+ * These have the same methods and contracts as the interfaces of java.util.concurrent.Flow, (and of Reactive
+ * Streams), which are not available in Java 7. An implementation of a java.util.concurrent.Flow interface can
+ * therefore be adapted by delegating each method.
+ */
+
+public final class Flow
+{
+    /**
+     * A source of items, delivered to each {@link com.geophile.z.Flow.Subscriber}, in response to its
+     * {@link com.geophile.z.Flow.Subscription#request(long)} calls.
+     * @param <T> Type of item published.
+     */
+    public interface Publisher<T>
+    {
+        /**
+         * Adds the given subscriber, which is first passed its {@link com.geophile.z.Flow.Subscription} through
+         * {@link com.geophile.z.Flow.Subscriber#onSubscribe(Subscription)}.
+         * @param subscriber The subscriber.
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * A receiver of items. The methods of a Subscriber are called one at a time, for a given
+     * {@link com.geophile.z.Flow.Subscription}.
+     * @param <T> Type of item received.
+     */
+    public interface Subscriber<T>
+    {
+        /**
+         * Called before any other method of this Subscriber, for a given subscription. No items are received
+         * until {@link com.geophile.z.Flow.Subscription#request(long)} is called.
+         * @param subscription The new subscription.
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * Receives the next item, which has been requested.
+         * @param item The item.
+         */
+        void onNext(T item);
+
+        /**
+         * Called when the subscription fails, after which no other method of this Subscriber is called,
+         * for that subscription.
+         * @param throwable The cause of the failure.
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Called when all items have been received, after which no other method of this Subscriber is called,
+         * for that subscription.
+         */
+        void onComplete();
+    }
+
+    /**
+     * Links a {@link com.geophile.z.Flow.Publisher} and a {@link com.geophile.z.Flow.Subscriber}.
+     */
+    public interface Subscription
+    {
+        /**
+         * Adds n to the number of items that the subscriber is prepared to receive.
+         * @param n Number of additional items requested. If n &lt;= 0, the subscriber's onError method is called
+         *          with an {@link java.lang.IllegalArgumentException}.
+         */
+        void request(long n);
+
+        /**
+         * Stops the delivery of items, possibly after a few more have been delivered.
+         */
+        void cancel();
+    }
+
+    // For use by this class
+
+    private Flow()
+    {}
+}
@@ -7,6 +7,7 @@
 package com.geophile.z;
 
 import java.io.IOException;
+import java.util.Iterator;
 
 /**
  * An index containing {@link com.geophile.z.Record}s must extend this class.
@@ -30,6 +31,24 @@ public abstract class Index<RECORD extends Record>
     public abstract void add(RECORD record)
         throws IOException, InterruptedException, DuplicateRecordException;
 
+    /**
+     * Adds {@link com.geophile.z.Record}s, presented in z-value order, to this index. Records with the same
+     * z-value are presented in the order in which they would have been added by {@link #add(Record)}.
+     * The default implementation adds each record by calling {@link #add(Record)}. An Index implementation
+     * can override this method to take advantage of the ordering.
+     * As with {@link #add(Record)}, the index must not assume that it owns the records.
+     * @param records The records being added to this Index, in z-value order.
+     * @throws DuplicateRecordException if a record is already present. This exception cannot
+     *         be thrown by an index that does blind updates.
+     */
+    public void addSorted(Iterator<RECORD> records)
+        throws IOException, InterruptedException, DuplicateRecordException
+    {
+        while (records.hasNext()) {
+            add(records.next());
+        }
+    }
+
     /**
      * Removal of an indexed spatial object requires removal of the {@link com.geophile.z.Record}s
      * containing each of the spatial object's z-values. Z-values are not unique -- the same z-value
@@ -47,6 +66,40 @@ public abstract class Index<RECORD extends Record>
      */
     public abstract boolean remove(long z, Record.Filter<RECORD> filter) throws IOException, InterruptedException;
 
+    /**
+     * Removes every {@link com.geophile.z.Record} whose z-value is one of the given z-values, and
+     * that causes filter.select to return true. Geophile (via
+     * {@link com.geophile.z.SpatialIndex#removeAll(Iterable, com.geophile.z.Record.Filter)}) orchestrates
+     * the calls to this method. The default implementation visits the z-values in order, using a single
+     * {@link com.geophile.z.Cursor}, and deletes records by {@link com.geophile.z.Cursor#deleteCurrent()}.
+     * An Index implementation can override this method to delete the records more efficiently.
+     * @param zs z-values of the records to be removed, sorted and without duplicates.
+     * @param nZ The number of z-values in zs.
+     * @param filter identifies which {@link com.geophile.z.Record}s associated with the given
+     *                     z-values should be removed.
+     * @return The number of records removed.
+     */
+    public int removeAll(long[] zs, int nZ, Record.Filter<RECORD> filter) throws IOException, InterruptedException
+    {
+        int removed = 0;
+        if (nZ > 0) {
+            Cursor<RECORD> cursor = cursor();
+            RECORD key = newKeyRecord();
+            for (int i = 0; i < nZ; i++) {
+                long z = zs[i];
+                key.z(z);
+                cursor.goTo(key);
+                RECORD record;
+                while ((record = cursor.next()) != null && record.z() == z) {
+                    if (filter.select(record) && cursor.deleteCurrent()) {
+                        removed++;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
     /**
      * Returns a {@link com.geophile.z.Cursor} that can visit this Index's records.
      * @return A {@link com.geophile.z.Cursor} that can visit this Index's records.
@@ -0,0 +1,97 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts the work done by a spatial join. The JoinStatistics of a spatial join are obtained by passing the
+ * {@link java.util.Iterator} returned by {@link com.geophile.z.SpatialJoin} to
+ * {@link com.geophile.z.SpatialJoin#statistics(java.util.Iterator)}. The counts can be read at any time, e.g.
+ * through JMX, after calling {@link #register(String)}. While the spatial join is running, the counts are
+ * updated periodically, (not after every event), so they may be slightly out of date. They are exact once the
+ * Iterator has been exhausted.
+ */
+
+public abstract class JoinStatistics implements JoinStatisticsMBean
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return String.format("entered: %s, exited: %s, random: %s, sequential: %s, " +
+                             "ancestor found: %s, ancestor not found: %s, " +
+                             "filter: %s, filter rejected: %s, max nest: %s, outputs: %s",
+                             getZValuesEntered(),
+                             getZValuesExited(),
+                             getRandomAccesses(),
+                             getSequentialAccesses(),
+                             getAncestorSearchesFound(),
+                             getAncestorSearchesNotFound(),
+                             getFilterInvocations(),
+                             getFilterRejections(),
+                             getMaxNestDepth(),
+                             getOutputs());
+    }
+
+    // JoinStatistics interface
+
+    /**
+     * Publishes these statistics as an MBean on the platform MBeanServer, with the ObjectName
+     * <tt>com.geophile.z:type=JoinStatistics,name=<i>name</i></tt>. The MBean should be removed,
+     * by calling {@link #unregister()}, when it is no longer of interest.
+     * @param name Identifies the spatial join, e.g. the name of the query that it implements.
+     * @return The ObjectName of the MBean.
+     */
+    public synchronized ObjectName register(String name)
+    {
+        if (objectName != null) {
+            throw new IllegalStateException(String.format("%s is already registered as %s", this, objectName));
+        }
+        try {
+            ObjectName objectName = new ObjectName(String.format("%s:type=JoinStatistics,name=%s",
+                                                                 JMX_DOMAIN,
+                                                                 ObjectName.quote(name)));
+            MBEAN_SERVER.registerMBean(new StandardMBean(this, JoinStatisticsMBean.class), objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            throw new SpatialJoinRuntimeException(e);
+        }
+        return objectName;
+    }
+
+    /**
+     * Removes the MBean published by {@link #register(String)}. Does nothing if these statistics
+     * are not registered.
+     */
+    public synchronized void unregister()
+    {
+        if (objectName != null) {
+            try {
+                MBEAN_SERVER.unregisterMBean(objectName);
+            } catch (JMException e) {
+                throw new SpatialJoinRuntimeException(e);
+            } finally {
+                objectName = null;
+            }
+        }
+    }
+
+    // Class state
+
+    private static final String JMX_DOMAIN = "com.geophile.z";
+    private static final MBeanServer MBEAN_SERVER = ManagementFactory.getPlatformMBeanServer();
+
+    // Object state
+
+    private ObjectName objectName;
+}
@@ -0,0 +1,75 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z;
+
+/**
+ * The JMX management interface of {@link com.geophile.z.JoinStatistics}.
+ */
+
+public interface JoinStatisticsMBean
+{
+    /**
+     * The number of z-values entered, (pushed onto the nest of either input).
+     * @return The number of z-values entered.
+     */
+    long getZValuesEntered();
+
+    /**
+     * The number of z-values exited, (popped from the nest of either input).
+     * @return The number of z-values exited.
+     */
+    long getZValuesExited();
+
+    /**
+     * The number of random accesses, (calls to {@link com.geophile.z.Cursor#goTo(Record)}), on either input.
+     * @return The number of random accesses.
+     */
+    long getRandomAccesses();
+
+    /**
+     * The number of sequential accesses, (calls to {@link com.geophile.z.Cursor#next()}), on either input.
+     * @return The number of sequential accesses.
+     */
+    long getSequentialAccesses();
+
+    /**
+     * The number of searches for an ancestor z-value, done when skipping ahead in an input, that found an ancestor.
+     * @return The number of ancestor searches that found an ancestor.
+     */
+    long getAncestorSearchesFound();
+
+    /**
+     * The number of searches for an ancestor z-value, done when skipping ahead in an input, that did not find
+     * an ancestor.
+     * @return The number of ancestor searches that did not find an ancestor.
+     */
+    long getAncestorSearchesNotFound();
+
+    /**
+     * The number of calls to the {@link com.geophile.z.SpatialJoin.Filter}.
+     * @return The number of calls to the filter.
+     */
+    long getFilterInvocations();
+
+    /**
+     * The number of calls to the {@link com.geophile.z.SpatialJoin.Filter} that returned false.
+     * @return The number of calls to the filter that returned false.
+     */
+    long getFilterRejections();
+
+    /**
+     * The largest number of z-values in the nest of either input.
+     * @return The maximum nest depth.
+     */
+    long getMaxNestDepth();
+
+    /**
+     * The number of outputs returned, (after the elimination of duplicates, if requested).
+     * @return The number of outputs returned.
+     */
+    long getOutputs();
+}
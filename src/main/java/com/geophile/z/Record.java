@@ -86,4 +86,36 @@ public interface Record
          */
         RECORD newRecord();
     }
+
+    /**
+     * A Record that can return the {@link com.geophile.z.SpatialObject} whose decomposition produced its z-value.
+     * For such records, {@link com.geophile.z.SpatialJoin.Duplicates#EXCLUDE} suppresses duplicates without
+     * remembering spatial join output, (see {@link com.geophile.z.SpatialJoin}).
+     */
+    interface HasSpatialObject extends Record
+    {
+        /**
+         * Returns the spatial object of this Record.
+         * @return The spatial object whose decomposition produced this Record's z-value, or null if not known.
+         */
+        SpatialObject spatialObject();
+    }
+
+    /**
+     * Used in conjunction with
+     * {@link com.geophile.z.SpatialIndex#bulkLoad(java.util.Iterator, com.geophile.z.Record.Converter)},
+     * a Converter creates a RECORD for a given {@link com.geophile.z.SpatialObject}, to be inserted into
+     * a spatial index. Unlike a {@link com.geophile.z.Record.Factory}, which is set up for one spatial object
+     * at a time, a Converter is given the spatial object of each record it creates.
+     * @param <RECORD> An implementation of Record.
+     */
+    interface Converter<RECORD extends Record>
+    {
+        /**
+         * Returns a new RECORD for the given spatial object.
+         * @param spatialObject The spatial object being loaded.
+         * @return a new RECORD
+         */
+        RECORD newRecord(SpatialObject spatialObject);
+    }
 }
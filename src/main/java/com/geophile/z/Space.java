@@ -9,6 +9,8 @@ package com.geophile.z;
 import com.geophile.z.space.ApplicationSpace;
 import com.geophile.z.space.SpaceImpl;
 
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * A Space represents the space in which {@link com.geophile.z.SpatialObject}s reside. The space can be
  * of any number of dimensions, but Geophile is unlikely to be effective beyond six dimensions. For higher
@@ -57,6 +59,19 @@ public abstract class Space
      */
     public abstract void decompose(SpatialObject spatialObject, long[] zs);
 
+    /**
+     * Decompose spatialObject into z-values, stored in the zs array, as
+     * {@link #decompose(SpatialObject, long[])} does, but using the given pool to compare Regions with
+     * spatialObject once enough Regions are being considered at once. The z-values are exactly those that
+     * {@link #decompose(SpatialObject, long[])} would compute. This is worthwhile for spatial objects whose
+     * {@link com.geophile.z.SpatialObject#compare(com.geophile.z.space.Region)} is expensive, e.g. complex
+     * polygons. spatialObject.compare may be called concurrently, from the threads of the pool.
+     * @param spatialObject The SpatialObject to be decomposed.
+     * @param zs The array containing the z-values resulting from the decomposition.
+     * @param pool Compares Regions with spatialObject.
+     */
+    public abstract void decompose(SpatialObject spatialObject, long[] zs, ForkJoinPool pool);
+
     /**
      * Returns the lower bound of the given z-value;
      * @return The lower bound of the given z-value;
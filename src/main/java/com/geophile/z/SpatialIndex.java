@@ -10,6 +10,8 @@ import com.geophile.z.space.SpaceImpl;
 import com.geophile.z.space.SpatialIndexImpl;
 
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A SpatialIndex organizes a set of {@link SpatialObject}s for the efficient execution of spatial joins.
@@ -57,6 +59,63 @@ public abstract class SpatialIndex<RECORD extends Record>
     public abstract void add(SpatialObject spatialObject, Record.Factory<RECORD> recordFactory, int maxZ)
         throws IOException, InterruptedException;
 
+    /**
+     * Adds up to maxZ records to the index, associated with the given
+     * {@link com.geophile.z.SpatialObject}, as {@link #add(SpatialObject, com.geophile.z.Record.Factory, int)} does.
+     * The decomposition of spatialObject is done using the given ForkJoinPool,
+     * (see {@link com.geophile.z.Space#decompose(SpatialObject, long[], java.util.concurrent.ForkJoinPool)}),
+     * which is worthwhile for large, complex spatial objects. The z-values, and therefore the records, are the
+     * same as for a sequential decomposition.
+     * @param spatialObject The {@link com.geophile.z.SpatialObject} being indexed.
+     * @param recordFactory Creates the record to be added. recordFactory is only called by the
+     *                      thread calling this method.
+     * @param maxZ The maximum number of z-values to be generated for the given {@link com.geophile.z.SpatialObject}.
+     * @param pool Decomposes the spatial object.
+     */
+    public abstract void add(SpatialObject spatialObject,
+                             Record.Factory<RECORD> recordFactory,
+                             int maxZ,
+                             ForkJoinPool pool)
+        throws IOException, InterruptedException;
+
+    /**
+     * Adds the records of a sequence of {@link com.geophile.z.SpatialObject}s to the index, as if each spatial object
+     * were passed to {@link #add(SpatialObject, com.geophile.z.Record.Factory)}. The spatial objects are decomposed
+     * in parallel, on a ForkJoinPool created for the purpose, and the resulting records are passed to the
+     * {@link com.geophile.z.Index} in z-value order, by {@link com.geophile.z.Index#addSorted(java.util.Iterator)}.
+     * @param spatialObjects The {@link com.geophile.z.SpatialObject}s being indexed.
+     * @param recordConverter Creates the records to be added. After creating each record, Geophile will set the
+     *                        record's z-value by calling Record.z(long).
+     */
+    public final void bulkLoad(Iterator<? extends SpatialObject> spatialObjects,
+                               Record.Converter<RECORD> recordConverter)
+        throws IOException, InterruptedException
+    {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            bulkLoad(spatialObjects, recordConverter, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Adds the records of a sequence of {@link com.geophile.z.SpatialObject}s to the index, as if each spatial object
+     * were passed to {@link #add(SpatialObject, com.geophile.z.Record.Factory)}. The spatial objects are decomposed
+     * in parallel, using the given ForkJoinPool, and the resulting records are passed to the
+     * {@link com.geophile.z.Index} in z-value order, by {@link com.geophile.z.Index#addSorted(java.util.Iterator)}.
+     * The records are sorted in memory.
+     * @param spatialObjects The {@link com.geophile.z.SpatialObject}s being indexed.
+     * @param recordConverter Creates the records to be added. After creating each record, Geophile will set the
+     *                        record's z-value by calling Record.z(long). recordConverter is only called by the
+     *                        thread calling this method.
+     * @param pool Decomposes the spatial objects.
+     */
+    public abstract void bulkLoad(Iterator<? extends SpatialObject> spatialObjects,
+                                  Record.Converter<RECORD> recordConverter,
+                                  ForkJoinPool pool)
+        throws IOException, InterruptedException;
+
     /**
      * Removes from this index the record associated with the given {@link com.geophile.z.SpatialObject}.
      * A number of records may be located during the removal. The given {@link com.geophile.z.Record.Filter}
@@ -84,6 +143,36 @@ public abstract class SpatialIndex<RECORD extends Record>
                                    Record.Filter<RECORD> recordFilter,
                                    int maxZ) throws IOException, InterruptedException;
 
+    /**
+     * Removes from this index the records associated with a batch of {@link com.geophile.z.SpatialObject}s.
+     * The spatial objects are all decomposed, and the records are removed in a single pass over the z-values,
+     * in z-value order, which is much faster than calling
+     * {@link #remove(SpatialObject, com.geophile.z.Record.Filter)} for each spatial object. Every record whose
+     * z-value is in the decomposition of one of the spatial objects, and which the given
+     * {@link com.geophile.z.Record.Filter} selects, is removed. So the filter must select the records of all of
+     * the spatial objects being removed.
+     * @param spatialObjects Keys of the records to be removed.
+     * @param recordFilter Identifies the exact records to be removed, causing false positives to be ignored.
+     * @return The number of records removed.
+     */
+    public final int removeAll(Iterable<? extends SpatialObject> spatialObjects,
+                               Record.Filter<RECORD> recordFilter) throws IOException, InterruptedException
+    {
+        return removeAll(spatialObjects, recordFilter, USE_SPATIAL_OBJECT_MAX_Z);
+    }
+
+    /**
+     * Removes from this index the records associated with a batch of {@link com.geophile.z.SpatialObject}s,
+     * as described for {@link #removeAll(Iterable, com.geophile.z.Record.Filter)}.
+     * @param spatialObjects Keys of the records to be removed.
+     * @param recordFilter Identifies the exact records to be removed, causing false positives to be ignored.
+     * @param maxZ The maximum number of z-values to be generated for each {@link com.geophile.z.SpatialObject}.
+     * @return The number of records removed.
+     */
+    public abstract int removeAll(Iterable<? extends SpatialObject> spatialObjects,
+                                  Record.Filter<RECORD> recordFilter,
+                                  int maxZ) throws IOException, InterruptedException;
+
     /**
      * Creates a SpatialIndex. The index
      * should never be manipulated directly at any time. It is intended to be maintained and searched only
@@ -6,10 +6,14 @@
 
 package com.geophile.z;
 
+import com.geophile.z.index.QueryRecord;
 import com.geophile.z.spatialjoin.SpatialJoinImpl;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * <p>Provides the API for specifying a spatial join.
@@ -21,9 +25,13 @@ import java.util.Iterator;
  * The spatial join algorithm
  * may return duplicate {@link com.geophile.z.Pair}s or {@link com.geophile.z.SpatialObject}s.
  * Duplicates.INCLUDE keeps these duplicates.
- * Duplicates.EXCLUDE suppresses duplicates, which is more convenient for applications, but
- * requires the storing of all returned results, and checking each
- * {@link com.geophile.z.Pair} to see whether it has already been returned.
+ * Duplicates.EXCLUDE suppresses duplicates, which is more convenient for applications.
+ * A pair of overlapping spatial objects is returned only for the first region, in z-order, in which their
+ * decompositions overlap, so duplicates are suppressed without storing the results returned.
+ * This relies on the decompositions of the spatial objects, so it applies to records that implement
+ * {@link com.geophile.z.Record.HasSpatialObject}, (e.g. {@link com.geophile.z.index.RecordWithSpatialObject}),
+ * added to their spatial indexes using the spatial object's default maxZ. For other records, all returned
+ * results are stored, and each is checked to see whether it has already been returned.
  * </p><p>
  * A spatial join may yield false positives, which a Filter can remove.
  * </p>
@@ -98,6 +106,49 @@ public abstract class SpatialJoin
                                                        SpatialIndex<RIGHT_RECORD> rightSpatialIndex)
         throws IOException, InterruptedException;
 
+    /**
+     * Returns an {@link java.util.Iterator} that will provide access to spatial join results,
+     * computed in parallel. The space is split into partitions, (ranges of z-values), which are joined
+     * independently using the given pool. The output contains the same {@link com.geophile.z.Pair}s
+     * as the output of {@link #iterator(SpatialIndex, SpatialIndex)}, but not necessarily in the same order.
+     * Both indexes must support concurrent access by multiple {@link com.geophile.z.Cursor}s,
+     * and the filter and {@link com.geophile.z.SpatialJoin.InputObserver}s of this SpatialJoin must be thread-safe.
+     *
+     * @param <LEFT_RECORD>     Type of {@link com.geophile.z.Record} in leftSpatialIndex.
+     * @param <RIGHT_RECORD>    Type of {@link com.geophile.z.Record} in rightSpatialIndex.
+     * @param leftSpatialIndex  One spatial join input.
+     * @param rightSpatialIndex The other spatial join input.
+     * @param pool              Runs the joins of the partitions.
+     * @return An {@link java.util.Iterator} providing access to spatial join results.
+     */
+    public abstract <LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    Iterator<Pair<LEFT_RECORD, RIGHT_RECORD>> iterator(SpatialIndex<LEFT_RECORD> leftSpatialIndex,
+                                                       SpatialIndex<RIGHT_RECORD> rightSpatialIndex,
+                                                       ForkJoinPool pool)
+        throws IOException, InterruptedException;
+
+    /**
+     * Computes a spatial join, passing each result to the given consumer. The results are those that would be
+     * returned by {@link #iterator(SpatialIndex, SpatialIndex)}, in the same order, but no
+     * {@link com.geophile.z.Pair} is created or buffered for a result: The consumer is called as soon as the
+     * result is found. If an index's records are not stable, (see {@link com.geophile.z.Index#stableRecords()}),
+     * then the records passed to the consumer are valid only for the duration of the call, and the consumer
+     * must copy any record that it needs to retain.
+     *
+     * @param <LEFT_RECORD>     Type of {@link com.geophile.z.Record} in leftSpatialIndex.
+     * @param <RIGHT_RECORD>    Type of {@link com.geophile.z.Record} in rightSpatialIndex.
+     * @param leftSpatialIndex  One spatial join input.
+     * @param rightSpatialIndex The other spatial join input.
+     * @param consumer          Receives spatial join results. The spatial join stops as soon as the consumer
+     *                          returns false.
+     * @return The statistics of the spatial join.
+     */
+    public abstract <LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    JoinStatistics join(SpatialIndex<LEFT_RECORD> leftSpatialIndex,
+                        SpatialIndex<RIGHT_RECORD> rightSpatialIndex,
+                        PairConsumer<? super LEFT_RECORD, ? super RIGHT_RECORD> consumer)
+        throws IOException, InterruptedException;
+
     /**
      * Returns an {@link java.util.Iterator} that will provide access to spatial join results.
      * The objects accessed through the {@link java.util.Iterator} are {@link com.geophile.z.SpatialObject}s
@@ -114,6 +165,72 @@ public abstract class SpatialJoin
                               SpatialIndex<RECORD> data)
         throws IOException, InterruptedException;
 
+    /**
+     * Returns an {@link java.util.Iterator} that will provide access to the results of a batch of queries.
+     * The objects accessed through the {@link java.util.Iterator} are {@link com.geophile.z.Pair}s, such that
+     * the right object is a {@link com.geophile.z.Record} from the data argument, and the left object is a
+     * {@link com.geophile.z.index.QueryRecord} identifying the query object that it overlaps.
+     * All of the queries are answered in a single pass over data, so this is more efficient than
+     * calling {@link #iterator(SpatialObject, SpatialIndex)} for each query.
+     * The results are filtered using the given filter, as for {@link #iterator(SpatialObject, SpatialIndex)}.
+     *
+     * @param <RECORD> Type of {@link com.geophile.z.Record} in data.
+     * @param queries  Used to locate data elements of interest.
+     * @param data     The set of {@link com.geophile.z.SpatialObject}s to be searched.
+     * @return An {@link java.util.Iterator} providing access to spatial join results.
+     */
+    public abstract <RECORD extends Record>
+    Iterator<Pair<QueryRecord, RECORD>> iterator(List<? extends SpatialObject> queries,
+                                                 SpatialIndex<RECORD> data)
+        throws IOException, InterruptedException;
+
+    /**
+     * Returns a {@link com.geophile.z.Flow.Publisher} of spatial join results. Each subscriber receives the
+     * results that would be returned by {@link #iterator(SpatialIndex, SpatialIndex)}, from its own spatial join.
+     * The spatial join is computed by tasks run by the given executor, and only as results are requested,
+     * (see {@link com.geophile.z.Flow.Subscription#request(long)}). An IOException or InterruptedException
+     * encountered by the spatial join is passed to {@link com.geophile.z.Flow.Subscriber#onError(Throwable)}.
+     *
+     * @param <LEFT_RECORD>     Type of {@link com.geophile.z.Record} in leftSpatialIndex.
+     * @param <RIGHT_RECORD>    Type of {@link com.geophile.z.Record} in rightSpatialIndex.
+     * @param leftSpatialIndex  One spatial join input.
+     * @param rightSpatialIndex The other spatial join input.
+     * @param executor          Runs the spatial joins of subscribers.
+     * @return A {@link com.geophile.z.Flow.Publisher} of spatial join results.
+     */
+    public abstract <LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    Flow.Publisher<Pair<LEFT_RECORD, RIGHT_RECORD>> publisher(SpatialIndex<LEFT_RECORD> leftSpatialIndex,
+                                                              SpatialIndex<RIGHT_RECORD> rightSpatialIndex,
+                                                              Executor executor);
+
+    /**
+     * Returns a {@link com.geophile.z.Flow.Publisher} of the results of a spatial query. Each subscriber receives
+     * the results that would be returned by {@link #iterator(SpatialObject, SpatialIndex)}, computed as for
+     * {@link #publisher(SpatialIndex, SpatialIndex, Executor)}.
+     *
+     * @param <RECORD> Type of {@link com.geophile.z.Record} in data.
+     * @param query    Used to locate data elements of interest.
+     * @param data     The set of {@link com.geophile.z.SpatialObject}s to be searched.
+     * @param executor Runs the spatial joins of subscribers.
+     * @return A {@link com.geophile.z.Flow.Publisher} of spatial join results.
+     */
+    public abstract <RECORD extends Record>
+    Flow.Publisher<RECORD> publisher(SpatialObject query,
+                                     SpatialIndex<RECORD> data,
+                                     Executor executor);
+
+    /**
+     * Returns the {@link com.geophile.z.JoinStatistics} of a spatial join. The statistics are updated as
+     * the iterator is used.
+     *
+     * @param iterator An {@link java.util.Iterator} returned by one of the iterator methods of a SpatialJoin.
+     * @return The statistics of the spatial join computed by the given iterator.
+     */
+    public static JoinStatistics statistics(Iterator<?> iterator)
+    {
+        return SpatialJoinImpl.statistics(iterator);
+    }
+
     /**
      * Specifies duplicate-handling behavior for spatial joins.
      */
@@ -127,8 +244,11 @@ public abstract class SpatialJoin
 
         /**
          * Suppress duplicate {@link com.geophile.z.Pair}s found by the spatial join algorithm. This option
-         * is somewhat slower, and has a higher memory requirement, proportional to the number of
-         * {@link com.geophile.z.Pair}s retrieved, but should be more convenient for the application.
+         * is somewhat slower, but should be more convenient for the application. If the records of both inputs
+         * implement {@link com.geophile.z.Record.HasSpatialObject}, and were added using the spatial object's
+         * default maxZ, then duplicates are recognized from the decompositions of the spatial objects, using a
+         * bounded amount of memory. Otherwise, every {@link com.geophile.z.Pair} returned is remembered, so the
+         * memory requirement is proportional to the number of {@link com.geophile.z.Pair}s retrieved.
          */
         EXCLUDE
     }
@@ -164,6 +284,10 @@ public abstract class SpatialJoin
         /**
          * Called when a sequential access has occurred on the given cursor.
          * This method must not cause the cursor state to be modified in any way.
+         * If the cursor supports batches, (see {@link com.geophile.z.Cursor#batchesSupported()}), then the spatial
+         * join retrieves records from it in batches, and reports a sequential access for each record of a batch
+         * as the join reaches that record. The cursor may then be positioned up to a batch, (64 records), ahead
+         * of record, so record, and not the cursor's current record, is the one accessed.
          * @param cursor Cursor used to implement the sequential access.
          * @param zRandomAccess The z-value located by the random access that preceded the current
          *                      sequential access.
@@ -199,4 +323,22 @@ public abstract class SpatialJoin
          */
         boolean overlap(LEFT left, RIGHT right);
     }
+
+    /**
+     * Receives spatial join results from {@link #join(SpatialIndex, SpatialIndex, PairConsumer)}.
+     *
+     * @param <LEFT_RECORD>  Type of {@link com.geophile.z.Record} from the left spatial join input.
+     * @param <RIGHT_RECORD> Type of {@link com.geophile.z.Record} from the right spatial join input.
+     */
+    public interface PairConsumer<LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    {
+        /**
+         * Receives one spatial join result.
+         *
+         * @param left  Record from the left side of the spatial join.
+         * @param right Record from the right side of the spatial join.
+         * @return true to continue the spatial join, false to stop it.
+         */
+        boolean accept(LEFT_RECORD left, RIGHT_RECORD right);
+    }
 }
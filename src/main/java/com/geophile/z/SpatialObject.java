@@ -61,4 +61,18 @@ public interface SpatialObject
      * @param buffer Receives the serialized bytes.
      */
     void writeTo(ByteBuffer buffer);
+
+    /**
+     * A SpatialObject that can be deserialized without copying its serialized form out of the buffer.
+     */
+    interface LazilyReadable extends SpatialObject
+    {
+        /**
+         * Like {@link #readFrom(java.nio.ByteBuffer)}, but this spatial object may keep a view of the buffer's
+         * contents, and defer deserializing them until they are needed. The contents of the buffer must not change
+         * while this spatial object is in use.
+         * @param buffer Contains the serialized bytes of a spatial object.
+         */
+        void readLazilyFrom(ByteBuffer buffer);
+    }
 }
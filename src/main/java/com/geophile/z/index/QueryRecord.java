@@ -0,0 +1,70 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index;
+
+import com.geophile.z.Record;
+
+/**
+ * A {@link com.geophile.z.Record} carrying a query object of a batch of queries, and the position of that
+ * query within the batch. Returned as the left side of the {@link com.geophile.z.Pair}s produced by
+ * {@link com.geophile.z.SpatialJoin#iterator(java.util.List, com.geophile.z.SpatialIndex)}.
+ */
+
+public class QueryRecord extends RecordWithSpatialObject
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return String.format("(#%s: %s)", query, super.toString());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return super.hashCode() ^ query;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        return super.equals(o) && o instanceof QueryRecord && ((QueryRecord) o).query == query;
+    }
+
+    // Record interface
+
+    @Override
+    public void copyTo(Record record)
+    {
+        super.copyTo(record);
+        ((QueryRecord) record).query = query;
+    }
+
+    // QueryRecord interface
+
+    /**
+     * The position of this record's query object within the batch of queries.
+     * @return The position of this record's query object within the batch of queries.
+     */
+    public int query()
+    {
+        return query;
+    }
+
+    public void query(int newQuery)
+    {
+        query = newQuery;
+    }
+
+    public QueryRecord()
+    {}
+
+    // Object state
+
+    private int query;
+}
@@ -9,7 +9,7 @@ package com.geophile.z.index;
 import com.geophile.z.Record;
 import com.geophile.z.SpatialObject;
 
-public class RecordWithSpatialObject implements Record
+public class RecordWithSpatialObject implements Record.HasSpatialObject
 {
     // Object interface
 
@@ -61,13 +61,16 @@ public class RecordWithSpatialObject implements Record
         that.spatialObjectHash = this.spatialObjectHash;
     }
 
-    // RecordWithSpatialObject interface
+    // Record.HasSpatialObject interface
 
+    @Override
     public SpatialObject spatialObject()
     {
         return spatialObject;
     }
 
+    // RecordWithSpatialObject interface
+
     public void spatialObject(SpatialObject spatialObject)
     {
         this.spatialObject = spatialObject;
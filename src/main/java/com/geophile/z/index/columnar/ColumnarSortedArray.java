@@ -0,0 +1,361 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.columnar;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.index.RecordWithSpatialObject;
+import com.geophile.z.util.IntroSort;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ColumnarSortedArray implements the {@link com.geophile.z.Index} interface in terms of parallel arrays
+ * (columns): a long[] of z-values, and one or more payload columns, maintained by a subclass. No
+ * per-record objects are stored, and searches operate directly on the z-value column. Records
+ * retrieved by a {@link com.geophile.z.Cursor} are not stable, (they are materialized from the columns
+ * into a record owned by the cursor).
+ *
+ * Like {@link com.geophile.z.index.sortedarray.SortedArray}, records are appended by add, and the columns are
+ * sorted, using a primitive sort on the z-value column, when a cursor is created.
+ * A ColumnarSortedArray is not safe for use for simultaneous use by multiple threads.
+ *
+ * {@link ColumnarSortedArray.OfIds} stores an int id with each z-value, and
+ * {@link ColumnarSortedArray.OfSpatialObjects} stores a {@link com.geophile.z.SpatialObject} with each z-value.
+ * @param <RECORD> The type of {@link com.geophile.z.Record} contained by this Index.
+ */
+
+public abstract class ColumnarSortedArray<RECORD extends Record> extends Index<RECORD>
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record)
+    {
+        ensureSpace(n + 1);
+        zs[n] = record.z();
+        storePayload(n, record);
+        n++;
+        sorted = false;
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<RECORD> filter)
+    {
+        ensureSorted();
+        boolean removeRecordFound = false;
+        RECORD record = newRecord();
+        int position = lowerBound(z, 0, n);
+        while (position < n && zs[position] == z && !removeRecordFound) {
+            record.z(z);
+            loadPayload(position, record);
+            if (filter.select(record)) {
+                removeRecordFound = true;
+            } else {
+                position++;
+            }
+        }
+        if (removeRecordFound) {
+            deleteRecord(position);
+        }
+        return removeRecordFound;
+    }
+
+    @Override
+    public Cursor<RECORD> cursor()
+    {
+        ensureSorted();
+        return new ColumnarSortedArrayCursor<>(this);
+    }
+
+    @Override
+    public abstract RECORD newRecord();
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return false;
+    }
+
+    // ColumnarSortedArray interface
+
+    public void reset()
+    {
+        n = 0;
+        sorted = true;
+    }
+
+    // For use by subclasses
+
+    /**
+     * Ensures that the payload column(s) have room for at least the given number of records.
+     * @param capacity The required capacity.
+     */
+    protected abstract void ensurePayloadCapacity(int capacity);
+
+    /**
+     * Copies the payload of the given record into the payload column(s) at the given position.
+     * @param position Position in the column(s).
+     * @param record Source of the payload.
+     */
+    protected abstract void storePayload(int position, RECORD record);
+
+    /**
+     * Copies the payload at the given position into the given record. The record's z-value has already been set.
+     * @param position Position in the column(s).
+     * @param record Receives the payload.
+     */
+    protected abstract void loadPayload(int position, RECORD record);
+
+    /**
+     * Moves count payloads starting at position from to position to, as System.arraycopy would.
+     * @param from Position of the first payload to move.
+     * @param to Destination of the first payload.
+     * @param count Number of payloads to move.
+     */
+    protected abstract void movePayload(int from, int to, int count);
+
+    /**
+     * Exchanges the payloads at positions i and j.
+     * @param i A position in the column(s).
+     * @param j A position in the column(s).
+     */
+    protected abstract void swapPayload(int i, int j);
+
+    /**
+     * Clears the payload at the given position, so that the column(s) do not retain references to removed objects.
+     * @param position A position in the column(s).
+     */
+    protected void clearPayload(int position)
+    {}
+
+    protected ColumnarSortedArray()
+    {}
+
+    // For use by this package
+
+    // Position of the first z-value >= z, in [from, to).
+    int lowerBound(long z, int from, int to)
+    {
+        int lo = from;
+        int hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (zs[mid] < z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    void deleteRecord(int at)
+    {
+        System.arraycopy(zs, at + 1, zs, at, n - at - 1);
+        movePayload(at + 1, at, n - at - 1);
+        clearPayload(--n);
+    }
+
+    // For use by this class
+
+    private void ensureSorted()
+    {
+        if (!sorted) {
+            if (!ascending()) {
+                // order records the original positions, breaking ties between equal z-values so that the sort
+                // is stable, (records with the same z-value stay in insertion order, as in SortedArray).
+                order = new int[n];
+                for (int i = 0; i < n; i++) {
+                    order[i] = i;
+                }
+                IntroSort.sort(columns, 0, n);
+                order = null;
+            }
+            sorted = true;
+        }
+    }
+
+    private boolean ascending()
+    {
+        for (int i = 1; i < n; i++) {
+            if (zs[i] < zs[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ensureSpace(int n)
+    {
+        if (zs.length < n) {
+            int newLength = Math.max(MIN_ARRAY_SIZE, (int) (n * 1.5));
+            zs = Arrays.copyOf(zs, newLength);
+            ensurePayloadCapacity(newLength);
+        }
+    }
+
+    // Class state
+
+    private static final AtomicInteger idGenerator = new AtomicInteger(0);
+    private static final int MIN_ARRAY_SIZE = 20;
+
+    // Object state
+
+    private final String name = String.format("ColumnarSortedArray(%s)", idGenerator.getAndIncrement());
+    long[] zs = new long[0];
+    int n = 0;
+    private boolean sorted = true;
+    // Original positions of records, used only while sorting.
+    private int[] order;
+    // Each exchange of z-values is mirrored in order and in the payload column(s).
+    private final IntroSort.Sortable columns =
+        new IntroSort.Sortable()
+        {
+            @Override
+            public boolean less(long i, long j)
+            {
+                long zi = zs[(int) i];
+                long zj = zs[(int) j];
+                return zi < zj || zi == zj && order[(int) i] < order[(int) j];
+            }
+
+            @Override
+            public void swap(long i, long j)
+            {
+                swap((int) i, (int) j);
+            }
+
+            private void swap(int i, int j)
+            {
+                long z = zs[i];
+                zs[i] = zs[j];
+                zs[j] = z;
+                int o = order[i];
+                order[i] = order[j];
+                order[j] = o;
+                swapPayload(i, j);
+            }
+        };
+
+    // Inner classes
+
+    /**
+     * A ColumnarSortedArray whose payload is an int id, stored in an int[] column.
+     */
+    public static class OfIds extends ColumnarSortedArray<IdRecord>
+    {
+        @Override
+        public IdRecord newRecord()
+        {
+            return new IdRecord();
+        }
+
+        @Override
+        protected void ensurePayloadCapacity(int capacity)
+        {
+            ids = Arrays.copyOf(ids, capacity);
+        }
+
+        @Override
+        protected void storePayload(int position, IdRecord record)
+        {
+            ids[position] = record.id();
+        }
+
+        @Override
+        protected void loadPayload(int position, IdRecord record)
+        {
+            record.id(ids[position]);
+        }
+
+        @Override
+        protected void movePayload(int from, int to, int count)
+        {
+            System.arraycopy(ids, from, ids, to, count);
+        }
+
+        @Override
+        protected void swapPayload(int i, int j)
+        {
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+
+        private int[] ids = new int[0];
+    }
+
+    /**
+     * A ColumnarSortedArray whose payload is a {@link com.geophile.z.SpatialObject}, stored in an Object[] column.
+     */
+    public static class OfSpatialObjects extends ColumnarSortedArray<RecordWithSpatialObject>
+    {
+        @Override
+        public RecordWithSpatialObject newRecord()
+        {
+            return new RecordWithSpatialObject();
+        }
+
+        @Override
+        protected void ensurePayloadCapacity(int capacity)
+        {
+            spatialObjects = Arrays.copyOf(spatialObjects, capacity);
+        }
+
+        @Override
+        protected void storePayload(int position, RecordWithSpatialObject record)
+        {
+            spatialObjects[position] = record.spatialObject();
+        }
+
+        @Override
+        protected void loadPayload(int position, RecordWithSpatialObject record)
+        {
+            record.spatialObject(spatialObjects[position]);
+        }
+
+        @Override
+        protected void movePayload(int from, int to, int count)
+        {
+            System.arraycopy(spatialObjects, from, spatialObjects, to, count);
+        }
+
+        @Override
+        protected void swapPayload(int i, int j)
+        {
+            SpatialObject spatialObject = spatialObjects[i];
+            spatialObjects[i] = spatialObjects[j];
+            spatialObjects[j] = spatialObject;
+        }
+
+        @Override
+        protected void clearPayload(int position)
+        {
+            spatialObjects[position] = null;
+        }
+
+        private SpatialObject[] spatialObjects = new SpatialObject[0];
+    }
+}
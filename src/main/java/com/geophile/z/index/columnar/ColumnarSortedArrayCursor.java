@@ -0,0 +1,109 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.columnar;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+
+public class ColumnarSortedArrayCursor<RECORD extends Record> extends Cursor<RECORD>
+{
+    // Cursor interface
+
+    @Override
+    public RECORD next() throws IOException, InterruptedException
+    {
+        return neighbor();
+    }
+
+    @Override
+    public void goTo(RECORD key)
+    {
+        this.startZ = key.z();
+        state(State.NEVER_USED);
+    }
+
+    @Override
+    public boolean deleteCurrent() throws IOException, InterruptedException
+    {
+        boolean deleted = false;
+        if (state() == State.IN_USE) {
+            assert lastReportedPosition != UNDEFINED;
+            columnarSortedArray.deleteRecord(lastReportedPosition);
+            if (position != DONE && position > lastReportedPosition) {
+                position--;
+            }
+            deleted = true;
+        }
+        return deleted;
+    }
+
+    // ColumnarSortedArrayCursor interface
+
+    public ColumnarSortedArrayCursor(ColumnarSortedArray<RECORD> columnarSortedArray)
+    {
+        super(columnarSortedArray);
+        this.columnarSortedArray = columnarSortedArray;
+        this.record = columnarSortedArray.newRecord();
+    }
+
+    // For use by this class
+
+    private RECORD neighbor() throws IOException, InterruptedException
+    {
+        switch (state()) {
+            case NEVER_USED:
+                startIteration();
+                break;
+            case IN_USE:
+                break;
+            case DONE:
+                assert current() == null;
+                return null;
+        }
+        if (position != DONE) {
+            long z = columnarSortedArray.zs[position];
+            record.z(z);
+            columnarSortedArray.loadPayload(position, record);
+            current(record);
+            startZ = z;
+            lastReportedPosition = position;
+            state(State.IN_USE);
+            position++;
+            assert position <= columnarSortedArray.n : position;
+            if (position == columnarSortedArray.n) {
+                position = DONE;
+            }
+        } else {
+            close();
+        }
+        return current();
+    }
+
+    private void startIteration()
+    {
+        int n = columnarSortedArray.n;
+        position = columnarSortedArray.lowerBound(startZ, 0, n);
+        if (position == n) {
+            position = DONE;
+        }
+    }
+
+    // Object state
+
+    private static final int DONE = -1;
+    private static final int UNDEFINED = -1;
+
+    private final ColumnarSortedArray<RECORD> columnarSortedArray;
+    // Materializes the current position before it is copied to the Cursor's current record.
+    private final RECORD record;
+    private long startZ;
+    private int position;
+    // Position of the last record returned via next(). Needed to support deleteCurrent().
+    private int lastReportedPosition = UNDEFINED;
+}
@@ -0,0 +1,106 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.columnar;
+
+import com.geophile.z.Record;
+
+/**
+ * A {@link com.geophile.z.Record} identifying a spatial object by an int id, e.g. a position in an
+ * application's own array of spatial objects. Stored by {@link ColumnarSortedArray.OfIds}.
+ */
+
+public class IdRecord implements Record
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return String.format("(0x%016x: %s)", z, id);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        return o != null && o instanceof IdRecord && ((IdRecord) o).id == id;
+    }
+
+    // Record interface
+
+    @Override
+    public long z()
+    {
+        return z;
+    }
+
+    @Override
+    public void z(long newZ)
+    {
+        z = newZ;
+    }
+
+    @Override
+    public void copyTo(Record record)
+    {
+        if (record == this) {
+            throw new IllegalArgumentException();
+        }
+        IdRecord that = (IdRecord) record;
+        that.z = this.z;
+        that.id = this.id;
+    }
+
+    // IdRecord interface
+
+    public int id()
+    {
+        return id;
+    }
+
+    public void id(int newId)
+    {
+        id = newId;
+    }
+
+    public IdRecord()
+    {}
+
+    public IdRecord(int id)
+    {
+        this.id = id;
+    }
+
+    // Object state
+
+    private long z;
+    private int id;
+
+    // Inner classes
+
+    public static class Factory implements Record.Factory<IdRecord>
+    {
+        @Override
+        public IdRecord newRecord()
+        {
+            return new IdRecord(id);
+        }
+
+        public Factory setup(int id)
+        {
+            this.id = id;
+            return this;
+        }
+
+        private int id;
+    }
+}
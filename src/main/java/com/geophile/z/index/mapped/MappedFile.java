@@ -0,0 +1,165 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.mapped;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+
+A MappedFile maps a file into memory as a sequence of segments. A single MappedByteBuffer is limited to
+2GB, so a file of arbitrary size is mapped in segments of segmentSize bytes, (a power of 2). Each segment other
+than the last is full-sized. The last segment is grown by remapping it, doubling its size each time, until it
+reaches segmentSize, at which point a new segment is started. Positions are longs, and callers are responsible for
+ensuring that an item read or written at a position does not straddle a segment boundary.
+
+Buffers of segments that have been remapped are not unmapped explicitly, (there is no supported way to do
+this). They remain valid, so slices of them handed out earlier can still be read.
+
+*/
+
+class MappedFile implements Closeable
+{
+    // Closeable interface
+
+    @Override
+    public void close() throws IOException
+    {
+        force();
+        channel.close();
+        file.close();
+    }
+
+    // MappedFile interface
+
+    public long capacity()
+    {
+        return capacity;
+    }
+
+    public int segmentSize()
+    {
+        return segmentSize;
+    }
+
+    public void ensureCapacity(long size) throws IOException
+    {
+        while (capacity < size) {
+            int last = segments.size() - 1;
+            if (last >= 0 && segments.get(last).capacity() < segmentSize) {
+                long lastStart = (long) last << segmentShift;
+                segments.set(last, map(lastStart, grow(segments.get(last).capacity(), size - lastStart)));
+            } else {
+                long start = (long) (last + 1) << segmentShift;
+                segments.add(map(start, grow(0, size - start)));
+            }
+            int lastSegment = segments.size() - 1;
+            capacity = ((long) lastSegment << segmentShift) + segments.get(lastSegment).capacity();
+        }
+    }
+
+    // Returns the segment containing the given position. Use absolute gets and puts, at segmentOffset(position).
+    public ByteBuffer segment(long position)
+    {
+        return segments.get((int) (position >>> segmentShift));
+    }
+
+    public int segmentOffset(long position)
+    {
+        return (int) (position & segmentMask);
+    }
+
+    public long segmentStart(long position)
+    {
+        return position & ~segmentMask;
+    }
+
+    public long getLong(long position)
+    {
+        return segment(position).getLong(segmentOffset(position));
+    }
+
+    public void putLong(long position, long x)
+    {
+        segment(position).putLong(segmentOffset(position), x);
+    }
+
+    public int getInt(long position)
+    {
+        return segment(position).getInt(segmentOffset(position));
+    }
+
+    public void putInt(long position, int x)
+    {
+        segment(position).putInt(segmentOffset(position), x);
+    }
+
+    public void force()
+    {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    public MappedFile(File file, int segmentSize) throws IOException
+    {
+        if (segmentSize < MIN_SEGMENT_SIZE || Integer.bitCount(segmentSize) != 1) {
+            throw new IllegalArgumentException(Integer.toString(segmentSize));
+        }
+        this.segmentSize = segmentSize;
+        this.segmentShift = Integer.numberOfTrailingZeros(segmentSize);
+        this.segmentMask = segmentSize - 1;
+        this.file = new RandomAccessFile(file, "rw");
+        this.channel = this.file.getChannel();
+        // Map the existing contents of the file.
+        long length = channel.size();
+        long start = 0;
+        while (start < length) {
+            segments.add(map(start, (int) Math.min(segmentSize, length - start)));
+            start += segmentSize;
+        }
+        capacity = length;
+    }
+
+    // For use by this class
+
+    private MappedByteBuffer map(long start, int size) throws IOException
+    {
+        // Mapping beyond the end of the file extends the file.
+        return channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+    }
+
+    private int grow(int size, long needed)
+    {
+        long newSize = Math.max(MIN_SEGMENT_SIZE, 2L * size);
+        while (newSize < needed) {
+            newSize *= 2;
+        }
+        return (int) Math.min(segmentSize, newSize);
+    }
+
+    // Class state
+
+    static final int MIN_SEGMENT_SIZE = 1 << 12;
+
+    // Object state
+
+    private final int segmentSize;
+    private final int segmentShift;
+    private final long segmentMask;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private long capacity;
+}
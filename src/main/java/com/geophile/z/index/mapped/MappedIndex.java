@@ -0,0 +1,468 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.mapped;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.util.IntroSort;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * MappedIndex implements the {@link com.geophile.z.Index} interface in terms of two memory-mapped files
+ * in a directory, so that the index can be larger than the heap, and survives restarts. Opening
+ * an existing MappedIndex maps the files; nothing is read or deserialized up front.
+ *
+ * <ul>
+ * <li> <b>keys</b>: A header, followed by a directory of (z-value, data offset) entries.
+ * <li> <b>data</b>: For each record, an int length followed by the record's payload, as written by
+ *     {@link #writePayload(com.geophile.z.Record, java.nio.ByteBuffer)}.
+ * </ul>
+ *
+ * Like {@link com.geophile.z.index.sortedarray.SortedArray}, records are appended by add, and the directory
+ * is sorted in place when a cursor is created. Records with the same z-value are kept in insertion order.
+ * Removing a record marks its directory entry as deleted, and the directory is compacted, (in one pass),
+ * when a cursor is created, if more than a quarter of the entries are deleted. So entries move only when a
+ * cursor is created, (by sorting or compaction), and cursors created earlier should not be used after that.
+ * Space in the data file occupied by removed records is not reclaimed, since records retrieved earlier may
+ * still refer to it, (see {@link #readPayload(java.nio.ByteBuffer, com.geophile.z.Record)}). To reclaim it,
+ * copy the records to a new MappedIndex.
+ *
+ * Records retrieved by a {@link com.geophile.z.Cursor} are not stable. The payload is passed to
+ * {@link #readPayload(java.nio.ByteBuffer, com.geophile.z.Record)} as a read-only view of the mapped data file,
+ * without copying.
+ *
+ * A MappedIndex is not safe for simultaneous use by multiple threads. Changes are written to disk
+ * by {@link #force()} and {@link #close()}. Until then, the files on disk may not reflect the changes, (e.g. the
+ * header, which records the number of directory entries, is only updated by force and close).
+ * @param <RECORD> The type of {@link com.geophile.z.Record} contained by this Index.
+ */
+
+public abstract class MappedIndex<RECORD extends Record> extends Index<RECORD> implements Closeable
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record) throws IOException
+    {
+        long z = record.z();
+        long offset = appendPayload(record);
+        keys.ensureCapacity(entry(n + 1));
+        long entry = entry(n);
+        keys.putLong(entry, z);
+        keys.putLong(entry + OFFSET, offset);
+        if (sorted && n > 0 && z < z(n - 1)) {
+            sorted = false;
+        }
+        n++;
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<RECORD> filter)
+    {
+        ensureSorted();
+        boolean removeRecordFound = false;
+        RECORD record = newRecord();
+        long position = lowerBound(z);
+        while (position < n && z(position) == z && !removeRecordFound) {
+            if (!deleted(position)) {
+                readRecord(position, record);
+                removeRecordFound = filter.select(record);
+            }
+            if (!removeRecordFound) {
+                position++;
+            }
+        }
+        if (removeRecordFound) {
+            deleteRecord(position);
+        }
+        return removeRecordFound;
+    }
+
+    @Override
+    public Cursor<RECORD> cursor()
+    {
+        compactIfNeeded();
+        ensureSorted();
+        return new MappedIndexCursor<>(this);
+    }
+
+    @Override
+    public abstract RECORD newRecord();
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return false;
+    }
+
+    // Closeable interface
+
+    @Override
+    public void close() throws IOException
+    {
+        writeHeader();
+        keys.close();
+        data.close();
+    }
+
+    // MappedIndex interface
+
+    /**
+     * Returns the number of records in this index.
+     * @return The number of records in this index.
+     */
+    public long size()
+    {
+        return n - nDeleted;
+    }
+
+    /**
+     * Writes all changes to this index to disk.
+     */
+    public void force()
+    {
+        writeHeader();
+        keys.force();
+        data.force();
+    }
+
+    // For use by subclasses
+
+    /**
+     * Writes the payload of the given record, (i.e., everything but the z-value), to the given buffer.
+     * @param record The record being added.
+     * @param buffer Receives the payload. The buffer's limit may be smaller than the payload, in which case
+     *               BufferOverflowException is thrown, and this method is called again with a larger buffer.
+     * @throws BufferOverflowException if buffer does not have room for the payload.
+     */
+    protected abstract void writePayload(RECORD record, ByteBuffer buffer) throws BufferOverflowException;
+
+    /**
+     * Sets the payload of the given record from a payload written by writePayload.
+     * The record's z-value has already been set.
+     * @param payload A read-only view of the payload in the mapped data file, positioned at its first byte,
+     *                with a limit at the end of the payload. The view remains valid, and may be retained by the record.
+     * @param record Receives the payload.
+     */
+    protected abstract void readPayload(ByteBuffer payload, RECORD record);
+
+    /**
+     * Opens the MappedIndex stored in the given directory, creating it if it does not exist.
+     * @param directory Contains the files of the index.
+     * @throws IOException if the files can't be opened or mapped, or if they do not contain a MappedIndex.
+     */
+    protected MappedIndex(File directory) throws IOException
+    {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    // For use by this package
+
+    MappedIndex(File directory, int dataSegmentSize) throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(String.format("Unable to create %s", directory));
+        }
+        this.name = String.format("MappedIndex(%s)", directory);
+        this.keys = new MappedFile(new File(directory, KEYS_FILE), DEFAULT_SEGMENT_SIZE);
+        if (keys.capacity() == 0) {
+            keys.ensureCapacity(HEADER_SIZE);
+            keys.putLong(MAGIC_POSITION, MAGIC);
+            keys.putInt(VERSION_POSITION, VERSION);
+            keys.putInt(SEGMENT_SIZE_POSITION, dataSegmentSize);
+            n = 0;
+            nDeleted = 0;
+            dataEnd = 0;
+            sorted = true;
+            writeHeader();
+        } else {
+            if (keys.capacity() < HEADER_SIZE ||
+                keys.getLong(MAGIC_POSITION) != MAGIC ||
+                keys.getInt(VERSION_POSITION) != VERSION) {
+                throw new IOException(String.format("%s does not contain a MappedIndex", directory));
+            }
+            // Record boundaries in the data file depend on the segment size used when the records were written.
+            dataSegmentSize = keys.getInt(SEGMENT_SIZE_POSITION);
+            n = keys.getLong(COUNT_POSITION);
+            nDeleted = keys.getLong(DELETED_POSITION);
+            dataEnd = keys.getLong(DATA_END_POSITION);
+            sorted = keys.getInt(SORTED_POSITION) != 0;
+        }
+        this.data = new MappedFile(new File(directory, DATA_FILE), dataSegmentSize);
+    }
+
+    // Number of directory entries, including deleted ones.
+    long entries()
+    {
+        return n;
+    }
+
+    long z(long position)
+    {
+        return keys.getLong(entry(position));
+    }
+
+    void readRecord(long position, RECORD record)
+    {
+        long entry = entry(position);
+        record.z(keys.getLong(entry));
+        long offset = keys.getLong(entry + OFFSET);
+        ByteBuffer segment = data.segment(offset);
+        int start = data.segmentOffset(offset) + LENGTH_SIZE;
+        int length = segment.getInt(start - LENGTH_SIZE);
+        ByteBuffer payload = segment.asReadOnlyBuffer();
+        payload.limit(start + length);
+        payload.position(start);
+        readPayload(payload.slice(), record);
+    }
+
+    boolean deleted(long position)
+    {
+        return keys.getLong(entry(position) + OFFSET) == DELETED;
+    }
+
+    // Position of the first z-value >= z. The entry may be deleted.
+    long lowerBound(long z)
+    {
+        long lo = 0;
+        long hi = n;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (z(mid) < z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Marks the entry as deleted. The entry keeps its z-value, so the directory stays sorted.
+    void deleteRecord(long at)
+    {
+        assert !deleted(at) : at;
+        keys.putLong(entry(at) + OFFSET, DELETED);
+        nDeleted++;
+    }
+
+    // For use by this class
+
+    // Writes the record's payload at the end of the data file, and returns its offset. A payload never
+    // straddles a segment boundary: if the current segment is full, the payload is written at the start of the next one.
+    private long appendPayload(RECORD record) throws IOException
+    {
+        long start = dataEnd;
+        while (true) {
+            data.ensureCapacity(start + LENGTH_SIZE);
+            ByteBuffer segment = data.segment(start);
+            int offset = data.segmentOffset(start);
+            ByteBuffer buffer = segment.duplicate();
+            buffer.position(offset + LENGTH_SIZE);
+            try {
+                writePayload(record, buffer);
+                int length = buffer.position() - offset - LENGTH_SIZE;
+                segment.putInt(offset, length);
+                // Keep records aligned, so that the length of the next record does not straddle a segment boundary.
+                dataEnd = (start + LENGTH_SIZE + length + ALIGNMENT - 1) & -ALIGNMENT;
+                return start;
+            } catch (BufferOverflowException e) {
+                if (segment.capacity() < data.segmentSize()) {
+                    // The segment is the last one, and can grow.
+                    data.ensureCapacity(data.capacity() + 1);
+                } else if (offset > 0) {
+                    start = data.segmentStart(start) + data.segmentSize();
+                } else {
+                    throw new IllegalArgumentException(
+                        String.format("%s: payload of %s exceeds segment size", this, record));
+                }
+            }
+        }
+    }
+
+    private void writeHeader()
+    {
+        keys.putLong(COUNT_POSITION, n);
+        keys.putLong(DELETED_POSITION, nDeleted);
+        keys.putLong(DATA_END_POSITION, dataEnd);
+        keys.putInt(SORTED_POSITION, sorted ? 1 : 0);
+    }
+
+    private void ensureSorted()
+    {
+        if (!sorted) {
+            IntroSort.sort(directory, 0, n);
+            sorted = true;
+        }
+    }
+
+    // Removes deleted entries from the directory, in one pass, if there are enough of them. This moves
+    // entries, so it is done only when a cursor is created, and not by removals, which may be interleaved with
+    // the use of open cursors.
+    private void compactIfNeeded()
+    {
+        if (nDeleted > n * MAX_DELETED_FRACTION) {
+            long write = 0;
+            for (long read = 0; read < n; read++) {
+                long from = entry(read);
+                long offset = keys.getLong(from + OFFSET);
+                if (offset != DELETED) {
+                    if (write < read) {
+                        long to = entry(write);
+                        keys.putLong(to, keys.getLong(from));
+                        keys.putLong(to + OFFSET, offset);
+                    }
+                    write++;
+                }
+            }
+            n = write;
+            nDeleted = 0;
+        }
+    }
+
+    private static long entry(long position)
+    {
+        return HEADER_SIZE + position * ENTRY_SIZE;
+    }
+
+    // Class state
+
+    private static final String KEYS_FILE = "keys";
+    private static final String DATA_FILE = "data";
+    private static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+    private static final long MAGIC = 0x67656f7068696c65L; // "geophile"
+    private static final int VERSION = 1;
+    // Header layout
+    private static final int MAGIC_POSITION = 0;
+    private static final int VERSION_POSITION = 8;
+    private static final int SORTED_POSITION = 12;
+    private static final int COUNT_POSITION = 16;
+    private static final int DATA_END_POSITION = 24;
+    private static final int SEGMENT_SIZE_POSITION = 32;
+    private static final int DELETED_POSITION = 40;
+    private static final int HEADER_SIZE = 64;
+    // Directory entry layout: z-value, followed by data offset
+    private static final int ENTRY_SIZE = 16;
+    private static final int OFFSET = 8;
+    // Data offset of a deleted entry
+    private static final long DELETED = -1L;
+    private static final double MAX_DELETED_FRACTION = 0.25;
+    // Data layout
+    private static final int LENGTH_SIZE = 4;
+    private static final int ALIGNMENT = 8;
+
+    // Object state
+
+    private final String name;
+    private final MappedFile keys;
+    private final MappedFile data;
+    // Number of directory entries, and how many of them are deleted.
+    private long n;
+    private long nDeleted;
+    private long dataEnd;
+    private boolean sorted;
+    // Directory entries are ordered by z-value, and then by data offset, which preserves insertion order for
+    // records with the same z-value. The entries are sorted in place, in the mapped file.
+    private final IntroSort.Sortable directory =
+        new IntroSort.Sortable()
+        {
+            @Override
+            public boolean less(long i, long j)
+            {
+                long ei = entry(i);
+                long ej = entry(j);
+                long zi = keys.getLong(ei);
+                long zj = keys.getLong(ej);
+                return zi < zj || zi == zj && keys.getLong(ei + OFFSET) < keys.getLong(ej + OFFSET);
+            }
+
+            @Override
+            public void swap(long i, long j)
+            {
+                long ei = entry(i);
+                long ej = entry(j);
+                long z = keys.getLong(ei);
+                long offset = keys.getLong(ei + OFFSET);
+                keys.putLong(ei, keys.getLong(ej));
+                keys.putLong(ei + OFFSET, keys.getLong(ej + OFFSET));
+                keys.putLong(ej, z);
+                keys.putLong(ej + OFFSET, offset);
+            }
+        };
+
+    // Inner classes
+
+    /**
+     * A MappedIndex of {@link MappedRecord}s. The payload of a record is its serialized spatial object.
+     */
+    public static class OfSpatialObjects extends MappedIndex<MappedRecord>
+    {
+        @Override
+        public MappedRecord newRecord()
+        {
+            return new MappedRecord(spatialObjectFactory);
+        }
+
+        @Override
+        protected void writePayload(MappedRecord record, ByteBuffer buffer)
+        {
+            ByteBuffer spatialObjectBytes = record.spatialObjectBytes();
+            if (spatialObjectBytes == null) {
+                record.spatialObject().writeTo(buffer);
+            } else {
+                buffer.put(spatialObjectBytes);
+            }
+        }
+
+        @Override
+        protected void readPayload(ByteBuffer payload, MappedRecord record)
+        {
+            record.spatialObjectBytes(payload);
+        }
+
+        /**
+         * Opens the MappedIndex stored in the given directory, creating it if it does not exist.
+         * @param directory Contains the files of the index.
+         * @param spatialObjectFactory Creates the spatial objects to be deserialized from the index.
+         * @throws IOException if the files can't be opened or mapped, or if they do not contain a MappedIndex.
+         */
+        public OfSpatialObjects(File directory, MappedRecord.SpatialObjectFactory spatialObjectFactory)
+            throws IOException
+        {
+            super(directory);
+            this.spatialObjectFactory = spatialObjectFactory;
+        }
+
+        OfSpatialObjects(File directory, int dataSegmentSize, MappedRecord.SpatialObjectFactory spatialObjectFactory)
+            throws IOException
+        {
+            super(directory, dataSegmentSize);
+            this.spatialObjectFactory = spatialObjectFactory;
+        }
+
+        private final MappedRecord.SpatialObjectFactory spatialObjectFactory;
+    }
+}
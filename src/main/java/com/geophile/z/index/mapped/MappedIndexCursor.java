@@ -0,0 +1,119 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.mapped;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+
+public class MappedIndexCursor<RECORD extends Record> extends Cursor<RECORD>
+{
+    // Cursor interface
+
+    @Override
+    public RECORD next() throws IOException, InterruptedException
+    {
+        return neighbor();
+    }
+
+    @Override
+    public void goTo(RECORD key)
+    {
+        this.startZ = key.z();
+        state(State.NEVER_USED);
+    }
+
+    @Override
+    public boolean deleteCurrent() throws IOException, InterruptedException
+    {
+        boolean deleted = false;
+        if (state() == State.IN_USE) {
+            assert lastReportedPosition != UNDEFINED;
+            if (!mappedIndex.deleted(lastReportedPosition)) {
+                // The entry is only marked as deleted, so positions don't change.
+                mappedIndex.deleteRecord(lastReportedPosition);
+                deleted = true;
+            }
+        }
+        return deleted;
+    }
+
+    // MappedIndexCursor interface
+
+    public MappedIndexCursor(MappedIndex<RECORD> mappedIndex)
+    {
+        super(mappedIndex);
+        this.mappedIndex = mappedIndex;
+        this.record = mappedIndex.newRecord();
+    }
+
+    // For use by this class
+
+    private RECORD neighbor() throws IOException, InterruptedException
+    {
+        switch (state()) {
+            case NEVER_USED:
+                startIteration();
+                break;
+            case IN_USE:
+                break;
+            case DONE:
+                assert current() == null;
+                return null;
+        }
+        if (position != DONE) {
+            position = skipDeleted(position);
+        }
+        if (position != DONE) {
+            mappedIndex.readRecord(position, record);
+            current(record);
+            startZ = record.z();
+            lastReportedPosition = position;
+            state(State.IN_USE);
+            position++;
+            assert position <= mappedIndex.entries() : position;
+            if (position == mappedIndex.entries()) {
+                position = DONE;
+            }
+        } else {
+            close();
+        }
+        return current();
+    }
+
+    private void startIteration()
+    {
+        position = mappedIndex.lowerBound(startZ);
+        if (position == mappedIndex.entries()) {
+            position = DONE;
+        }
+    }
+
+    // Position of the first entry, at or after position, that is not deleted. DONE if there is none.
+    private long skipDeleted(long position)
+    {
+        long entries = mappedIndex.entries();
+        while (position < entries && mappedIndex.deleted(position)) {
+            position++;
+        }
+        return position == entries ? DONE : position;
+    }
+
+    // Object state
+
+    private static final long DONE = -1;
+    private static final long UNDEFINED = -1;
+
+    private final MappedIndex<RECORD> mappedIndex;
+    // Materializes the current position before it is copied to the Cursor's current record.
+    private final RECORD record;
+    private long startZ;
+    private long position;
+    // Position of the last record returned via next(). Needed to support deleteCurrent().
+    private long lastReportedPosition = UNDEFINED;
+}
@@ -0,0 +1,170 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.mapped;
+
+import com.geophile.z.Record;
+import com.geophile.z.SpatialObject;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link com.geophile.z.Record} stored by {@link MappedIndex.OfSpatialObjects}. A record to be added
+ * carries a {@link com.geophile.z.SpatialObject}. A record retrieved from the index carries the serialized
+ * form of its spatial object, (as written by {@link com.geophile.z.SpatialObject#writeTo(java.nio.ByteBuffer)}),
+ * as a read-only view of the mapped file, obtained by {@link #spatialObjectBytes()}. The spatial object itself
+ * is deserialized only if {@link #spatialObject()} is called, and if it is a
+ * {@link com.geophile.z.SpatialObject.LazilyReadable}, then it is read lazily, from the mapped file.
+ */
+
+public class MappedRecord implements Record.HasSpatialObject
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return String.format("(0x%016x: %s)", z, spatialObject());
+    }
+
+    @Override
+    public int hashCode()
+    {
+        SpatialObject spatialObject = spatialObject();
+        return spatialObject == null ? 0 : spatialObject.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        boolean eq = false;
+        if (o != null && o instanceof MappedRecord) {
+            MappedRecord that = (MappedRecord) o;
+            SpatialObject thisSpatialObject = this.spatialObject();
+            SpatialObject thatSpatialObject = that.spatialObject();
+            eq = thisSpatialObject == null
+                 ? thatSpatialObject == null
+                 : thisSpatialObject.equals(thatSpatialObject);
+        }
+        return eq;
+    }
+
+    // Record interface
+
+    @Override
+    public long z()
+    {
+        return z;
+    }
+
+    @Override
+    public void z(long newZ)
+    {
+        z = newZ;
+    }
+
+    @Override
+    public void copyTo(Record record)
+    {
+        if (record == this) {
+            throw new IllegalArgumentException();
+        }
+        MappedRecord that = (MappedRecord) record;
+        that.z = this.z;
+        that.spatialObject = this.spatialObject;
+        that.spatialObjectBytes = this.spatialObjectBytes;
+    }
+
+    // Record.HasSpatialObject interface
+
+    /**
+     * Returns the spatial object of this record, deserializing it if necessary.
+     * @return The spatial object of this record.
+     */
+    @Override
+    public SpatialObject spatialObject()
+    {
+        if (spatialObject == null && spatialObjectBytes != null) {
+            spatialObject = spatialObjectFactory.newSpatialObject();
+            if (spatialObject instanceof SpatialObject.LazilyReadable) {
+                // The serialized spatial object is never overwritten, so a view of it can be kept.
+                ((SpatialObject.LazilyReadable) spatialObject).readLazilyFrom(spatialObjectBytes.duplicate());
+            } else {
+                spatialObject.readFrom(spatialObjectBytes.duplicate());
+            }
+        }
+        return spatialObject;
+    }
+
+    // MappedRecord interface
+
+    public void spatialObject(SpatialObject spatialObject)
+    {
+        this.spatialObject = spatialObject;
+        this.spatialObjectBytes = null;
+    }
+
+    /**
+     * Returns the serialized spatial object of a record retrieved from a {@link MappedIndex.OfSpatialObjects},
+     * without copying. The returned buffer is positioned at the first byte of the serialized spatial object,
+     * and its limit is the end of the serialized spatial object.
+     * @return A read-only view of the serialized spatial object, or null if this record was not retrieved from
+     * an index.
+     */
+    public ByteBuffer spatialObjectBytes()
+    {
+        return spatialObjectBytes == null ? null : spatialObjectBytes.duplicate();
+    }
+
+    public MappedRecord(SpatialObjectFactory spatialObjectFactory)
+    {
+        this.spatialObjectFactory = spatialObjectFactory;
+    }
+
+    // For use by this package
+
+    void spatialObjectBytes(ByteBuffer spatialObjectBytes)
+    {
+        this.spatialObject = null;
+        this.spatialObjectBytes = spatialObjectBytes;
+    }
+
+    // Object state
+
+    private final SpatialObjectFactory spatialObjectFactory;
+    private long z;
+    private SpatialObject spatialObject;
+    private ByteBuffer spatialObjectBytes;
+
+    // Inner classes
+
+    /**
+     * Creates empty spatial objects, to be initialized by {@link com.geophile.z.SpatialObject#readFrom(java.nio.ByteBuffer)}.
+     */
+    public interface SpatialObjectFactory
+    {
+        SpatialObject newSpatialObject();
+    }
+
+    public static class Factory implements Record.Factory<MappedRecord>
+    {
+        @Override
+        public MappedRecord newRecord()
+        {
+            MappedRecord record = new MappedRecord(null);
+            record.spatialObject(spatialObject);
+            return record;
+        }
+
+        public Factory setup(SpatialObject spatialObject)
+        {
+            this.spatialObject = spatialObject;
+            return this;
+        }
+
+        private SpatialObject spatialObject;
+    }
+}
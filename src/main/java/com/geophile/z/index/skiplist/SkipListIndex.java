@@ -0,0 +1,169 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.skiplist;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.index.RecordWithSpatialObject;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SkipListIndex implements the {@link com.geophile.z.Index} interface in terms of a
+ * {@link java.util.concurrent.ConcurrentSkipListSet}, keyed by z-value and by an identifier assigned to each
+ * record when it is added. (So records with the same z-value are kept in the order in which they were added.)
+ * Unlike {@link com.geophile.z.index.sortedarray.SortedArray}, a SkipListIndex is safe for use by multiple threads:
+ * add and remove do not lock, and can run concurrently with each other and with {@link com.geophile.z.Cursor}s,
+ * including the cursors of a spatial join.
+ *
+ * Cursors are weakly consistent: A cursor never fails due to a concurrent update, and it returns each record
+ * at most once. It returns records that were present when the cursor was positioned, (by
+ * {@link com.geophile.z.Cursor#goTo(com.geophile.z.Record)}), and not removed before the cursor reached them.
+ * It may or may not return records added after the cursor was positioned. A spatial object is added to a
+ * {@link com.geophile.z.SpatialIndex} as one record for each z-value of its decomposition, and these records are
+ * added one at a time. So a spatial join running concurrently with the addition of a spatial object may
+ * see only some of the object's records, and may miss the object entirely.
+ *
+ * Records are copied on add, and the copies are never modified, so records retrieved by a cursor are stable.
+ * @param <RECORD> The type of {@link com.geophile.z.Record} contained by this Index.
+ */
+
+public abstract class SkipListIndex<RECORD extends Record> extends Index<RECORD>
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record)
+    {
+        RECORD copy = newRecord();
+        record.copyTo(copy);
+        entries.add(new Entry(copy.z(), idGenerator.getAndIncrement(), copy));
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<RECORD> filter)
+    {
+        boolean removed = false;
+        boolean zMatch = true;
+        Iterator<Entry> iterator = entries.tailSet(key(z)).iterator();
+        while (zMatch && iterator.hasNext() && !removed) {
+            Entry entry = iterator.next();
+            if (entry.z == z) {
+                // The entry may have been removed concurrently, after it was located. In that case, keep looking.
+                removed = filter.select(entry.<RECORD>record()) && entries.remove(entry);
+            } else {
+                zMatch = false;
+            }
+        }
+        return removed;
+    }
+
+    @Override
+    public Cursor<RECORD> cursor()
+    {
+        return new SkipListIndexCursor<>(this);
+    }
+
+    @Override
+    public abstract RECORD newRecord();
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return true;
+    }
+
+    // SkipListIndex
+
+    public SkipListIndex()
+    {}
+
+    // For use by this package
+
+    ConcurrentSkipListSet<Entry> entries()
+    {
+        return entries;
+    }
+
+    // Returns an Entry that precedes all entries with z-value z.
+    static Entry key(long z)
+    {
+        return new Entry(z, Long.MIN_VALUE, null);
+    }
+
+    // Class state
+
+    private static final AtomicInteger indexIdGenerator = new AtomicInteger(0);
+    private static final Comparator<Entry> ENTRY_COMPARATOR =
+        new Comparator<Entry>()
+        {
+            @Override
+            public int compare(Entry x, Entry y)
+            {
+                return
+                    x.z < y.z ? -1 :
+                    x.z > y.z ? 1 :
+                    x.id < y.id ? -1 :
+                    x.id > y.id ? 1 : 0;
+            }
+        };
+
+    // Object state
+
+    private final String name = String.format("SkipListIndex(%s)", indexIdGenerator.getAndIncrement());
+    private final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<>(ENTRY_COMPARATOR);
+    private final AtomicLong idGenerator = new AtomicLong(0);
+
+    // Inner classes
+
+    static final class Entry
+    {
+        <RECORD extends Record> RECORD record()
+        {
+            return (RECORD) record;
+        }
+
+        Entry(long z, long id, Record record)
+        {
+            this.z = z;
+            this.id = id;
+            this.record = record;
+        }
+
+        final long z;
+        final long id;
+        private final Record record;
+    }
+
+    public static class OfBaseRecord extends SkipListIndex<RecordWithSpatialObject>
+    {
+        @Override
+        public RecordWithSpatialObject newRecord()
+        {
+            return new RecordWithSpatialObject();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.skiplist;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+public class SkipListIndexCursor<RECORD extends Record> extends Cursor<RECORD>
+{
+    // Cursor interface
+
+    @Override
+    public RECORD next() throws IOException, InterruptedException
+    {
+        return neighbor();
+    }
+
+    @Override
+    public void goTo(RECORD key)
+    {
+        this.startAt = key.z();
+        state(State.NEVER_USED);
+    }
+
+    @Override
+    public boolean deleteCurrent() throws IOException, InterruptedException
+    {
+        // False if the record has already been removed, by this cursor or concurrently.
+        return state() == State.IN_USE && entries.remove(currentEntry);
+    }
+
+    // SkipListIndexCursor interface
+
+    public SkipListIndexCursor(SkipListIndex<RECORD> skipListIndex)
+    {
+        super(skipListIndex);
+        this.entries = skipListIndex.entries();
+    }
+
+    // For use by this class
+
+    private RECORD neighbor() throws IOException, InterruptedException
+    {
+        switch (state()) {
+            case NEVER_USED:
+                // The iterator of a ConcurrentSkipListSet view is weakly consistent.
+                iterator = entries.tailSet(SkipListIndex.key(startAt)).iterator();
+                break;
+            case IN_USE:
+                break;
+            case DONE:
+                assert current() == null;
+                return null;
+        }
+        if (iterator.hasNext()) {
+            currentEntry = iterator.next();
+            current(currentEntry.<RECORD>record());
+            state(State.IN_USE);
+        } else {
+            currentEntry = null;
+            close();
+        }
+        return current();
+    }
+
+    // Object state
+
+    private final ConcurrentSkipListSet<SkipListIndex.Entry> entries;
+    private long startAt;
+    private Iterator<SkipListIndex.Entry> iterator;
+    private SkipListIndex.Entry currentEntry;
+}
@@ -0,0 +1,238 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.sortedarray;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.index.RecordWithSpatialObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SnapshotSortedArray implements the {@link com.geophile.z.Index} interface in terms of immutable, sorted
+ * generations of records. A {@link com.geophile.z.Cursor} pins the generation that is current when the cursor
+ * is created, and sees exactly that generation's records for as long as it is used, regardless of
+ * concurrent updates. Cursors do no synchronization.
+ *
+ * Writers do not modify a published generation. Added records go into a small unsorted delta, and removed
+ * records are noted. The next call to {@link #cursor()}, (or {@link #publish()}), sorts the delta and merges it
+ * into a new generation, leaving out the removed records, and makes the new generation current. Each
+ * publication costs time proportional to the size of the index, so SnapshotSortedArray is intended for
+ * read-mostly indexes, e.g. ones loaded in periodic batches. Writers synchronize with each other, so
+ * add, remove and publication may be done by multiple threads.
+ * @param <RECORD> The type of {@link com.geophile.z.Record} contained by this Index.
+ */
+
+public abstract class SnapshotSortedArray<RECORD extends Record> extends Index<RECORD>
+{
+    // Object interface
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+
+    // Index interface
+
+    @Override
+    public void add(RECORD record)
+    {
+        RECORD copy = newRecord();
+        record.copyTo(copy);
+        synchronized (this) {
+            delta.add(copy);
+            dirty = true;
+        }
+    }
+
+    @Override
+    public synchronized boolean remove(long z, Record.Filter<RECORD> filter)
+    {
+        boolean removeRecordFound = false;
+        // Look in the delta first, then in the current generation.
+        for (int i = 0; i < delta.size() && !removeRecordFound; i++) {
+            RECORD record = (RECORD) delta.get(i);
+            if (record.z() == z && filter.select(record)) {
+                delta.remove(i);
+                removeRecordFound = true;
+            }
+        }
+        Object[] records = generation.records;
+        for (int position = generation.lowerBound(z);
+             !removeRecordFound && position < records.length && ((Record) records[position]).z() == z;
+             position++) {
+            RECORD record = (RECORD) records[position];
+            if (!removed.contains(record) && filter.select(record)) {
+                removed.add(record);
+                removeRecordFound = true;
+            }
+        }
+        if (removeRecordFound) {
+            dirty = true;
+        }
+        return removeRecordFound;
+    }
+
+    @Override
+    public Cursor<RECORD> cursor()
+    {
+        return new SnapshotSortedArrayCursor<>(this, currentGeneration());
+    }
+
+    @Override
+    public abstract RECORD newRecord();
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return true;
+    }
+
+    // SnapshotSortedArray interface
+
+    /**
+     * Makes records added and removed since the previous publication visible to cursors created from now on.
+     * Cursors created before this call are unaffected.
+     */
+    public void publish()
+    {
+        currentGeneration();
+    }
+
+    public SnapshotSortedArray()
+    {}
+
+    // For use by this package
+
+    // Removes a record located by a cursor. Returns false if the record has already been removed, (in which case
+    // it may be absent from the current generation, if the cursor's generation is older).
+    synchronized boolean remove(Record record)
+    {
+        boolean removeRecordFound = false;
+        Object[] records = generation.records;
+        for (int position = generation.lowerBound(record.z());
+             !removeRecordFound && position < records.length && ((Record) records[position]).z() == record.z();
+             position++) {
+            removeRecordFound = records[position] == record && removed.add(record);
+        }
+        if (removeRecordFound) {
+            dirty = true;
+        }
+        return removeRecordFound;
+    }
+
+    // For use by this class
+
+    // Publishes a new generation if there have been updates since the last publication, and returns the
+    // current generation. Checking dirty first means that there is no locking when there is nothing to publish.
+    private Generation currentGeneration()
+    {
+        if (dirty) {
+            synchronized (this) {
+                if (dirty) {
+                    generation = new Generation(merge(generation.records));
+                    delta.clear();
+                    removed.clear();
+                    dirty = false;
+                }
+            }
+        }
+        return generation;
+    }
+
+    // Returns the records of base, excluding those removed, merged with the delta records. A delta record
+    // follows base records with the same z-value.
+    private Object[] merge(Object[] base)
+    {
+        Object[] sortedDelta = delta.toArray();
+        // Arrays.sort is stable, so delta records with the same z-value stay in the order in which they were added.
+        Arrays.sort(sortedDelta, SortedArray.Z_COMPARATOR);
+        Object[] merged = new Object[base.length - removed.size() + sortedDelta.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < base.length || j < sortedDelta.length) {
+            if (j == sortedDelta.length ||
+                i < base.length && SortedArray.Z_COMPARATOR.compare(sortedDelta[j], base[i]) >= 0) {
+                Object record = base[i++];
+                if (!removed.contains(record)) {
+                    merged[k++] = record;
+                }
+            } else {
+                merged[k++] = sortedDelta[j++];
+            }
+        }
+        assert k == merged.length;
+        return merged;
+    }
+
+    // Class state
+
+    private static final AtomicInteger idGenerator = new AtomicInteger(0);
+
+    // Object state
+
+    private final String name = String.format("SnapshotSortedArray(%s)", idGenerator.getAndIncrement());
+    // The most recently published generation. Replaced, never modified.
+    private volatile Generation generation = new Generation(new Object[0]);
+    // True if there are updates not yet published.
+    private volatile boolean dirty = false;
+    // Writer state, guarded by this.
+    private final List<Object> delta = new ArrayList<>();
+    private final Set<Object> removed = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+    // Inner classes
+
+    static final class Generation
+    {
+        // Position of the first record whose z-value is >= z.
+        int lowerBound(long z)
+        {
+            int lo = 0;
+            int hi = records.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (((Record) records[mid]).z() < z) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        Generation(Object[] records)
+        {
+            this.records = records;
+        }
+
+        final Object[] records;
+    }
+
+    public static class OfBaseRecord extends SnapshotSortedArray<RecordWithSpatialObject>
+    {
+        @Override
+        public RecordWithSpatialObject newRecord()
+        {
+            return new RecordWithSpatialObject();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.index.sortedarray;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Record;
+
+import java.io.IOException;
+
+// Visits the records of one generation of a SnapshotSortedArray. The generation is immutable, so no
+// synchronization is needed. deleteCurrent removes the record from the index, but the record remains
+// visible to this cursor.
+
+public class SnapshotSortedArrayCursor<RECORD extends Record> extends Cursor<RECORD>
+{
+    // Cursor interface
+
+    @Override
+    public RECORD next() throws IOException, InterruptedException
+    {
+        switch (state()) {
+            case NEVER_USED:
+                position = generation.lowerBound(startAt);
+                break;
+            case IN_USE:
+                position++;
+                break;
+            case DONE:
+                assert current() == null;
+                return null;
+        }
+        if (position < generation.records.length) {
+            current((RECORD) generation.records[position]);
+            state(State.IN_USE);
+        } else {
+            close();
+        }
+        return current();
+    }
+
+    @Override
+    public void goTo(RECORD key)
+    {
+        this.startAt = key.z();
+        state(State.NEVER_USED);
+    }
+
+    @Override
+    public boolean deleteCurrent() throws IOException, InterruptedException
+    {
+        return state() == State.IN_USE && snapshotSortedArray.remove(current());
+    }
+
+    // SnapshotSortedArrayCursor interface
+
+    SnapshotSortedArrayCursor(SnapshotSortedArray<RECORD> snapshotSortedArray,
+                              SnapshotSortedArray.Generation generation)
+    {
+        super(snapshotSortedArray);
+        this.snapshotSortedArray = snapshotSortedArray;
+        this.generation = generation;
+    }
+
+    // Object state
+
+    private final SnapshotSortedArray<RECORD> snapshotSortedArray;
+    private final SnapshotSortedArray.Generation generation;
+    private long startAt;
+    private int position;
+}
@@ -12,12 +12,26 @@ import com.geophile.z.Record;
 import com.geophile.z.index.RecordWithSpatialObject;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * SortedArray implements the {@link com.geophile.z.Index} interface in terms of an array.
  * Intended to be used internally, for a spatial join between a SpatialIndex and a SpatialObject.
+ * A SortedArray is not safe for use by multiple threads. For an index that is updated while it is being
+ * searched, use {@link com.geophile.z.index.skiplist.SkipListIndex}.
+ *
+ * By default, a deleted record is removed immediately, by shifting the records that follow it. For
+ * deletion-heavy workloads, a SortedArray can instead be created with a tombstone threshold: A deleted record's
+ * slot is marked as a tombstone, cursors skip tombstones, and the array is compacted once the fraction
+ * of slots that are tombstones exceeds the threshold. Compaction can be done by a background thread, (see
+ * {@link #SortedArray(double, java.util.concurrent.Executor)}), in which case the compacted array is swapped in
+ * by the next call to add or remove. (Not by cursor, which would move records under open cursors, and which
+ * doesn't otherwise modify an array that is already sorted.) That swap is abandoned if the array has been
+ * reorganized, (e.g. by sorting newly added records), since compaction started.
  */
 
 public abstract class SortedArray<RECORD extends Record> extends Index<RECORD>
@@ -35,14 +49,34 @@ public abstract class SortedArray<RECORD extends Record> extends Index<RECORD>
     @Override
     public void add(RECORD record)
     {
+        swapInCompaction();
         ensureSpace(n + 1);
         records[n++] = record;
-        sorted = false;
+    }
+
+    @Override
+    public void addSorted(Iterator<RECORD> sortedRecords)
+    {
+        // The merge below moves records, so tombstones have to be removed first.
+        compact();
+        int start = n;
+        while (sortedRecords.hasNext()) {
+            ensureSpace(n + 1);
+            records[n++] = sortedRecords.next();
+        }
+        if (n > start && nSorted == start) {
+            // Merge the new records into the existing sorted records, instead of sorting everything later.
+            mergeTail(start);
+            nSorted = n;
+            version++;
+        }
     }
 
     @Override
     public boolean remove(long z, Record.Filter<RECORD> filter)
     {
+        swapInCompaction();
+        ensureSorted();
         boolean removeRecordFound = false;
         RECORD key = newKeyRecord();
         key.z(z);
@@ -55,7 +89,7 @@ public abstract class SortedArray<RECORD extends Record> extends Index<RECORD>
             while (position >= 0 && sameZ && !removeRecordFound) {
                 RECORD record = (RECORD) records[position];
                 if (record.z() == z) {
-                    if (filter.select(record)) {
+                    if (!tombstone(position) && filter.select(record)) {
                         removeRecordFound = true;
                     } else {
                         position--;
@@ -71,7 +105,7 @@ public abstract class SortedArray<RECORD extends Record> extends Index<RECORD>
                 while (position < n && sameZ && !removeRecordFound) {
                     RECORD record = (RECORD) records[position];
                     if (record.z() == z) {
-                        if (filter.select(record)) {
+                        if (!tombstone(position) && filter.select(record)) {
                             removeRecordFound = true;
                         } else {
                             position++;
@@ -82,13 +116,51 @@ public abstract class SortedArray<RECORD extends Record> extends Index<RECORD>
                 }
             }
             if (removeRecordFound) {
-                System.arraycopy(records, position + 1, records, position, n - 1 - position);
-                n--;
+                deleteRecord(position);
+                compactIfNeeded();
             }
         }
         return removeRecordFound;
     }
 
+    @Override
+    public int removeAll(long[] zs, int nZ, Record.Filter<RECORD> filter)
+    {
+        // One sweep: Records are kept by copying them down over the removed records, and the array is compacted
+        // once, instead of shifting the remaining records on each removal. Tombstones are removed first.
+        swapInCompaction();
+        ensureSorted();
+        compact();
+        int read = 0;
+        int write = 0;
+        for (int i = 0; i < nZ; i++) {
+            long z = zs[i];
+            // Keep the records preceding z.
+            int start = lowerBound(z, read);
+            if (write < read) {
+                System.arraycopy(records, read, records, write, start - read);
+            }
+            write += start - read;
+            read = start;
+            // Remove the selected records with z-value z.
+            while (read < n && ((Record) records[read]).z() == z) {
+                Object record = records[read++];
+                if (!filter.select((RECORD) record)) {
+                    records[write++] = record;
+                }
+            }
+        }
+        int removed = read - write;
+        if (removed > 0) {
+            System.arraycopy(records, read, records, write, n - read);
+            Arrays.fill(records, n - removed, n, null);
+            n -= removed;
+            nSorted = n;
+            version++;
+        }
+        return removed;
+    }
+
     @Override
     public Cursor<RECORD> cursor()
     {
@@ -116,10 +188,50 @@ public abstract class SortedArray<RECORD extends Record> extends Index<RECORD>
     public void reset()
     {
         n = 0;
+        nSorted = 0;
+        if (tombstones != null) {
+            tombstones.clear();
+            nTombstones = 0;
+        }
+        compaction = null;
+        version++;
     }
 
+    /**
+     * Creates a SortedArray that removes deleted records immediately.
+     */
     public SortedArray()
-    {}
+    {
+        this.tombstoneThreshold = NO_TOMBSTONES;
+        this.compactionExecutor = null;
+        this.tombstones = null;
+    }
+
+    /**
+     * Creates a SortedArray that marks deleted records as tombstones, and compacts the array, synchronously,
+     * when the fraction of slots that are tombstones exceeds tombstoneThreshold.
+     * @param tombstoneThreshold Fraction of tombstones, in (0, 1], at which the array is compacted.
+     */
+    public SortedArray(double tombstoneThreshold)
+    {
+        this(tombstoneThreshold, null);
+    }
+
+    /**
+     * Creates a SortedArray that marks deleted records as tombstones, and compacts the array when the fraction of
+     * slots that are tombstones exceeds tombstoneThreshold.
+     * @param tombstoneThreshold Fraction of tombstones, in (0, 1], at which the array is compacted.
+     * @param compactionExecutor Used to compact the array in the background. If null, compaction is synchronous.
+     */
+    public SortedArray(double tombstoneThreshold, Executor compactionExecutor)
+    {
+        if (!(tombstoneThreshold > 0 && tombstoneThreshold <= 1)) {
+            throw new IllegalArgumentException(Double.toString(tombstoneThreshold));
+        }
+        this.tombstoneThreshold = tombstoneThreshold;
+        this.compactionExecutor = compactionExecutor;
+        this.tombstones = new BitSet();
+    }
 
     // For use by this package
 
@@ -128,23 +240,219 @@ public abstract class SortedArray<RECORD extends Record> extends Index<RECORD>
         return Arrays.binarySearch(records, 0, n, key, SortedArray.Z_COMPARATOR);
     }
 
-    void deleteRecord(int at)
+    // Position of the first record, at or after from, whose z-value is >= z.
+    int lowerBound(long z, int from)
     {
-        System.arraycopy(records, at + 1, records, at, n - at - 1);
-        records[--n] = null;
+        return lowerBound(z, from, n);
+    }
+
+    // Like lowerBound(z, from), but probes at exponentially increasing distances from from, and then does a binary
+    // search between the last two probes. The cost is O(log d), where d is the distance from from to the result,
+    // instead of O(log n).
+    int gallop(long z, int from)
+    {
+        // records[from : lo) have z-values < z. The result is in [lo, hi].
+        int lo = from;
+        int hi = from;
+        int step = 1;
+        while (hi < n && ((Record) records[hi]).z() < z) {
+            lo = hi + 1;
+            hi = n - lo > step ? lo + step : n;
+            step <<= 1;
+        }
+        return lowerBound(z, lo, hi);
+    }
+
+    // Deletes the record at the given position. Returns true if the following records were shifted to fill the
+    // gap, false if the record was marked as a tombstone.
+    boolean deleteRecord(int at)
+    {
+        boolean shifted;
+        if (tombstones == null) {
+            System.arraycopy(records, at + 1, records, at, n - at - 1);
+            records[--n] = null;
+            if (at < nSorted) {
+                nSorted--;
+            }
+            version++;
+            shifted = true;
+        } else {
+            assert !tombstones.get(at) : at;
+            tombstones.set(at);
+            nTombstones++;
+            shifted = false;
+        }
+        return shifted;
+    }
+
+    // Called after a cursor deletes a record. Like remove, compacts the array if there are too many tombstones.
+    // Returns position, (of a record, or n), mapped to the array after compaction: If the record at position was
+    // a tombstone, the result is the position of the first record following it that was not.
+    int compactIfNeeded(int position)
+    {
+        int compactedPosition = position;
+        if (compactionNeeded() && compactionExecutor == null) {
+            compactedPosition -= tombstones.get(0, position).cardinality();
+        }
+        compactIfNeeded();
+        return compactedPosition;
+    }
+
+    boolean tombstone(int position)
+    {
+        return tombstones != null && tombstones.get(position);
+    }
+
+    // Position of the first record, at or after from, that is not a tombstone. n if there is none.
+    int skipTombstones(int from)
+    {
+        return tombstones == null ? from : Math.min(tombstones.nextClearBit(from), n);
+    }
+
+    // Position of the first tombstone at or after from. n if there is none.
+    int nextTombstone(int from)
+    {
+        int position = tombstones == null ? -1 : tombstones.nextSetBit(from);
+        return position < 0 ? n : Math.min(position, n);
     }
 
     // For use by this class
 
-    private void ensureSorted()
+    // Position of the first record in [from, to) whose z-value is >= z. to if there is none.
+    private int lowerBound(long z, int from, int to)
     {
-        if (!sorted) {
-            if (n == 0) {
-                records = new Object[0];
+        int lo = from;
+        int hi = to;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (((Record) records[mid]).z() < z) {
+                lo = mid + 1;
             } else {
-                Arrays.sort(records, 0, n, Z_COMPARATOR);
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Records added since the last sort are sorted by themselves, and then merged into the sorted records.
+    // So after k adds, the cost is O(n + k log k), not O(n log n).
+    private void ensureSorted()
+    {
+        if (records == null) {
+            records = new Object[0];
+        }
+        if (nSorted < n) {
+            // Sorting and merging move records, so tombstones have to be removed first.
+            compact();
+            // Arrays.sort is stable, so records with the same z-value stay in the order in which they were added.
+            Arrays.sort(records, nSorted, n, Z_COMPARATOR);
+            mergeTail(nSorted);
+            nSorted = n;
+            version++;
+        }
+    }
+
+    private boolean compactionNeeded()
+    {
+        return nTombstones > tombstoneThreshold * n;
+    }
+
+    private void compactIfNeeded()
+    {
+        if (compactionNeeded()) {
+            if (compactionExecutor == null) {
+                compact();
+            } else if (compaction == null) {
+                compaction = new Compaction(records, (BitSet) tombstones.clone(), n, nSorted, version);
+                compactionExecutor.execute(compaction);
+            }
+        }
+    }
+
+    // Removes tombstones, synchronously.
+    private void compact()
+    {
+        if (nTombstones > 0) {
+            int write = 0;
+            int writeSorted = 0;
+            for (int read = 0; read < n; read++) {
+                if (!tombstones.get(read)) {
+                    records[write++] = records[read];
+                    if (read < nSorted) {
+                        writeSorted++;
+                    }
+                }
+            }
+            Arrays.fill(records, write, n, null);
+            n = write;
+            nSorted = writeSorted;
+            tombstones.clear();
+            nTombstones = 0;
+            version++;
+        }
+    }
+
+    // Replaces the array by the result of a completed background compaction, if the array hasn't been reorganized
+    // since the compaction started. Records appended since then are copied over, and records deleted since then
+    // are marked as tombstones in the compacted array.
+    private void swapInCompaction()
+    {
+        Compaction compaction = this.compaction;
+        if (compaction != null && compaction.done) {
+            this.compaction = null;
+            if (compaction.version == version) {
+                int snapshotN = compaction.n;
+                int removed = snapshotN - compaction.resultN;
+                Object[] compacted = compaction.result;
+                if (compacted.length < n - removed) {
+                    compacted = Arrays.copyOf(compacted, Math.max(MIN_ARRAY_SIZE, (int) ((n - removed) * 1.5)));
+                }
+                System.arraycopy(records, snapshotN, compacted, compaction.resultN, n - snapshotN);
+                BitSet newTombstones = new BitSet();
+                // Tombstones created since the snapshot, mapped to positions in the compacted array. A position
+                // in the snapshot moves down by the number of snapshot tombstones preceding it, which is counted
+                // while stepping through both sets of tombstones in order.
+                BitSet snapshotTombstones = compaction.tombstones;
+                int snapshotTombstone = snapshotTombstones.nextSetBit(0);
+                int snapshotTombstonesBefore = 0;
+                for (int position = tombstones.nextSetBit(0);
+                     position >= 0;
+                     position = tombstones.nextSetBit(position + 1)) {
+                    if (position >= snapshotN) {
+                        newTombstones.set(position - removed);
+                    } else {
+                        while (snapshotTombstone >= 0 && snapshotTombstone < position) {
+                            snapshotTombstonesBefore++;
+                            snapshotTombstone = snapshotTombstones.nextSetBit(snapshotTombstone + 1);
+                        }
+                        if (snapshotTombstone != position) {
+                            newTombstones.set(position - snapshotTombstonesBefore);
+                        }
+                    }
+                }
+                records = compacted;
+                n -= removed;
+                nSorted -= compaction.removedBeforeNSorted;
+                tombstones = newTombstones;
+                nTombstones = newTombstones.cardinality();
+                version++;
+            }
+        }
+    }
+
+    // Merges records[0 : start) and records[start : n), both sorted. Records from the first range precede
+    // records from the second with the same z-value. The merge goes from right to left, so only the second
+    // range, (usually the smaller one), needs to be copied.
+    private void mergeTail(int start)
+    {
+        if (start > 0 && Z_COMPARATOR.compare(records[start - 1], records[start]) > 0) {
+            Object[] tail = Arrays.copyOfRange(records, start, n);
+            int i = start - 1;
+            int j = tail.length - 1;
+            int k = n - 1;
+            while (j >= 0) {
+                records[k--] = i >= 0 && Z_COMPARATOR.compare(records[i], tail[j]) > 0 ? records[i--] : tail[j--];
             }
-            sorted = true;
         }
     }
 
@@ -162,6 +470,7 @@ public abstract class SortedArray<RECORD extends Record> extends Index<RECORD>
 
     private static final AtomicInteger idGenerator = new AtomicInteger(0);
     private static final int MIN_ARRAY_SIZE = 20;
+    private static final double NO_TOMBSTONES = 0;
     static final Comparator Z_COMPARATOR =
         new Comparator()
         {
@@ -179,12 +488,76 @@ public abstract class SortedArray<RECORD extends Record> extends Index<RECORD>
     private final String name = String.format("SortedArray(%s)", idGenerator.getAndIncrement());
     Object[] records;
     int n = 0;
-    private boolean sorted = false;
+    // records[0 : nSorted) are sorted. Records after that have been added since the last sort.
+    private int nSorted = 0;
+    private final double tombstoneThreshold;
+    private final Executor compactionExecutor;
+    // Positions of deleted records. null if deleted records are removed immediately.
+    private BitSet tombstones;
+    private int nTombstones = 0;
+    // Incremented whenever records move, (invalidating positions).
+    private long version = 0;
+    // Background compaction in progress, or completed and not yet swapped in.
+    private Compaction compaction;
 
     // Inner classes
 
+    // Compacts a snapshot of records[0 : n). The snapshot's records don't move while the compaction runs, unless
+    // version changes, in which case the result is discarded.
+    private static class Compaction implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            Object[] result = new Object[Math.max(MIN_ARRAY_SIZE, (int) ((n - tombstones.cardinality()) * 1.5))];
+            int write = 0;
+            int removedBeforeNSorted = 0;
+            for (int read = 0; read < n; read++) {
+                if (tombstones.get(read)) {
+                    if (read < nSorted) {
+                        removedBeforeNSorted++;
+                    }
+                } else {
+                    result[write++] = records[read];
+                }
+            }
+            this.result = result;
+            this.resultN = write;
+            this.removedBeforeNSorted = removedBeforeNSorted;
+            done = true;
+        }
+
+        Compaction(Object[] records, BitSet tombstones, int n, int nSorted, long version)
+        {
+            this.records = records;
+            this.tombstones = tombstones;
+            this.n = n;
+            this.nSorted = nSorted;
+            this.version = version;
+        }
+
+        final Object[] records;
+        final BitSet tombstones;
+        final int n;
+        final int nSorted;
+        final long version;
+        // Written by the compacting thread before done is set.
+        Object[] result;
+        int resultN;
+        int removedBeforeNSorted;
+        volatile boolean done = false;
+    }
+
     public static class OfBaseRecord extends SortedArray<RecordWithSpatialObject>
     {
+        public OfBaseRecord()
+        {}
+
+        public OfBaseRecord(double tombstoneThreshold, Executor compactionExecutor)
+        {
+            super(tombstoneThreshold, compactionExecutor);
+        }
+
         @Override
         public RecordWithSpatialObject newRecord()
         {
@@ -32,17 +32,86 @@ public class SortedArrayCursor<RECORD extends Record> extends Cursor<RECORD>
     public boolean deleteCurrent() throws IOException, InterruptedException
     {
         boolean deleted = false;
-        if (state() == State.IN_USE) {
-            assert lastReportedPosition != UNDEFINED;
-            sortedArray.deleteRecord(lastReportedPosition);
-            if (position != DONE && position > lastReportedPosition) {
-                position--;
+        if (state() == State.IN_USE &&
+            lastReportedPosition != UNDEFINED &&
+            !sortedArray.tombstone(lastReportedPosition)) {
+            boolean shifted = sortedArray.deleteRecord(lastReportedPosition);
+            if (shifted) {
+                if (position != DONE && position > lastReportedPosition) {
+                    position--;
+                }
+            } else {
+                // The tombstone may trigger compaction, which moves records, (but not past position).
+                int n = sortedArray.n;
+                int compactedPosition = sortedArray.compactIfNeeded(position == DONE ? n : position);
+                if (sortedArray.n != n) {
+                    // The deleted record is gone, so there is no position to delete again.
+                    lastReportedPosition = UNDEFINED;
+                    if (position != DONE) {
+                        position = compactedPosition;
+                        if (position == sortedArray.n) {
+                            position = DONE;
+                        }
+                    }
+                }
             }
             deleted = true;
         }
         return deleted;
     }
 
+    // Copies runs of records, delimited by tombstones, directly from the array.
+    @Override
+    public int nextBatch(long[] zs, RECORD[] records, int max) throws IOException, InterruptedException
+    {
+        switch (state()) {
+            case NEVER_USED:
+                startIteration();
+                break;
+            case IN_USE:
+                break;
+            case DONE:
+                assert current() == null;
+                return 0;
+        }
+        int count = 0;
+        int lastPosition = UNDEFINED;
+        while (count < max && position != DONE) {
+            position = sortedArray.skipTombstones(position);
+            int end = Math.min(sortedArray.nextTombstone(position), position + max - count);
+            if (end > position) {
+                System.arraycopy(sortedArray.records, position, records, count, end - position);
+                for (int i = count; i < count + end - position; i++) {
+                    zs[i] = records[i].z();
+                }
+                count += end - position;
+                lastPosition = end - 1;
+            }
+            position = end;
+            assert position <= sortedArray.n : position;
+            if (position == sortedArray.n) {
+                position = DONE;
+            }
+        }
+        if (count > 0) {
+            RECORD record = records[count - 1];
+            current(record);
+            startAt = record;
+            lastReportedPosition = lastPosition;
+            state(State.IN_USE);
+        }
+        if (count < max) {
+            close();
+        }
+        return count;
+    }
+
+    @Override
+    public boolean batchesSupported()
+    {
+        return true;
+    }
+
     // SortedArrayCursor interface
 
     public SortedArrayCursor(SortedArray<RECORD> sortedArray)
@@ -57,7 +126,7 @@ public class SortedArrayCursor<RECORD extends Record> extends Cursor<RECORD>
     {
         switch (state()) {
             case NEVER_USED:
-                startIteration(true);
+                startIteration();
                 break;
             case IN_USE:
                 break;
@@ -65,6 +134,12 @@ public class SortedArrayCursor<RECORD extends Record> extends Cursor<RECORD>
                 assert current() == null;
                 return null;
         }
+        if (position != DONE) {
+            position = sortedArray.skipTombstones(position);
+            if (position == sortedArray.n) {
+                position = DONE;
+            }
+        }
         if (position != DONE) {
             RECORD record = record(position);
             current(record);
@@ -82,20 +157,21 @@ public class SortedArrayCursor<RECORD extends Record> extends Cursor<RECORD>
         return current();
     }
 
-    private void startIteration(boolean includeStartKey)
+    private void startIteration()
     {
-        position = sortedArray.binarySearch(startAt);
-        if (position < 0) {
-            // Key not found
-            position = -position - 1; // See javadoc for binarySearch
+        long z = startAt.z();
+        // A goTo usually moves forward from the last record returned, (e.g. in a spatial join), in which case the
+        // search can start there. The check relies only on the array being sorted, so it is still correct if
+        // records have moved since that record was returned.
+        if (lastReportedPosition != UNDEFINED &&
+            lastReportedPosition < sortedArray.n &&
+            record(lastReportedPosition).z() < z) {
+            position = sortedArray.gallop(z, lastReportedPosition + 1);
         } else {
-            // Key found
-            if (!includeStartKey) {
-                position++;
-            }
+            position = sortedArray.lowerBound(z, 0);
         }
         assert position <= sortedArray.n : position;
-        if (position == -1 || position == sortedArray.n) {
+        if (position == sortedArray.n) {
             position = DONE;
         }
     }
@@ -113,6 +189,7 @@ public class SortedArrayCursor<RECORD extends Record> extends Cursor<RECORD>
     private final SortedArray<RECORD> sortedArray;
     private RECORD startAt;
     private int position;
-    // Position of the last record returned via next(). Needed to support deleteCurrent().
+    // Position of the last record returned via next(). Needed to support deleteCurrent(). UNDEFINED once
+    // that record has been deleted and the array compacted.
     private int lastReportedPosition = UNDEFINED;
 }
@@ -73,7 +73,8 @@
  * <i>Spatial join</i>  is computed by the {@link com.geophile.z.SpatialJoin} class, given two
  * spatial indexes. Output from spatial join comprises a set of
  * overlapping pairs of spatial objects, which can be accessed through an
- * Iterator.
+ * Iterator, passed to a {@link com.geophile.z.SpatialJoin.PairConsumer}, or streamed to subscribers
+ * of a {@link com.geophile.z.Flow.Publisher}.
  *
  * <h2>Included with Geophile</h2>
  *
@@ -0,0 +1,267 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.space;
+
+import com.geophile.z.Record;
+import com.geophile.z.SpatialObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/*
+
+Prepares the records of a bulk load, (see SpatialIndex.bulkLoad), in z-value order. Spatial objects are read
+from the input iterator in batches of BATCH_SIZE. Each batch is decomposed and sorted, on a ForkJoinPool,
+yielding a run of (z-value, spatial object) entries. The runs are then merged. Records are created during the
+merge, by the thread consuming the output.
+
+Entries with the same z-value are ordered as they would have been by a sequence of SpatialIndex.add calls:
+within a run, by input order, (the sort is stable); across runs, by run, (runs are in input order).
+
+*/
+
+class BulkLoad<RECORD extends Record>
+{
+    public Iterator<RECORD> sortedRecords(Iterator<? extends SpatialObject> spatialObjects)
+        throws InterruptedException
+    {
+        List<Future<Run>> futures = new ArrayList<>();
+        SpatialObject[] batch = new SpatialObject[BATCH_SIZE];
+        int n = 0;
+        while (spatialObjects.hasNext()) {
+            batch[n++] = spatialObjects.next();
+            if (n == BATCH_SIZE) {
+                futures.add(submit(batch, n));
+                batch = new SpatialObject[BATCH_SIZE];
+                n = 0;
+            }
+        }
+        if (n > 0) {
+            futures.add(submit(batch, n));
+        }
+        Run[] runs = new Run[futures.size()];
+        for (int i = 0; i < runs.length; i++) {
+            try {
+                runs[i] = futures.get(i).get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+        return new Merge(runs);
+    }
+
+    public BulkLoad(SpatialIndexImpl<RECORD> spatialIndex, Record.Converter<RECORD> recordConverter, ForkJoinPool pool)
+    {
+        this.spatialIndex = spatialIndex;
+        this.recordConverter = recordConverter;
+        this.pool = pool;
+    }
+
+    // For use by this class
+
+    private Future<Run> submit(final SpatialObject[] batch, final int n)
+    {
+        return pool.submit(
+            new Callable<Run>()
+            {
+                @Override
+                public Run call()
+                {
+                    return new Run(spatialIndex, batch, n);
+                }
+            });
+    }
+
+    // Class state
+
+    private static final int BATCH_SIZE = 4096;
+
+    // Object state
+
+    private final SpatialIndexImpl<RECORD> spatialIndex;
+    private final Record.Converter<RECORD> recordConverter;
+    private final ForkJoinPool pool;
+
+    // Inner classes
+
+    // The decomposition of a batch of spatial objects, sorted by z-value.
+    private static class Run
+    {
+        long z(int i)
+        {
+            return zs[i];
+        }
+
+        SpatialObject spatialObject(int i)
+        {
+            return spatialObjects[i];
+        }
+
+        int size()
+        {
+            return n;
+        }
+
+        Run(SpatialIndexImpl<?> spatialIndex, SpatialObject[] batch, int batchSize)
+        {
+            int capacity = 0;
+            for (int i = 0; i < batchSize; i++) {
+                capacity += batch[i].maxZ();
+            }
+            zs = new long[capacity];
+            spatialObjects = new SpatialObject[capacity];
+            for (int i = 0; i < batchSize; i++) {
+                SpatialObject spatialObject = batch[i];
+                long[] decomposition = spatialIndex.decompose(spatialObject, spatialObject.maxZ());
+                for (int j = 0; j < decomposition.length && decomposition[j] != SpaceImpl.Z_NULL; j++) {
+                    zs[n] = decomposition[j];
+                    spatialObjects[n] = spatialObject;
+                    n++;
+                }
+            }
+            sort();
+        }
+
+        // Stable bottom-up merge sort of (zs, spatialObjects) by z-value.
+        private void sort()
+        {
+            long[] zsFrom = zs;
+            SpatialObject[] spatialObjectsFrom = spatialObjects;
+            long[] zsTo = new long[n];
+            SpatialObject[] spatialObjectsTo = new SpatialObject[n];
+            for (int width = 1; width < n; width *= 2) {
+                for (int lo = 0; lo < n; lo += 2 * width) {
+                    int mid = Math.min(lo + width, n);
+                    int hi = Math.min(lo + 2 * width, n);
+                    int i = lo;
+                    int j = mid;
+                    int k = lo;
+                    while (i < mid && j < hi) {
+                        if (zsFrom[j] < zsFrom[i]) {
+                            zsTo[k] = zsFrom[j];
+                            spatialObjectsTo[k++] = spatialObjectsFrom[j++];
+                        } else {
+                            zsTo[k] = zsFrom[i];
+                            spatialObjectsTo[k++] = spatialObjectsFrom[i++];
+                        }
+                    }
+                    while (i < mid) {
+                        zsTo[k] = zsFrom[i];
+                        spatialObjectsTo[k++] = spatialObjectsFrom[i++];
+                    }
+                    while (j < hi) {
+                        zsTo[k] = zsFrom[j];
+                        spatialObjectsTo[k++] = spatialObjectsFrom[j++];
+                    }
+                }
+                long[] zsSwap = zsFrom;
+                zsFrom = zsTo;
+                zsTo = zsSwap;
+                SpatialObject[] spatialObjectsSwap = spatialObjectsFrom;
+                spatialObjectsFrom = spatialObjectsTo;
+                spatialObjectsTo = spatialObjectsSwap;
+            }
+            zs = zsFrom;
+            spatialObjects = spatialObjectsFrom;
+        }
+
+        private long[] zs;
+        private SpatialObject[] spatialObjects;
+        private int n;
+    }
+
+    // k-way merge of runs, using a binary heap of run numbers, ordered by (z-value at run's position, run number).
+    private class Merge implements Iterator<RECORD>
+    {
+        @Override
+        public boolean hasNext()
+        {
+            return heapSize > 0;
+        }
+
+        @Override
+        public RECORD next()
+        {
+            if (heapSize == 0) {
+                throw new NoSuchElementException();
+            }
+            int r = heap[0];
+            Run run = runs[r];
+            int position = positions[r]++;
+            RECORD record = recordConverter.newRecord(run.spatialObject(position));
+            record.z(run.z(position));
+            if (positions[r] == run.size()) {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(0);
+            return record;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        Merge(Run[] runs)
+        {
+            this.runs = runs;
+            this.positions = new int[runs.length];
+            this.heap = new int[runs.length];
+            for (int r = 0; r < runs.length; r++) {
+                if (runs[r].size() > 0) {
+                    heap[heapSize++] = r;
+                }
+            }
+            for (int i = heapSize / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        }
+
+        private void siftDown(int i)
+        {
+            int child;
+            while ((child = 2 * i + 1) < heapSize) {
+                if (child + 1 < heapSize && less(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!less(heap[child], heap[i])) {
+                    return;
+                }
+                int swap = heap[i];
+                heap[i] = heap[child];
+                heap[child] = swap;
+                i = child;
+            }
+        }
+
+        private boolean less(int r, int s)
+        {
+            long rz = runs[r].z(positions[r]);
+            long sz = runs[s].z(positions[s]);
+            return rz < sz || rz == sz && r < s;
+        }
+
+        private final Run[] runs;
+        private final int[] positions;
+        private final int[] heap;
+        private int heapSize;
+    }
+}
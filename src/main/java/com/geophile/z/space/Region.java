@@ -8,8 +8,6 @@ package com.geophile.z.space;
 
 import com.geophile.z.Space;
 
-import java.util.Arrays;
-
 /**
  * A {@link Region} represents a box-shaped subspace obtained by recursive partitioning of the space.
  * Regions are only of interest to users of geophile who define {@link com.geophile.z.SpatialObject} subtypes.
@@ -27,8 +25,9 @@ import java.util.Arrays;
  * along the top and right edges of the space, is that we must deal with spatial objects that touch these edges,
  * and these objects must be completely covered by Regions.
  *
- * To ensure that this logic is implemented correctly, the Region API does not expose the Region's boundaries directly.
- * Instead, there are methods for comparing the boundaries to given coordinates. For example, hiGT(int d, double coord)
+ * To ensure that this logic is implemented correctly, boundaries should not be compared to coordinates directly,
+ * (lo(d) and hi(d) are available for approximate geometric use only). Instead, there are methods for comparing the
+ * boundaries to given coordinates. For example, hiGT(int d, double coord)
  * indicates whether the high bound of the Region, in dimension d, is greater than coord. The implementation depends
  * on whether the region is at the upper edge of the space in dimension d.
  */
@@ -188,6 +187,53 @@ public class Region
         return level == space.zBits;
     }
 
+    /**
+     * Returns the lowest cell number, in dimension d, of the grid cells in this region. Cell numbers
+     * are grid coordinates, not application coordinates.
+     * @param d The dimension of interest.
+     * @return The lowest cell number, in dimension d, of the grid cells in this region.
+     */
+    public long loCell(int d)
+    {
+        return loCell[d];
+    }
+
+    /**
+     * Returns the highest cell number, in dimension d, of the grid cells in this region. The region includes
+     * this cell.
+     * @param d The dimension of interest.
+     * @return The highest cell number, in dimension d, of the grid cells in this region.
+     */
+    public long hiCell(int d)
+    {
+        return hiCell[d];
+    }
+
+    /**
+     * Returns the low bound of this region in dimension d, in application coordinates. This is for building
+     * an approximate geometric representation of the region, e.g. for testing it against a complex shape.
+     * Tests at the region's boundaries should use the comparison methods, (e.g. {@link #loLE(int, double)}).
+     * @param d The dimension of interest.
+     * @return The low bound of this region in dimension d.
+     */
+    public double lo(int d)
+    {
+        return loCell[d] / appToGridScale[d] + appLo[d];
+    }
+
+    /**
+     * Returns the high bound of this region in dimension d, in application coordinates. The region excludes
+     * this bound, unless it is the high bound of the space, (see the class comment). This is for building
+     * an approximate geometric representation of the region, e.g. for testing it against a complex shape.
+     * Tests at the region's boundaries should use the comparison methods, (e.g. {@link #hiGE(int, double)}).
+     * @param d The dimension of interest.
+     * @return The high bound of this region in dimension d.
+     */
+    public double hi(int d)
+    {
+        return (hiCell[d] + 1) / appToGridScale[d] + appLo[d];
+    }
+
     // For use by this package
 
     void downLeft()
@@ -215,56 +261,80 @@ public class Region
         return space.shuffle(loCell, level);
     }
 
-    Region copy()
+    // Makes this region a copy of the given region, which must belong to the same space.
+    void copyFrom(Region region)
     {
-        return new Region(this);
+        assert region.space == space;
+        int dimensions = loCell.length;
+        System.arraycopy(region.loCell, 0, loCell, 0, dimensions);
+        System.arraycopy(region.hiCell, 0, hiCell, 0, dimensions);
+        System.arraycopy(region.xBitPosition, 0, xBitPosition, 0, dimensions);
+        level = region.level;
     }
 
-    Region(SpaceImpl space, double[] point)
+    // Copies this region's state into slot i of the given arrays, (see RegionQueue).
+    void store(long[] loCells, long[] hiCells, int[] xBitPositions, int[] levels, int i)
+    {
+        int dimensions = loCell.length;
+        int offset = i * dimensions;
+        System.arraycopy(loCell, 0, loCells, offset, dimensions);
+        System.arraycopy(hiCell, 0, hiCells, offset, dimensions);
+        System.arraycopy(xBitPosition, 0, xBitPositions, offset, dimensions);
+        levels[i] = level;
+    }
+
+    // Makes this region the one stored in slot i of the given arrays, by store.
+    void load(long[] loCells, long[] hiCells, int[] xBitPositions, int[] levels, int i)
+    {
+        int dimensions = loCell.length;
+        int offset = i * dimensions;
+        System.arraycopy(loCells, offset, loCell, 0, dimensions);
+        System.arraycopy(hiCells, offset, hiCell, 0, dimensions);
+        System.arraycopy(xBitPositions, offset, xBitPosition, 0, dimensions);
+        level = levels[i];
+    }
+
+    // Makes this region the single cell containing the given point.
+    void moveTo(double[] point)
     {
         assert point.length == space.dimensions;
-        this.space = space;
-        this.interleave = space.interleave;
-        this.appToGridScale = space.appToGridScale;
-        this.appLo = space.appLo;
-        this.loCell = new long[space.dimensions];
-        this.hiCell = new long[space.dimensions];
         for (int d = 0; d < space.dimensions; d++) {
-            this.loCell[d] = space.cellCoord(d, point[d]);
-            this.hiCell[d] = this.loCell[d];
-        }
-        this.level = space.zBits;
-        this.xBitPosition = new int[space.dimensions];
-        for (int zBitPosition = space.zBits - 1; zBitPosition >= level; zBitPosition--) {
-            int d = interleave[zBitPosition];
-            xBitPosition[d]++;
+            loCell[d] = space.cellCoord(d, point[d]);
+            hiCell[d] = loCell[d];
+            xBitPosition[d] = 0;
         }
+        level = space.zBits;
     }
 
-    // For use by this class
-
-    private double lo(int d)
+    // Makes this region the one represented by the given z-value.
+    void moveTo(long z)
     {
-        return loCell[d] / appToGridScale[d] + appLo[d];
+        space.unshuffle(z, loCell, hiCell);
+        for (int d = 0; d < space.dimensions; d++) {
+            xBitPosition[d] = Long.bitCount(loCell[d] ^ hiCell[d]);
+        }
+        level = SpaceImpl.length(z);
     }
 
-    private double hi(int d)
+    Region(SpaceImpl space, double[] point)
     {
-        return (hiCell[d] + 1) / appToGridScale[d] + appLo[d];
+        this(space);
+        moveTo(point);
     }
 
-    private Region(Region region)
+    // Creates a region whose state must be established by moveTo or copyFrom.
+    Region(SpaceImpl space)
     {
-        this.space = region.space;
-        this.interleave = region.interleave;
-        this.appToGridScale = region.appToGridScale;
-        this.appLo = region.appLo;
-        this.loCell = Arrays.copyOf(region.loCell, region.loCell.length);
-        this.hiCell = Arrays.copyOf(region.hiCell, region.hiCell.length);
-        this.level = region.level;
-        this.xBitPosition = Arrays.copyOf(region.xBitPosition, region.xBitPosition.length);
+        this.space = space;
+        this.interleave = space.interleave;
+        this.appToGridScale = space.appToGridScale;
+        this.appLo = space.appLo;
+        this.loCell = new long[space.dimensions];
+        this.hiCell = new long[space.dimensions];
+        this.xBitPosition = new int[space.dimensions];
     }
 
+
     // Object state
 
     private final SpaceImpl space;
@@ -276,7 +346,7 @@ public class Region
     private final long[] loCell;
     private final long[] hiCell;
     private int level;
-    private int[] xBitPosition;
-    private double[] appToGridScale;
-    private double[] appLo;
+    private final int[] xBitPosition;
+    private final double[] appToGridScale;
+    private final double[] appLo;
 }
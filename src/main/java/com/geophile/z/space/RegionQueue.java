@@ -0,0 +1,94 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.space;
+
+/*
+
+A RegionQueue is the scratch state of SpaceImpl.decompose: a FIFO queue of Regions, implemented as a ring
+of slots in preallocated arrays. Adding a Region to the queue copies its state into a slot, and polling copies
+the state out, so a decomposition allocates nothing but its working Region once the arrays are large enough.
+
+A RegionQueue doesn't refer to a Space, (or to Regions, which do), so that SpaceImpl can keep one RegionQueue
+per thread, in a static ThreadLocal, without keeping Spaces reachable from long-lived threads. The arrays are
+resized to the number of dimensions of the Space being used, by reset.
+
+*/
+
+class RegionQueue
+{
+    public void reset(int capacity, int dimensions)
+    {
+        if (this.capacity < capacity || this.dimensions != dimensions) {
+            int newCapacity = Math.max(capacity, this.capacity);
+            loCells = new long[newCapacity * dimensions];
+            hiCells = new long[newCapacity * dimensions];
+            xBitPositions = new int[newCapacity * dimensions];
+            levels = new int[newCapacity];
+            this.capacity = newCapacity;
+            this.dimensions = dimensions;
+        }
+        head = 0;
+        size = 0;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public void add(Region region)
+    {
+        assert size < capacity;
+        int tail = head + size;
+        if (tail >= capacity) {
+            tail -= capacity;
+        }
+        region.store(loCells, hiCells, xBitPositions, levels, tail);
+        size++;
+    }
+
+    // Removes the Region at the head of the queue, copying its state into the given Region.
+    public void poll(Region region)
+    {
+        assert size > 0;
+        region.load(loCells, hiCells, xBitPositions, levels, head);
+        if (++head == capacity) {
+            head = 0;
+        }
+        size--;
+    }
+
+    // Copies the ith Region from the head of the queue into the given Region, without removing it.
+    public void copy(int i, Region region)
+    {
+        assert i < size;
+        int position = head + i;
+        if (position >= capacity) {
+            position -= capacity;
+        }
+        region.load(loCells, hiCells, xBitPositions, levels, position);
+    }
+
+    // Object state
+
+    // Slot i of the ring occupies positions [i * dimensions, (i + 1) * dimensions) of the per-dimension arrays.
+    private long[] loCells = new long[0];
+    private long[] hiCells = new long[0];
+    private int[] xBitPositions = new int[0];
+    private int[] levels = new int[0];
+    private int capacity;
+    private int dimensions;
+    private int head;
+    private int size;
+    // Set while a decomposition is using this RegionQueue
+    boolean inUse;
+}
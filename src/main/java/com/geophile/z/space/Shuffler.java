@@ -0,0 +1,519 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.space;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+
+A Shuffler interleaves the bits of cell coordinates into the bits of a z-value, (shuffle), and separates them
+again, (unshuffle), following a SpaceImpl's gBits and interleave. The z-value bits are returned without the
+length, which is SpaceImpl's business. There are three implementations:
+
+- TABLE: Per-byte lookup tables, one long[256] per byte of each coordinate, ORed together. This is the original
+  SpaceImpl.shuffle.
+
+- DEPOSIT: For each dimension, the interleave maps runs of consecutive coordinate bits to runs of consecutive
+  z-value bits, and each run is moved with one shift and mask. No tables, but one step per run, so this is good
+  for interleaves that keep a dimension's bits together, and bad for the default, alternating interleave.
+
+- EXPAND: Long.expand and Long.compress, which the JIT compiles to PDEP and PEXT on hardware that has them.
+  These methods were added in JDK 19, so they are located reflectively, and this implementation is available
+  only when running on a JDK that has them.
+
+Which is fastest depends on the JVM, the hardware and the interleave, so newShuffler times the available
+implementations on random cells and picks the fastest. The choice is cached by gBits and interleave, so the
+calibration is done once per layout, not once per SpaceImpl. The shuffle system property, (table, deposit
+or expand), overrides the calibration.
+
+*/
+
+abstract class Shuffler
+{
+    // Shuffler interface
+
+    // Returns the z-value bits for the cell with coordinates x, without the length.
+    public abstract long shuffle(long[] x);
+
+    // Sets x to the coordinates encoded by the bits of z. Coordinate bits not covered by z's length are 0.
+    public abstract void unshuffle(long z, long[] x);
+
+    public abstract Kind kind();
+
+    public static Shuffler newShuffler(SpaceImpl space)
+    {
+        String key = Arrays.toString(space.gBits) + Arrays.toString(space.interleave);
+        Kind kind = CHOICES.get(key);
+        if (kind == null) {
+            kind = calibrate(space);
+            Kind previous = CHOICES.putIfAbsent(key, kind);
+            if (previous != null) {
+                kind = previous;
+            }
+        }
+        return newShuffler(space, kind);
+    }
+
+    public static Shuffler newShuffler(SpaceImpl space, Kind kind)
+    {
+        switch (kind) {
+            case TABLE:
+                return new TableShuffler(space);
+            case DEPOSIT:
+                return new DepositShuffler(space);
+            case EXPAND:
+                if (!ExpandShuffler.supported()) {
+                    throw new IllegalArgumentException("Long.expand and Long.compress are unavailable");
+                }
+                return new ExpandShuffler(space);
+        }
+        assert false : kind;
+        return null;
+    }
+
+    public static List<Kind> available()
+    {
+        List<Kind> kinds = new ArrayList<>();
+        kinds.add(Kind.TABLE);
+        kinds.add(Kind.DEPOSIT);
+        if (ExpandShuffler.supported()) {
+            kinds.add(Kind.EXPAND);
+        }
+        return kinds;
+    }
+
+    // For use by subclasses
+
+    Shuffler(SpaceImpl space)
+    {
+        this.dimensions = space.dimensions;
+        this.gBits = space.gBits;
+        // zMask[d] has a 1 at each position of the z-value (as a long) that holds a bit of x[d]. The
+        // interleave lists, for each z-value bit, left-to-right, the dimension it comes from. Coordinate bits
+        // are assigned left-to-right too, so the leftmost z-value bit of a dimension is the high-order bit
+        // of its coordinate.
+        this.zMask = new long[dimensions];
+        for (int zBitPosition = 0; zBitPosition < space.zBits; zBitPosition++) {
+            zMask[space.interleave[zBitPosition]] |= 1L << (62 - zBitPosition);
+        }
+    }
+
+    // For use by this class
+
+    private static Kind calibrate(SpaceImpl space)
+    {
+        String property = System.getProperty(SHUFFLE_PROPERTY);
+        if (property != null) {
+            Kind kind = Kind.valueOf(property.toUpperCase());
+            if (kind != Kind.EXPAND || ExpandShuffler.supported()) {
+                return kind;
+            }
+        }
+        Random random = new Random(CALIBRATION_SEED);
+        long[][] cells = new long[CALIBRATION_CELLS][space.dimensions];
+        for (long[] cell : cells) {
+            for (int d = 0; d < space.dimensions; d++) {
+                cell[d] = random.nextLong() & space.gHi[d];
+            }
+        }
+        Shuffler reference = new TableShuffler(space);
+        Kind fastest = Kind.TABLE;
+        long fastestTime = Long.MAX_VALUE;
+        for (Kind kind : available()) {
+            Shuffler shuffler = kind == Kind.TABLE ? reference : newShuffler(space, kind);
+            if (agrees(shuffler, reference, cells)) {
+                long time = time(shuffler, cells);
+                if (time < fastestTime) {
+                    fastest = kind;
+                    fastestTime = time;
+                }
+            }
+        }
+        return fastest;
+    }
+
+    private static boolean agrees(Shuffler shuffler, Shuffler reference, long[][] cells)
+    {
+        long[] x = new long[cells[0].length];
+        for (long[] cell : cells) {
+            long z = reference.shuffle(cell);
+            if (shuffler.shuffle(cell) != z) {
+                return false;
+            }
+            shuffler.unshuffle(z, x);
+            if (!Arrays.equals(cell, x)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns the best time, in nsec, of a number of rounds, each of which shuffles and unshuffles every cell.
+    private static long time(Shuffler shuffler, long[][] cells)
+    {
+        long[] x = new long[cells[0].length];
+        long best = Long.MAX_VALUE;
+        long sink = 0;
+        for (int round = 0; round < CALIBRATION_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (long[] cell : cells) {
+                long z = shuffler.shuffle(cell);
+                shuffler.unshuffle(z, x);
+                sink += z + x[0];
+            }
+            long time = System.nanoTime() - start;
+            if (time < best) {
+                best = time;
+            }
+        }
+        calibrationSink += sink;
+        return best;
+    }
+
+    // Class state
+
+    private static final String SHUFFLE_PROPERTY = "shuffle";
+    private static final int CALIBRATION_CELLS = 256;
+    private static final int CALIBRATION_ROUNDS = 200;
+    private static final long CALIBRATION_SEED = 419;
+    private static final ConcurrentMap<String, Kind> CHOICES = new ConcurrentHashMap<>();
+    // Keeps the JIT from optimizing away the calibration loops.
+    private static volatile long calibrationSink;
+
+    // Object state
+
+    final int dimensions;
+    final int[] gBits;
+    final long[] zMask;
+
+    // Inner classes
+
+    public enum Kind
+    {
+        TABLE, DEPOSIT, EXPAND
+    }
+
+    static class TableShuffler extends Shuffler
+    {
+        // Shuffler interface
+
+        @Override
+        public long shuffle(long[] x)
+        {
+            long z = 0;
+            for (int d = 0; d < dimensions; d++) {
+                long xd = x[d];
+                switch (gBytes[d]) {
+                    case 8: z |= shuffle7[d][(int) (xd >>> 56) & 0xff];
+                    case 7: z |= shuffle6[d][(int) (xd >>> 48) & 0xff];
+                    case 6: z |= shuffle5[d][(int) (xd >>> 40) & 0xff];
+                    case 5: z |= shuffle4[d][(int) (xd >>> 32) & 0xff];
+                    case 4: z |= shuffle3[d][(int) (xd >>> 24) & 0xff];
+                    case 3: z |= shuffle2[d][(int) (xd >>> 16) & 0xff];
+                    case 2: z |= shuffle1[d][(int) (xd >>> 8) & 0xff];
+                    case 1: z |= shuffle0[d][(int) (xd) & 0xff];
+                }
+            }
+            return z;
+        }
+
+        @Override
+        public void unshuffle(long z, long[] x)
+        {
+            for (int d = 0; d < dimensions; d++) {
+                x[d] = 0;
+            }
+            for (int zByte = zByteLo; zByte < 8; zByte++) {
+                int b = (int) (z >>> (8 * zByte)) & 0xff;
+                long[][] unshuffle = this.unshuffle[zByte];
+                for (int d = 0; d < dimensions; d++) {
+                    x[d] |= unshuffle[d][b];
+                }
+            }
+        }
+
+        @Override
+        public Kind kind()
+        {
+            return Kind.TABLE;
+        }
+
+        // TableShuffler interface
+
+        TableShuffler(SpaceImpl space)
+        {
+            super(space);
+            gBytes = new int[dimensions];
+            for (int d = 0; d < dimensions; d++) {
+                gBytes[d] = (gBits[d] + 7) / 8;
+            }
+            long[][][] shuffle = computeShuffleMasks(space);
+            shuffle0 = shuffle[0];
+            shuffle1 = shuffle[1];
+            shuffle2 = shuffle[2];
+            shuffle3 = shuffle[3];
+            shuffle4 = shuffle[4];
+            shuffle5 = shuffle[5];
+            shuffle6 = shuffle[6];
+            shuffle7 = shuffle[7];
+            // The lowest z-value bit is bit 63 - zBits, (bit 63 is the unused MSB).
+            zByteLo = (63 - space.zBits) / 8;
+            unshuffle = computeUnshuffleMasks();
+        }
+
+        // For use by this class
+
+        private long[][][] computeShuffleMasks(SpaceImpl space)
+        {
+            // Shuffling one bit at a time would be slow. shuffle relies on array subscripting to locate masks which
+            // are combined using bitwise OR. The masks are computed here.
+            //
+            // First, xz, a mapping from x (coordinate) to z bit positions, is computed. xz[d][p] is the position
+            // within the z-value of bit p of x[d], (the coordinate of dimension d). For both x and z, bit positions
+            // are numbered left-to-right starting at 0. x values are right-justified, while z-values are
+            // left-justified.
+            //
+            // Then the shuffle masks are computed. shuffle[b][d][x] is a mask representing the bits of the bth byte
+            // of x[d] that contribute to the z-value.
+            int[][] xz;
+            xz = new int[dimensions][];
+            for (int d = 0; d < dimensions; d++) {
+                xz[d] = new int[gBits[d]];
+            }
+            int[] xBitCount = new int[dimensions];
+            for (int zBitPosition = 0; zBitPosition < space.zBits; zBitPosition++) {
+                int d = space.interleave[zBitPosition];
+                xz[d][xBitCount[d]] = zBitPosition;
+                xBitCount[d]++;
+            }
+            long[][][] shuffle = new long[8][][];
+            for (int xBytePosition = 0; xBytePosition < 8; xBytePosition++) {
+                shuffle[xBytePosition] = new long[dimensions][];
+                for (int d = 0; d < dimensions; d++) {
+                    shuffle[xBytePosition][d] = new long[256];
+                }
+            }
+            for (int d = 0; d < dimensions; d++) {
+                for (int xBitPosition = 0; xBitPosition < gBits[d]; xBitPosition++) {
+                    long xMask = 1L << gBits[d] - xBitPosition - 1;
+                    long zMask = 1L << (62 - xz[d][xBitPosition]);
+                    int xByteLeftShift = (gBits[d] - xBitPosition - 1) / 8;
+                    for (int xByte = 0; xByte <= 0xff; xByte++) {
+                        // xPartial explores all 256 values of one byte of a coordinate. Outside this one byte,
+                        // everything in xPartial is zero, which is fine for generating shuffle masks.
+                        long xPartial = ((long) xByte) << (8 * xByteLeftShift);
+                        if ((xPartial & xMask) != 0) {
+                            shuffle[xByteLeftShift][d][xByte] |= zMask;
+                        }
+                    }
+                }
+            }
+            return shuffle;
+        }
+
+        private long[][][] computeUnshuffleMasks()
+        {
+            // unshuffle[b][d][z] is the part of x[d] represented by the bits of the bth byte of the z-value,
+            // (counting from the right, so that byte b holds z-value bits 8b .. 8b + 7). A z-value bit belongs to
+            // x[d] iff it is in zMask[d], and is the kth bit of x[d], counting from the right, iff k bits of
+            // zMask[d] are to its right.
+            long[][][] unshuffle = new long[8][][];
+            for (int zByte = 0; zByte < 8; zByte++) {
+                unshuffle[zByte] = new long[dimensions][256];
+                for (int d = 0; d < dimensions; d++) {
+                    for (int bit = 0; bit < 8; bit++) {
+                        int zBit = 8 * zByte + bit;
+                        long zBitMask = 1L << zBit;
+                        if ((zMask[d] & zBitMask) != 0) {
+                            long xBitMask = 1L << Long.bitCount(zMask[d] & (zBitMask - 1));
+                            for (int zPartial = 0; zPartial <= 0xff; zPartial++) {
+                                if ((zPartial & (1 << bit)) != 0) {
+                                    unshuffle[zByte][d][zPartial] |= xBitMask;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            return unshuffle;
+        }
+
+        // Object state
+
+        private final int[] gBytes;
+        private final long[][] shuffle0;
+        private final long[][] shuffle1;
+        private final long[][] shuffle2;
+        private final long[][] shuffle3;
+        private final long[][] shuffle4;
+        private final long[][] shuffle5;
+        private final long[][] shuffle6;
+        private final long[][] shuffle7;
+        private final int zByteLo;
+        private final long[][][] unshuffle;
+    }
+
+    static class DepositShuffler extends Shuffler
+    {
+        // Shuffler interface
+
+        @Override
+        public long shuffle(long[] x)
+        {
+            long z = 0;
+            for (int d = 0; d < dimensions; d++) {
+                long xd = x[d];
+                int[] xShift = this.xShift[d];
+                int[] zShift = this.zShift[d];
+                long[] runMask = this.runMask[d];
+                for (int r = 0; r < runMask.length; r++) {
+                    z |= ((xd >>> xShift[r]) & runMask[r]) << zShift[r];
+                }
+            }
+            return z;
+        }
+
+        @Override
+        public void unshuffle(long z, long[] x)
+        {
+            for (int d = 0; d < dimensions; d++) {
+                long xd = 0;
+                int[] xShift = this.xShift[d];
+                int[] zShift = this.zShift[d];
+                long[] runMask = this.runMask[d];
+                for (int r = 0; r < runMask.length; r++) {
+                    xd |= ((z >>> zShift[r]) & runMask[r]) << xShift[r];
+                }
+                x[d] = xd;
+            }
+        }
+
+        @Override
+        public Kind kind()
+        {
+            return Kind.DEPOSIT;
+        }
+
+        // DepositShuffler interface
+
+        DepositShuffler(SpaceImpl space)
+        {
+            super(space);
+            xShift = new int[dimensions][];
+            zShift = new int[dimensions][];
+            runMask = new long[dimensions][];
+            for (int d = 0; d < dimensions; d++) {
+                // Each run of 1s in zMask[d] holds consecutive bits of x[d]. Scan the runs right to left,
+                // so that the x bits are assigned from the right.
+                int runs = Long.bitCount(zMask[d] & ~(zMask[d] << 1));
+                xShift[d] = new int[runs];
+                zShift[d] = new int[runs];
+                runMask[d] = new long[runs];
+                long mask = zMask[d];
+                int xBits = 0;
+                for (int r = 0; r < runs; r++) {
+                    int runStart = Long.numberOfTrailingZeros(mask);
+                    int runLength = Long.numberOfTrailingZeros(~(mask >>> runStart));
+                    xShift[d][r] = xBits;
+                    zShift[d][r] = runStart;
+                    runMask[d][r] = (1L << runLength) - 1;
+                    xBits += runLength;
+                    mask &= ~(runMask[d][r] << runStart);
+                }
+                assert mask == 0;
+            }
+        }
+
+        // Object state
+
+        // For run r of dimension d, x bits xShift[d][r] .. xShift[d][r] + run length - 1 are z-value bits
+        // zShift[d][r] .. zShift[d][r] + run length - 1, (both counting from the right).
+        private final int[][] xShift;
+        private final int[][] zShift;
+        private final long[][] runMask;
+    }
+
+    static class ExpandShuffler extends Shuffler
+    {
+        // Shuffler interface
+
+        @Override
+        public long shuffle(long[] x)
+        {
+            try {
+                long z = 0;
+                for (int d = 0; d < dimensions; d++) {
+                    z |= (long) EXPAND.invokeExact(x[d], zMask[d]);
+                }
+                return z;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void unshuffle(long z, long[] x)
+        {
+            try {
+                for (int d = 0; d < dimensions; d++) {
+                    x[d] = (long) COMPRESS.invokeExact(z, zMask[d]);
+                }
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public Kind kind()
+        {
+            return Kind.EXPAND;
+        }
+
+        // ExpandShuffler interface
+
+        static boolean supported()
+        {
+            return EXPAND != null && COMPRESS != null;
+        }
+
+        ExpandShuffler(SpaceImpl space)
+        {
+            super(space);
+        }
+
+        // For use by this class
+
+        private static MethodHandle longMethod(String name)
+        {
+            MethodHandle method;
+            try {
+                method = MethodHandles.publicLookup().findStatic(Long.class,
+                                                                 name,
+                                                                 MethodType.methodType(long.class,
+                                                                                       long.class,
+                                                                                       long.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                method = null;
+            }
+            return method;
+        }
+
+        // Class state
+
+        // Long.expand and Long.compress, (JDK 19+), or null. Static final so that the JIT can inline through them.
+        private static final MethodHandle EXPAND = longMethod("expand");
+        private static final MethodHandle COMPRESS = longMethod("compress");
+    }
+}
@@ -10,9 +10,9 @@ import com.geophile.z.Space;
 import com.geophile.z.SpatialObject;
 import com.geophile.z.SpatialObjectException;
 
-import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /*
  * Geophile's grid is an abstraction, implemented as follows:
@@ -117,124 +117,27 @@ public class SpaceImpl extends Space
 
     @Override
     public void decompose(SpatialObject spatialObject, long[] zs)
+    {
+        decompose(spatialObject, zs, null);
+    }
+
+    @Override
+    public void decompose(SpatialObject spatialObject, long[] zs, ForkJoinPool pool)
     {
         if (!spatialObject.containedBy(this)) {
             throw SpatialObjectException.notContainedBySpace(spatialObject, this);
         }
-        int maxRegions = zs.length;
-        int zCount = 0;
-        Region region = new Region(this, spatialObject.arbitraryPoint());
-        while (!spatialObject.containedBy(region)) {
-            region.up();
+        // Decomposition state is reused, except in the unlikely event that decompose is reentered, e.g.
+        // by SpatialObject.compare. A null pool means that the decomposition is sequential.
+        RegionQueue queue = REGION_QUEUES.get();
+        if (queue.inUse) {
+            queue = new RegionQueue();
         }
-        if (zs.length == 1) {
-            zs[0] = z(region);
-        } else {
-            Queue<Region> queue = new ArrayDeque<>(maxRegions);
-            queue.add(region);
-            while (!queue.isEmpty()) {
-                region = queue.poll();
-                if (region.isPoint()) {
-                    zs[zCount++] = z(region);
-                } else {
-                    region.downLeft();
-                    RegionComparison leftComparison = spatialObject.compare(region);
-                    region.up();
-                    region.downRight();
-                    RegionComparison rightComparison = spatialObject.compare(region);
-                    switch (leftComparison) {
-                        case REGION_OUTSIDE_OBJECT:
-                            switch (rightComparison) {
-                                case REGION_OUTSIDE_OBJECT:
-                                    assert false;
-                                    break;
-                                case REGION_INSIDE_OBJECT:
-                                    zs[zCount++] = z(region);
-                                    break;
-                                case REGION_OVERLAPS_OBJECT:
-                                    queue.add(region.copy());
-                                    break;
-                            }
-                            break;
-                        case REGION_INSIDE_OBJECT:
-                            switch (rightComparison) {
-                                case REGION_OUTSIDE_OBJECT:
-                                    region.up();
-                                    region.downLeft();
-                                    zs[zCount++] = z(region);
-                                    break;
-                                case REGION_INSIDE_OBJECT:
-                                    region.up();
-                                    zs[zCount++] = z(region);
-                                    break;
-                                case REGION_OVERLAPS_OBJECT:
-                                    if (queue.size() + 1 + zCount < maxRegions) {
-                                        queue.add(region.copy());
-                                        region.up();
-                                        region.downLeft();
-                                        zs[zCount++] = z(region);
-                                    } else {
-                                        region.up();
-                                        zs[zCount++] = z(region);
-                                    }
-                                    break;
-                            }
-                            break;
-                        case REGION_OVERLAPS_OBJECT:
-                            switch (rightComparison) {
-                                case REGION_OUTSIDE_OBJECT:
-                                    region.up();
-                                    region.downLeft();
-                                    queue.add(region.copy());
-                                    break;
-                                case REGION_INSIDE_OBJECT:
-                                    if (queue.size() + 1 + zCount < maxRegions) {
-                                        zs[zCount++] = z(region);
-                                        region.up();
-                                        region.downLeft();
-                                        queue.add(region.copy());
-                                    } else {
-                                        region.up();
-                                        zs[zCount++] = z(region);
-                                    }
-                                    break;
-                                case REGION_OVERLAPS_OBJECT:
-                                    if (queue.size() + 1 + zCount < maxRegions) {
-                                        queue.add(region.copy());
-                                        region.up();
-                                        region.downLeft();
-                                        queue.add(region.copy());
-                                    } else {
-                                        region.up();
-                                        zs[zCount++] = z(region);
-                                    }
-                                    break;
-                            }
-                            break;
-                    }
-                }
-            }
-            while (!queue.isEmpty()) {
-                region = queue.poll();
-                zs[zCount++] = z(region);
-            }
-            for (int i = zCount; i < maxRegions; i++) {
-                zs[i] = Z_NULL;
-            }
-            Arrays.sort(zs, 0, zCount);
-            boolean merge;
-            do {
-                merge = false;
-                for (int i = 1; i < zCount; i++) {
-                    long a = zs[i - 1];
-                    long b = zs[i];
-                    if ((merge = siblings(a, b))) {
-                        zs[i - 1] = parent(a);
-                        System.arraycopy(zs, i + 1, zs, i, zCount - i - 1);
-                        zs[--zCount] = Z_NULL;
-                    }
-                }
-            } while (merge);
+        queue.inUse = true;
+        try {
+            decompose(spatialObject, zs, queue, pool);
+        } finally {
+            queue.inUse = false;
         }
     }
 
@@ -247,21 +150,38 @@ public class SpaceImpl extends Space
 
     public long shuffle(long x[], int length)
     {
-        long z = 0;
+        return shuffler.shuffle(x) | length;
+    }
+
+    // Sets x to the cell coordinates encoded by z. If z is shorter than zBits, then the coordinate bits past the
+    // end of z are 0, i.e., x is the cell with the lowest coordinates in z's region.
+    public void unshuffle(long z, long[] x)
+    {
+        shuffler.unshuffle(z, x);
+    }
+
+    // Sets cellLo and cellHi to the lowest and highest cells, (in every dimension), of z's region. The region
+    // contains all cells between cellLo and cellHi, inclusive.
+    public void unshuffle(long z, long[] cellLo, long[] cellHi)
+    {
+        int length = length(z);
+        if (length > zBits) {
+            throw new IllegalArgumentException(String.format("z-value %s has more than %s bits",
+                                                             formatZ(z), zBits));
+        }
+        shuffler.unshuffle(z, cellLo);
+        long[] unspecified = unspecifiedBits[length];
         for (int d = 0; d < dimensions; d++) {
-            long xd = x[d];
-            switch (gBytes[d]) {
-                case 8: z |= shuffle7[d][(int) (xd >>> 56) & 0xff];
-                case 7: z |= shuffle6[d][(int) (xd >>> 48) & 0xff];
-                case 6: z |= shuffle5[d][(int) (xd >>> 40) & 0xff];
-                case 5: z |= shuffle4[d][(int) (xd >>> 32) & 0xff];
-                case 4: z |= shuffle3[d][(int) (xd >>> 24) & 0xff];
-                case 3: z |= shuffle2[d][(int) (xd >>> 16) & 0xff];
-                case 2: z |= shuffle1[d][(int) (xd >>> 8) & 0xff];
-                case 1: z |= shuffle0[d][(int) (xd) & 0xff];
-            }
+            cellHi[d] = cellLo[d] | unspecified[d];
         }
-        return z | length;
+    }
+
+    // Returns the Region represented by z.
+    public Region region(long z)
+    {
+        Region region = new Region(this);
+        region.moveTo(z);
+        return region;
     }
 
     public int zBits()
@@ -375,11 +295,9 @@ public class SpaceImpl extends Space
               "dimensions (%s) must be between 1 and %s", dimensions, MAX_DIMENSIONS);
         this.gBits = Arrays.copyOf(gridBits, dimensions);
         this.gHi = new long[dimensions];
-        this.gBytes = new int[dimensions];
         int zBits = 0;
         for (int d = 0; d < dimensions; d++) {
             zBits += gridBits[d];
-            gBytes[d] = (gridBits[d] + 7) / 8;
         }
         this.zBits = zBits;
         interleave =
@@ -406,19 +324,172 @@ public class SpaceImpl extends Space
             this.gHi[d] = (1L << gridBits[d]) - 1;
         }
         // shuffle
-        long[][][] shuffle = computeShuffleMasks();
-        shuffle0 = shuffle[0];
-        shuffle1 = shuffle[1];
-        shuffle2 = shuffle[2];
-        shuffle3 = shuffle[3];
-        shuffle4 = shuffle[4];
-        shuffle5 = shuffle[5];
-        shuffle6 = shuffle[6];
-        shuffle7 = shuffle[7];
+        this.shuffler = Shuffler.newShuffler(this);
+        // unshuffle
+        this.unspecifiedBits = computeUnspecifiedBits();
     }
 
     // For use by this class
 
+    // Decomposes spatialObject into at most zs.length z-values, using the given queue, so that only the working
+    // Region is allocated. The queue is FIFO, so Regions are examined a generation at a time: the Regions in the
+    // queue at the start of a generation are exactly the ones examined by that generation, and the Regions they
+    // add form the next generation. If a pool is given, and a generation is large enough, then the comparisons of
+    // the generation's Regions with spatialObject are done on the pool, before the generation is processed. The
+    // comparisons don't depend on the order in which Regions are processed, and the processing is still
+    // sequential, so the resulting z-values are exactly those of a sequential decomposition.
+    private void decompose(SpatialObject spatialObject, long[] zs, RegionQueue queue, ForkJoinPool pool)
+    {
+        int maxRegions = zs.length;
+        int zCount = 0;
+        Region region = new Region(this, spatialObject.arbitraryPoint());
+        while (!spatialObject.containedBy(region)) {
+            region.up();
+        }
+        if (zs.length == 1) {
+            zs[0] = z(region);
+        } else {
+            // The queue never holds more than maxRegions regions: queue.size() + zCount <= maxRegions.
+            queue.reset(maxRegions, dimensions);
+            queue.add(region);
+            while (!queue.isEmpty()) {
+                int generation = queue.size();
+                if (pool != null && generation >= MIN_PARALLEL_GENERATION) {
+                    RegionComparison[] comparisons = new RegionComparison[2 * generation];
+                    pool.invoke(new CompareRegions(this, spatialObject, queue, comparisons, 0, generation));
+                    for (int i = 0; i < generation; i++) {
+                        queue.poll(region);
+                        if (region.isPoint()) {
+                            zs[zCount++] = z(region);
+                        } else {
+                            region.downRight();
+                            zCount = split(region, comparisons[2 * i], comparisons[2 * i + 1], queue, zs, zCount);
+                        }
+                    }
+                } else {
+                    for (int i = 0; i < generation; i++) {
+                        queue.poll(region);
+                        if (region.isPoint()) {
+                            zs[zCount++] = z(region);
+                        } else {
+                            region.downLeft();
+                            RegionComparison leftComparison = spatialObject.compare(region);
+                            region.up();
+                            region.downRight();
+                            RegionComparison rightComparison = spatialObject.compare(region);
+                            zCount = split(region, leftComparison, rightComparison, queue, zs, zCount);
+                        }
+                    }
+                }
+            }
+            while (!queue.isEmpty()) {
+                queue.poll(region);
+                zs[zCount++] = z(region);
+            }
+            for (int i = zCount; i < maxRegions; i++) {
+                zs[i] = Z_NULL;
+            }
+            Arrays.sort(zs, 0, zCount);
+            boolean merge;
+            do {
+                merge = false;
+                for (int i = 1; i < zCount; i++) {
+                    long a = zs[i - 1];
+                    long b = zs[i];
+                    if ((merge = siblings(a, b))) {
+                        zs[i - 1] = parent(a);
+                        System.arraycopy(zs, i + 1, zs, i, zCount - i - 1);
+                        zs[--zCount] = Z_NULL;
+                    }
+                }
+            } while (merge);
+        }
+    }
+
+    // Processes a Region that is not a point, given the comparisons of its children with the spatial object.
+    // region is positioned at the right child. Children are added to the queue, or z-values to zs, and the updated
+    // count of z-values is returned.
+    private int split(Region region,
+                      RegionComparison leftComparison,
+                      RegionComparison rightComparison,
+                      RegionQueue queue,
+                      long[] zs,
+                      int zCount)
+    {
+        int maxRegions = zs.length;
+        switch (leftComparison) {
+            case REGION_OUTSIDE_OBJECT:
+                switch (rightComparison) {
+                    case REGION_OUTSIDE_OBJECT:
+                        assert false;
+                        break;
+                    case REGION_INSIDE_OBJECT:
+                        zs[zCount++] = z(region);
+                        break;
+                    case REGION_OVERLAPS_OBJECT:
+                        queue.add(region);
+                        break;
+                }
+                break;
+            case REGION_INSIDE_OBJECT:
+                switch (rightComparison) {
+                    case REGION_OUTSIDE_OBJECT:
+                        region.up();
+                        region.downLeft();
+                        zs[zCount++] = z(region);
+                        break;
+                    case REGION_INSIDE_OBJECT:
+                        region.up();
+                        zs[zCount++] = z(region);
+                        break;
+                    case REGION_OVERLAPS_OBJECT:
+                        if (queue.size() + 1 + zCount < maxRegions) {
+                            queue.add(region);
+                            region.up();
+                            region.downLeft();
+                            zs[zCount++] = z(region);
+                        } else {
+                            region.up();
+                            zs[zCount++] = z(region);
+                        }
+                        break;
+                }
+                break;
+            case REGION_OVERLAPS_OBJECT:
+                switch (rightComparison) {
+                    case REGION_OUTSIDE_OBJECT:
+                        region.up();
+                        region.downLeft();
+                        queue.add(region);
+                        break;
+                    case REGION_INSIDE_OBJECT:
+                        if (queue.size() + 1 + zCount < maxRegions) {
+                            zs[zCount++] = z(region);
+                            region.up();
+                            region.downLeft();
+                            queue.add(region);
+                        } else {
+                            region.up();
+                            zs[zCount++] = z(region);
+                        }
+                        break;
+                    case REGION_OVERLAPS_OBJECT:
+                        if (queue.size() + 1 + zCount < maxRegions) {
+                            queue.add(region);
+                            region.up();
+                            region.downLeft();
+                            queue.add(region);
+                        } else {
+                            region.up();
+                            zs[zCount++] = z(region);
+                        }
+                        break;
+                }
+                break;
+        }
+        return zCount;
+    }
+
     private int[] defaultInterleaving()
     {
         int[] interleave = new int[zBits];
@@ -435,52 +506,19 @@ public class SpaceImpl extends Space
         return interleave;
     }
 
-    private long[][][] computeShuffleMasks()
+    private long[][] computeUnspecifiedBits()
     {
-        // Shuffling one bit at a time would be slow. The implementation used in {@link #spatialIndexKey(double[])}
-        // should be a lot faster, relying on array subscripting to locate masks which are combined using bitwise OR.
-        // The masks are computed here.
-        //
-        // First, xz, a mapping from x (coordinate) to z bit positions, is computed. xz[d][p] is the position
-        // within the z-value of bit p of x[d], (the coordinate of dimension d). For both x and z, bit positions
-        // are numbered left-to-right starting at 0. x values are right-justified, while z-values are right-justified.
-        //
-        // Then the shuffle masks are computed. shuffle[b][d][x] is a mask representing the bits of the bth byte
-        // of x[d] that contribute to the z-value.
-        int[][] xz;
-        xz = new int[dimensions][];
-        for (int d = 0; d < dimensions; d++) {
-            xz[d] = new int[gBits[d]];
-        }
-        int[] xBitCount = new int[dimensions];
-        for (int zBitPosition = 0; zBitPosition < zBits; zBitPosition++) {
-            int d = interleave[zBitPosition];
-            xz[d][xBitCount[d]] = zBitPosition;
-            xBitCount[d]++;
-        }
-        long[][][] shuffle = new long[8][][];
-        for (int xBytePosition = 0; xBytePosition < 8; xBytePosition++) {
-            shuffle[xBytePosition] = new long[dimensions][];
-            for (int d = 0; d < dimensions; d++) {
-                shuffle[xBytePosition][d] = new long[256];
-            }
-        }
-        for (int d = 0; d < dimensions; d++) {
-            for (int xBitPosition = 0; xBitPosition < gBits[d]; xBitPosition++) {
-                long xMask = 1L << gBits[d] - xBitPosition - 1;
-                long zMask = 1L << (62 - xz[d][xBitPosition]);
-                int xByteLeftShift = (gBits[d] - xBitPosition - 1) / 8;
-                for (int xByte = 0; xByte <= 0xff; xByte++) {
-                    // xPartial explores all 256 values of one byte of a coordinate. Outside this one byte,
-                    // everything in xPartial is zero, which is fine for generating shuffle masks.
-                    long xPartial = ((long) xByte) << (8 * xByteLeftShift);
-                    if ((xPartial & xMask) != 0) {
-                        shuffle[xByteLeftShift][d][xByte] |= zMask;
-                    }
-                }
-            }
+        // unspecifiedBits[length][d] has a 1 for each bit of a cell coordinate, in dimension d, not determined by
+        // the first length bits of a z-value. These are the low-order bits, and ORing them into the lowest cell of
+        // a region yields the highest cell.
+        long[][] unspecifiedBits = new long[zBits + 1][];
+        unspecifiedBits[zBits] = new long[dimensions];
+        for (int length = zBits; length > 0; length--) {
+            unspecifiedBits[length - 1] = Arrays.copyOf(unspecifiedBits[length], dimensions);
+            int d = interleave[length - 1];
+            unspecifiedBits[length - 1][d] = (unspecifiedBits[length][d] << 1) | 1;
         }
-        return shuffle;
+        return unspecifiedBits;
     }
 
     private long z(Region region)
@@ -502,25 +540,87 @@ public class SpaceImpl extends Space
     public static final int MAX_Z_BITS = 57; // MSB is unused. 6 LSBs contain the number of z-value bits.
     public static final long Z_MIN = 0x0L;
     public static final long Z_MAX = ((1L << MAX_Z_BITS) - 1) << LENGTH_BITS | LENGTH_MASK;
+    // A generation of a decomposition is compared on a ForkJoinPool if it has at least this many Regions.
+    private static final int MIN_PARALLEL_GENERATION = 16;
+    // Regions compared by one CompareRegions task, below which the task is not split.
+    private static final int COMPARE_REGIONS_GRAIN = 4;
+    // Scratch state for decompose. Shared by all SpaceImpls, since a RegionQueue doesn't refer to a SpaceImpl.
+    private static final ThreadLocal<RegionQueue> REGION_QUEUES =
+        new ThreadLocal<RegionQueue>()
+        {
+            @Override
+            protected RegionQueue initialValue()
+            {
+                return new RegionQueue();
+            }
+        };
 
     // Object state
 
     final int dimensions;
     final int[] interleave;
     final int[] gBits;
-    final int[] gBytes;
     final long[] gHi;
     final int zBits;
     // Translation to/from application space
     final double[] appLo;
     final double[] appToGridScale;
-    // For shuffling
-    private final long[][] shuffle0;
-    private final long[][] shuffle1;
-    private final long[][] shuffle2;
-    private final long[][] shuffle3;
-    private final long[][] shuffle4;
-    private final long[][] shuffle5;
-    private final long[][] shuffle6;
-    private final long[][] shuffle7;
+    // For shuffling, (chosen by Shuffler.newShuffler)
+    final Shuffler shuffler;
+    // For unshuffle(z, cellLo, cellHi), indexed by z-value length and dimension
+    private final long[][] unspecifiedBits;
+
+    // Inner classes
+
+    // Compares the children of Regions start .. end - 1 of a RegionQueue's current generation with a spatial
+    // object. The comparisons of the children of Region i are stored in comparisons[2 * i] and
+    // comparisons[2 * i + 1]. The queue isn't modified while the task runs.
+    private static class CompareRegions extends RecursiveAction
+    {
+        @Override
+        protected void compute()
+        {
+            if (end - start <= COMPARE_REGIONS_GRAIN) {
+                Region region = new Region(space);
+                for (int i = start; i < end; i++) {
+                    queue.copy(i, region);
+                    if (!region.isPoint()) {
+                        region.downLeft();
+                        comparisons[2 * i] = spatialObject.compare(region);
+                        region.up();
+                        region.downRight();
+                        comparisons[2 * i + 1] = spatialObject.compare(region);
+                    }
+                }
+            } else {
+                int mid = (start + end) >>> 1;
+                invokeAll(new CompareRegions(space, spatialObject, queue, comparisons, start, mid),
+                          new CompareRegions(space, spatialObject, queue, comparisons, mid, end));
+            }
+        }
+
+        CompareRegions(SpaceImpl space,
+                       SpatialObject spatialObject,
+                       RegionQueue queue,
+                       RegionComparison[] comparisons,
+                       int start,
+                       int end)
+        {
+            this.space = space;
+            this.spatialObject = spatialObject;
+            this.queue = queue;
+            this.comparisons = comparisons;
+            this.start = start;
+            this.end = end;
+        }
+
+        private static final long serialVersionUID = 1L;
+
+        private final SpaceImpl space;
+        private final SpatialObject spatialObject;
+        private final RegionQueue queue;
+        private final RegionComparison[] comparisons;
+        private final int start;
+        private final int end;
+    }
 }
@@ -14,6 +14,9 @@ import com.geophile.z.SpatialIndex;
 import com.geophile.z.SpatialObject;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -34,7 +37,17 @@ public class SpatialIndexImpl<RECORD extends Record> extends SpatialIndex<RECORD
     public void add(SpatialObject spatialObject, Record.Factory<RECORD> recordFactory, int maxZ)
         throws IOException, InterruptedException
     {
-        long[] zs = decompose(spatialObject, maxZ);
+        add(spatialObject, recordFactory, maxZ, null);
+    }
+
+    @Override
+    public void add(SpatialObject spatialObject, Record.Factory<RECORD> recordFactory, int maxZ, ForkJoinPool pool)
+        throws IOException, InterruptedException
+    {
+        if (maxZ != USE_SPATIAL_OBJECT_MAX_Z && maxZ != spatialObject.maxZ()) {
+            defaultDecompositions = false;
+        }
+        long[] zs = decompose(spatialObject, maxZ, pool);
         for (int i = 0; i < zs.length && zs[i] != SpaceImpl.Z_NULL; i++) {
             RECORD record = recordFactory.newRecord();
             record.z(zs[i]);
@@ -85,6 +98,43 @@ public class SpatialIndexImpl<RECORD extends Record> extends SpatialIndex<RECORD
         return recordsDeleted == zCount;
     }
 
+    @Override
+    public int removeAll(Iterable<? extends SpatialObject> spatialObjects,
+                         Record.Filter<RECORD> recordFilter,
+                         int maxZ) throws IOException, InterruptedException
+    {
+        // Collect the z-values of all the spatial objects, then sort them and remove duplicates, so that the
+        // index sees each z-value once, in order.
+        long[] zs = new long[INITIAL_BATCH_ZS];
+        int nZ = 0;
+        for (SpatialObject spatialObject : spatialObjects) {
+            long[] objectZs = decompose(spatialObject, maxZ);
+            for (int i = 0; i < objectZs.length && objectZs[i] != SpaceImpl.Z_NULL; i++) {
+                if (nZ == zs.length) {
+                    zs = Arrays.copyOf(zs, 2 * nZ);
+                }
+                zs[nZ++] = objectZs[i];
+            }
+        }
+        Arrays.sort(zs, 0, nZ);
+        int nDistinct = 0;
+        for (int i = 0; i < nZ; i++) {
+            if (nDistinct == 0 || zs[i] != zs[nDistinct - 1]) {
+                zs[nDistinct++] = zs[i];
+            }
+        }
+        return index.removeAll(zs, nDistinct, recordFilter);
+    }
+
+    @Override
+    public void bulkLoad(Iterator<? extends SpatialObject> spatialObjects,
+                         Record.Converter<RECORD> recordConverter,
+                         ForkJoinPool pool)
+        throws IOException, InterruptedException
+    {
+        index.addSorted(new BulkLoad<>(this, recordConverter, pool).sortedRecords(spatialObjects));
+    }
+
     public boolean singleCell()
     {
         return singleCell;
@@ -95,6 +145,13 @@ public class SpatialIndexImpl<RECORD extends Record> extends SpatialIndex<RECORD
         return index;
     }
 
+    // True if every spatial object added through this SpatialIndex was decomposed using its default maxZ, so that
+    // its z-values can be recomputed from the spatial object alone.
+    public boolean defaultDecompositions()
+    {
+        return defaultDecompositions;
+    }
+
     public SpatialIndexImpl(SpaceImpl space, Index<RECORD> index, Options options)
         throws IOException, InterruptedException
     {
@@ -102,9 +159,16 @@ public class SpatialIndexImpl<RECORD extends Record> extends SpatialIndex<RECORD
         singleCell = options == Options.SINGLE_CELL;
     }
 
+    // For use by this package
+
+    long[] decompose(SpatialObject spatialObject, int maxZ)
+    {
+        return decompose(spatialObject, maxZ, null);
+    }
+
     // For use by this class
 
-    private long[] decompose(SpatialObject spatialObject, int maxZ)
+    private long[] decompose(SpatialObject spatialObject, int maxZ, ForkJoinPool pool)
     {
         if (maxZ == USE_SPATIAL_OBJECT_MAX_Z) {
             maxZ = spatialObject.maxZ();
@@ -113,15 +177,17 @@ public class SpatialIndexImpl<RECORD extends Record> extends SpatialIndex<RECORD
             throw new SingleCellException(spatialObject);
         }
         long[] zs = new long[maxZ];
-        space.decompose(spatialObject, zs);
+        space.decompose(spatialObject, zs, pool);
         return zs;
     }
 
     // Class state
 
     private static final Logger LOG = Logger.getLogger(SpatialIndexImpl.class.getName());
+    private static final int INITIAL_BATCH_ZS = 1024;
 
     // Object state
 
     private final boolean singleCell;
+    private volatile boolean defaultDecompositions = true;
 }
@@ -0,0 +1,161 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Record;
+import com.geophile.z.Space;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.index.QueryRecord;
+import com.geophile.z.space.SpaceImpl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/*
+
+Eliminates duplicates from spatial join output without remembering the output. A pair of spatial objects, L and R,
+is found by the spatial join once for each pair of overlapping z-values, (l, r), l from the decomposition of L,
+r from the decomposition of R. The region of overlap is the smaller of l and r, i.e. the longer z-value. The
+z-values of a decomposition do not overlap one another, so the overlap regions of (L, R) are disjoint, and exactly
+one of them comes first in z-order. That one is the reference region of (L, R), (a variant of the reference-point
+method), and the overlap (l, r) is reported only if its overlap region is the reference region.
+
+This requires the decompositions of L and R, which are recomputed from the spatial objects of the records,
+and cached, (a spatial object typically participates in a number of consecutive join outputs). The decompositions
+of a batch of query objects are already held by the QueryIndex, and are used from there. A decomposition
+is recomputed using spatialObject.maxZ(), so this only works if the spatial objects of both inputs were added
+using the default maxZ, (see SpatialIndexImpl.defaultDecompositions), and the records provide their spatial
+objects, (by implementing Record.HasSpatialObject). Memory is then bounded by the size of the decomposition cache.
+
+Otherwise, or if the recomputed decomposition doesn't contain the record's z-value, the output is checked against,
+and added to, a set of outputs. That set is not bounded: It grows with the number of outputs reported, (as
+documented for SpatialJoin.Duplicates.EXCLUDE), since forgetting an output would allow a duplicate of it to be
+reported later.
+
+A DuplicateEliminator is not safe for use by multiple threads, but the set of outputs may be shared by
+DuplicateEliminators on different threads, if the set is thread-safe.
+
+*/
+
+class DuplicateEliminator
+{
+    // Returns true if the overlap of the given records is to be reported, false if it is a duplicate, or null
+    // if this can't be determined from the reference region, in which case firstOccurrence(output) has to be used.
+    public Boolean firstOccurrence(Record left, Record right)
+    {
+        Boolean first = null;
+        SpatialObject leftSpatialObject = useReferenceRegions ? spatialObject(left) : null;
+        SpatialObject rightSpatialObject = useReferenceRegions ? spatialObject(right) : null;
+        if (leftSpatialObject != null && rightSpatialObject != null) {
+            long[] leftZs = decomposition(left, leftSpatialObject);
+            long[] rightZs = decomposition(right, rightSpatialObject);
+            long leftZ = left.z();
+            long rightZ = right.z();
+            if (contains(leftZs, leftZ) && contains(rightZs, rightZ)) {
+                first = referenceRegion(leftZs, rightZs) == overlapRegion(leftZ, rightZ);
+            }
+        }
+        return first;
+    }
+
+    // Returns true if the given output has not been seen before.
+    public boolean firstOccurrence(Object output)
+    {
+        return outputs.add(output);
+    }
+
+    public DuplicateEliminator(Space space, boolean useReferenceRegions, Set<Object> outputs)
+    {
+        this.space = space;
+        this.useReferenceRegions = useReferenceRegions;
+        this.outputs = outputs;
+    }
+
+    // The decompositions of QueryRecords' query objects are taken from queryIndex instead of being recomputed.
+    public void queryIndex(QueryIndex queryIndex)
+    {
+        this.queryIndex = queryIndex;
+    }
+
+    // For use by this class
+
+    private static SpatialObject spatialObject(Record record)
+    {
+        return
+            record instanceof Record.HasSpatialObject
+            ? ((Record.HasSpatialObject) record).spatialObject()
+            : null;
+    }
+
+    private long[] decomposition(Record record, SpatialObject spatialObject)
+    {
+        if (queryIndex != null && record instanceof QueryRecord) {
+            return queryIndex.decomposition(((QueryRecord) record).query());
+        }
+        long[] zs = decompositions.get(spatialObject);
+        if (zs == null) {
+            zs = new long[spatialObject.maxZ()];
+            space.decompose(spatialObject, zs);
+            decompositions.put(spatialObject, zs);
+        }
+        return zs;
+    }
+
+    // The first overlap region, in z-order, of two decompositions. Decompositions are sorted and terminated
+    // by Z_NULL if not full.
+    private static long referenceRegion(long[] leftZs, long[] rightZs)
+    {
+        long reference = Long.MAX_VALUE;
+        for (int i = 0; i < leftZs.length && leftZs[i] != SpaceImpl.Z_NULL; i++) {
+            long l = leftZs[i];
+            for (int j = 0; j < rightZs.length && rightZs[j] != SpaceImpl.Z_NULL; j++) {
+                long r = rightZs[j];
+                if (SpaceImpl.contains(l, r) || SpaceImpl.contains(r, l)) {
+                    reference = Math.min(reference, overlapRegion(l, r));
+                }
+            }
+        }
+        return reference;
+    }
+
+    private static long overlapRegion(long l, long r)
+    {
+        return SpaceImpl.length(l) >= SpaceImpl.length(r) ? l : r;
+    }
+
+    private static boolean contains(long[] zs, long z)
+    {
+        for (int i = 0; i < zs.length && zs[i] != SpaceImpl.Z_NULL; i++) {
+            if (zs[i] == z) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Class state
+
+    private static final int MAX_CACHED_DECOMPOSITIONS = 1024;
+
+    // Object state
+
+    private final Space space;
+    private final boolean useReferenceRegions;
+    private final Set<Object> outputs;
+    private QueryIndex queryIndex;
+    // LRU cache of decompositions
+    private final Map<SpatialObject, long[]> decompositions =
+        new LinkedHashMap<SpatialObject, long[]>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SpatialObject, long[]> eldest)
+            {
+                return size() > MAX_CACHED_DECOMPOSITIONS;
+            }
+        };
+}
@@ -0,0 +1,215 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.JoinStatistics;
+
+// Counters are updated only by the thread running the spatial join, so they are plain longs. (A parallel join
+// keeps one JoinStatisticsImpl per partition, and adds them into its own as the partitions' outputs are consumed.)
+// The getters, which may be called by other threads, e.g. JMX clients, read a snapshot of the counters, which
+// the joining thread publishes, through a volatile field, every PUBLICATION_INTERVAL events, and when the join
+// is done, (see publish). So the counts read while the join is running may be slightly stale.
+
+class JoinStatisticsImpl extends JoinStatistics
+{
+    // JoinStatisticsMBean interface
+
+    @Override
+    public long getZValuesEntered()
+    {
+        return snapshot[Z_VALUES_ENTERED];
+    }
+
+    @Override
+    public long getZValuesExited()
+    {
+        return snapshot[Z_VALUES_EXITED];
+    }
+
+    @Override
+    public long getRandomAccesses()
+    {
+        return snapshot[RANDOM_ACCESSES];
+    }
+
+    @Override
+    public long getSequentialAccesses()
+    {
+        return snapshot[SEQUENTIAL_ACCESSES];
+    }
+
+    @Override
+    public long getAncestorSearchesFound()
+    {
+        return snapshot[ANCESTOR_SEARCHES_FOUND];
+    }
+
+    @Override
+    public long getAncestorSearchesNotFound()
+    {
+        return snapshot[ANCESTOR_SEARCHES_NOT_FOUND];
+    }
+
+    @Override
+    public long getFilterInvocations()
+    {
+        return snapshot[FILTER_INVOCATIONS];
+    }
+
+    @Override
+    public long getFilterRejections()
+    {
+        return snapshot[FILTER_REJECTIONS];
+    }
+
+    @Override
+    public long getMaxNestDepth()
+    {
+        return snapshot[MAX_NEST_DEPTH];
+    }
+
+    @Override
+    public long getOutputs()
+    {
+        return snapshot[OUTPUTS];
+    }
+
+    // JoinStatisticsImpl interface
+
+    void enter()
+    {
+        zValuesEntered++;
+        event();
+    }
+
+    void exit()
+    {
+        zValuesExited++;
+        event();
+    }
+
+    void randomAccess()
+    {
+        randomAccesses++;
+        event();
+    }
+
+    void sequentialAccess()
+    {
+        sequentialAccesses++;
+        event();
+    }
+
+    void ancestorSearch(boolean found)
+    {
+        if (found) {
+            ancestorSearchesFound++;
+        } else {
+            ancestorSearchesNotFound++;
+        }
+        event();
+    }
+
+    void filter(boolean overlap)
+    {
+        filterInvocations++;
+        if (!overlap) {
+            filterRejections++;
+        }
+        event();
+    }
+
+    void nestDepth(int depth)
+    {
+        if (depth > maxNestDepth) {
+            maxNestDepth = depth;
+        }
+    }
+
+    void output()
+    {
+        outputs++;
+        event();
+    }
+
+    // Adds the counters of a partition's statistics, which must have been published to this thread, (e.g. by
+    // Future.get), and publishes the result.
+    void add(JoinStatisticsImpl that)
+    {
+        zValuesEntered += that.zValuesEntered;
+        zValuesExited += that.zValuesExited;
+        randomAccesses += that.randomAccesses;
+        sequentialAccesses += that.sequentialAccesses;
+        ancestorSearchesFound += that.ancestorSearchesFound;
+        ancestorSearchesNotFound += that.ancestorSearchesNotFound;
+        filterInvocations += that.filterInvocations;
+        filterRejections += that.filterRejections;
+        maxNestDepth = Math.max(maxNestDepth, that.maxNestDepth);
+        outputs += that.outputs;
+        publish();
+    }
+
+    // Makes the current counts visible to the getters. Called by the joining thread when the join is done.
+    void publish()
+    {
+        long[] snapshot = new long[N_COUNTERS];
+        snapshot[Z_VALUES_ENTERED] = zValuesEntered;
+        snapshot[Z_VALUES_EXITED] = zValuesExited;
+        snapshot[RANDOM_ACCESSES] = randomAccesses;
+        snapshot[SEQUENTIAL_ACCESSES] = sequentialAccesses;
+        snapshot[ANCESTOR_SEARCHES_FOUND] = ancestorSearchesFound;
+        snapshot[ANCESTOR_SEARCHES_NOT_FOUND] = ancestorSearchesNotFound;
+        snapshot[FILTER_INVOCATIONS] = filterInvocations;
+        snapshot[FILTER_REJECTIONS] = filterRejections;
+        snapshot[MAX_NEST_DEPTH] = maxNestDepth;
+        snapshot[OUTPUTS] = outputs;
+        this.snapshot = snapshot;
+        unpublishedEvents = 0;
+    }
+
+    // For use by this class
+
+    private void event()
+    {
+        if (++unpublishedEvents == PUBLICATION_INTERVAL) {
+            publish();
+        }
+    }
+
+    // Class state
+
+    private static final int PUBLICATION_INTERVAL = 4096;
+    // Positions in snapshot
+    private static final int Z_VALUES_ENTERED = 0;
+    private static final int Z_VALUES_EXITED = 1;
+    private static final int RANDOM_ACCESSES = 2;
+    private static final int SEQUENTIAL_ACCESSES = 3;
+    private static final int ANCESTOR_SEARCHES_FOUND = 4;
+    private static final int ANCESTOR_SEARCHES_NOT_FOUND = 5;
+    private static final int FILTER_INVOCATIONS = 6;
+    private static final int FILTER_REJECTIONS = 7;
+    private static final int MAX_NEST_DEPTH = 8;
+    private static final int OUTPUTS = 9;
+    private static final int N_COUNTERS = 10;
+
+    // Object state
+
+    // Accessed only by the thread computing the join.
+    private long zValuesEntered;
+    private long zValuesExited;
+    private long randomAccesses;
+    private long sequentialAccesses;
+    private long ancestorSearchesFound;
+    private long ancestorSearchesNotFound;
+    private long filterInvocations;
+    private long filterRejections;
+    private long maxNestDepth;
+    private long outputs;
+    private int unpublishedEvents;
+    // Counts as of the last publish. Never modified, only replaced.
+    private volatile long[] snapshot = new long[N_COUNTERS];
+}
@@ -0,0 +1,221 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Pair;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.SpatialJoinRuntimeException;
+import com.geophile.z.space.SpaceImpl;
+import com.geophile.z.space.SpatialIndexImpl;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Computes a spatial join by splitting the space into partitions, all z-values of the same length, and joining
+// the partitions independently on a ForkJoinPool. Output is returned one partition at a time, in z-order of
+// partitions. At most WINDOW_PER_THREAD * parallelism partitions are in progress (or buffered) at any time.
+// See PartitionCursor for the handling of z-values that contain partitions. If duplicates are excluded, each
+// partition has its own DuplicateEliminator, and the eliminators share a thread-safe set of outputs for the
+// records that can't be handled by the reference region test. Each partition also counts its own
+// JoinStatistics, which are added to the iterator's as the partition's output is consumed.
+
+class ParallelSpatialJoinIterator implements Iterator<Pair>
+{
+    // Iterator interface
+
+    @Override
+    public boolean hasNext()
+    {
+        ensureOutput();
+        return output.hasNext();
+    }
+
+    @Override
+    public Pair next()
+    {
+        ensureOutput();
+        return output.next();
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    // ParallelSpatialJoinIterator interface
+
+    public ParallelSpatialJoinIterator(SpatialIndexImpl leftSpatialIndex,
+                                       SpatialIndexImpl rightSpatialIndex,
+                                       SpatialJoin.Filter filter,
+                                       boolean excludeDuplicates,
+                                       SpatialJoin.InputObserver leftInputObserver,
+                                       SpatialJoin.InputObserver rightInputObserver,
+                                       ForkJoinPool pool)
+        throws IOException, InterruptedException
+    {
+        this.leftSpatialIndex = leftSpatialIndex;
+        this.rightSpatialIndex = rightSpatialIndex;
+        this.filter = filter;
+        this.outputs =
+            excludeDuplicates
+            ? Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>())
+            : null;
+        this.useReferenceRegions = SpatialJoinImpl.useReferenceRegions(leftSpatialIndex, rightSpatialIndex);
+        this.leftInputObserver = leftInputObserver;
+        this.rightInputObserver = rightInputObserver;
+        this.pool = pool;
+        int parallelism = pool.getParallelism();
+        int partitionBits = 0;
+        while (partitionBits < ((SpaceImpl) leftSpatialIndex.space()).zBits() &&
+               (1L << partitionBits) < (long) parallelism * PARTITIONS_PER_THREAD) {
+            partitionBits++;
+        }
+        this.partitionBits = partitionBits;
+        this.nPartitions = 1L << partitionBits;
+        this.window = parallelism * WINDOW_PER_THREAD;
+        // Partitions are joined concurrently, so the indexes must support concurrent cursors. Creating a cursor
+        // here gives an index the chance to do any lazy preparation, (e.g. SortedArray sorts on cursor creation),
+        // before the partitions are started.
+        leftSpatialIndex.index().cursor().close();
+        rightSpatialIndex.index().cursor().close();
+        startPartitions();
+    }
+
+    public JoinStatisticsImpl statistics()
+    {
+        return statistics;
+    }
+
+    // For use by this class
+
+    private void ensureOutput()
+    {
+        while (!output.hasNext() && !partitionOutputs.isEmpty()) {
+            try {
+                PartitionOutput partitionOutput = partitionOutputs.poll().get();
+                statistics.add(partitionOutput.statistics);
+                output = partitionOutput.pairs.iterator();
+            } catch (InterruptedException e) {
+                cancelPartitions();
+                throw new SpatialJoinRuntimeException(e);
+            } catch (ExecutionException e) {
+                cancelPartitions();
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new SpatialJoinRuntimeException(cause);
+            }
+            startPartitions();
+        }
+    }
+
+    private void startPartitions()
+    {
+        while (nextPartition < nPartitions && partitionOutputs.size() < window) {
+            // The partition is the z-value whose bits are the binary representation of nextPartition.
+            final long partition =
+                SpaceImpl.z(nextPartition << (64 - partitionBits), partitionBits);
+            partitionOutputs.add(pool.submit(
+                new Callable<PartitionOutput>()
+                {
+                    @Override
+                    public PartitionOutput call() throws Exception
+                    {
+                        return joinPartition(partition);
+                    }
+                }));
+            nextPartition++;
+        }
+    }
+
+    // Called when the join fails, so that the partitions in progress don't keep the pool busy, and no more
+    // partitions are started.
+    private void cancelPartitions()
+    {
+        for (Future<PartitionOutput> partitionOutput : partitionOutputs) {
+            partitionOutput.cancel(true);
+        }
+        partitionOutputs.clear();
+        nextPartition = nPartitions;
+    }
+
+    private PartitionOutput joinPartition(long partition) throws IOException, InterruptedException
+    {
+        List<Pair> pairs = new ArrayList<>();
+        SpatialJoinIterator<Pair> iterator =
+            SpatialJoinIterator.pairIterator(leftSpatialIndex,
+                                             rightSpatialIndex,
+                                             partition,
+                                             filter,
+                                             duplicateEliminator(),
+                                             leftInputObserver,
+                                             rightInputObserver);
+        while (iterator.hasNext()) {
+            pairs.add(iterator.next());
+        }
+        return new PartitionOutput(pairs, iterator.statistics());
+    }
+
+    private DuplicateEliminator duplicateEliminator()
+    {
+        return
+            outputs == null
+            ? null
+            : new DuplicateEliminator(leftSpatialIndex.space(), useReferenceRegions, outputs);
+    }
+
+    // Class state
+
+    private static final int PARTITIONS_PER_THREAD = 8;
+    private static final int WINDOW_PER_THREAD = 2;
+
+    // Object state
+
+    private final SpatialIndexImpl leftSpatialIndex;
+    private final SpatialIndexImpl rightSpatialIndex;
+    private final SpatialJoin.Filter filter;
+    // Outputs seen by the partitions' DuplicateEliminators, null if duplicates are included
+    private final Set<Object> outputs;
+    private final boolean useReferenceRegions;
+    private final SpatialJoin.InputObserver leftInputObserver;
+    private final SpatialJoin.InputObserver rightInputObserver;
+    private final ForkJoinPool pool;
+    private final int partitionBits;
+    private final long nPartitions;
+    private final int window;
+    private long nextPartition = 0;
+    private final Queue<Future<PartitionOutput>> partitionOutputs = new ArrayDeque<>();
+    private Iterator<Pair> output = Collections.<Pair>emptyList().iterator();
+    private final JoinStatisticsImpl statistics = new JoinStatisticsImpl();
+
+    // Inner classes
+
+    private static class PartitionOutput
+    {
+        PartitionOutput(List<Pair> pairs, JoinStatisticsImpl statistics)
+        {
+            this.pairs = pairs;
+            this.statistics = statistics;
+        }
+
+        final List<Pair> pairs;
+        final JoinStatisticsImpl statistics;
+    }
+}
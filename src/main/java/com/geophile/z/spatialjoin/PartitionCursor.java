@@ -0,0 +1,162 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.space.SpaceImpl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+
+A PartitionCursor restricts an Index to the records relevant to a spatial join of one partition
+of the space. A partition is a z-value, p. The records visible through the cursor are:
+
+- ancestors: records whose z-values contain p, (i.e., are prefixes of p). There are at most
+  length(p) distinct ancestor z-values, and all of them precede p in z-order.
+
+- members: records whose z-values are contained by p, i.e. in the range [zLo(p), zHi(p)].
+
+Ancestors are located up front, by a random access for each prefix of p, and held in memory. Members
+are read through a cursor on the underlying Index. A spatial join of two PartitionCursors on the same
+partition finds every overlapping pair in which at least one z-value is a member. Pairs in which both
+z-values are ancestors of p are found in every partition that they both contain. ownsOverlap
+picks exactly one of those partitions to report such a pair.
+
+*/
+
+class PartitionCursor extends Cursor<Record>
+{
+    // Cursor interface
+
+    @Override
+    public Record next() throws IOException, InterruptedException
+    {
+        if (state() == State.DONE) {
+            return null;
+        }
+        Record record;
+        if (ancestorPosition < ancestors.size()) {
+            record = ancestors.get(ancestorPosition++);
+        } else {
+            if (memberStartPending) {
+                cursor.goTo(memberStart);
+                memberStartPending = false;
+            }
+            record = cursor.next();
+            if (record != null && record.z() > zHi) {
+                record = null;
+            }
+        }
+        if (record == null) {
+            close();
+        } else {
+            current(record);
+            state(State.IN_USE);
+        }
+        return current();
+    }
+
+    @Override
+    public void goTo(Record key) throws IOException, InterruptedException
+    {
+        long z = key.z();
+        if (z < zLo) {
+            ancestorPosition = 0;
+            while (ancestorPosition < ancestors.size() && ancestors.get(ancestorPosition).z() < z) {
+                ancestorPosition++;
+            }
+            memberStartPending = true;
+        } else {
+            ancestorPosition = ancestors.size();
+            cursor.goTo(key);
+            memberStartPending = false;
+        }
+        state(State.NEVER_USED);
+    }
+
+    @Override
+    public boolean deleteCurrent()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close()
+    {
+        super.close();
+        cursor.close();
+    }
+
+    // PartitionCursor interface
+
+    // Indicates whether the overlap of z-values a and b, (one contains the other), is to be reported
+    // by the spatial join of the given partition.
+    public static boolean ownsOverlap(long partition, long a, long b)
+    {
+        boolean owns;
+        if (SpaceImpl.contains(partition, a) || SpaceImpl.contains(partition, b)) {
+            owns = true;
+        } else {
+            // a and b are both ancestors of partition. Of all the partitions that they contain, report the overlap
+            // from the first, i.e. the one obtained by extending the smaller of the two z-values with zeros.
+            long smaller = SpaceImpl.contains(a, b) ? b : a;
+            long firstPartition =
+                smaller >>> SpaceImpl.LENGTH_BITS << SpaceImpl.LENGTH_BITS | SpaceImpl.length(partition);
+            owns = firstPartition == partition;
+        }
+        return owns;
+    }
+
+    public PartitionCursor(Index index, long partition) throws IOException, InterruptedException
+    {
+        super(index);
+        this.cursor = index.cursor();
+        this.zLo = SpaceImpl.zLo(partition);
+        this.zHi = SpaceImpl.zHi(partition);
+        this.memberStart = index.newKeyRecord();
+        this.memberStart.z(zLo);
+        // Locate ancestors, shortest (and therefore smallest) first.
+        int nPrefixes = SpaceImpl.length(partition);
+        long[] prefixes = new long[nPrefixes];
+        long prefix = partition;
+        for (int i = nPrefixes - 1; i >= 0; i--) {
+            prefix = SpaceImpl.parent(prefix);
+            prefixes[i] = prefix;
+        }
+        boolean stableRecords = index.stableRecords();
+        Record key = index.newKeyRecord();
+        for (long z : prefixes) {
+            key.z(z);
+            cursor.goTo(key);
+            Record record;
+            while ((record = cursor.next()) != null && record.z() == z) {
+                if (stableRecords) {
+                    ancestors.add(record);
+                } else {
+                    Record copy = index.newRecord();
+                    record.copyTo(copy);
+                    ancestors.add(copy);
+                }
+            }
+        }
+    }
+
+    // Object state
+
+    private final Cursor cursor;
+    private final long zLo;
+    private final long zHi;
+    private final List<Record> ancestors = new ArrayList<>();
+    private int ancestorPosition;
+    private final Record memberStart;
+    private boolean memberStartPending;
+}
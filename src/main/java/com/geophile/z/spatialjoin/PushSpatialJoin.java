@@ -0,0 +1,141 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Index;
+import com.geophile.z.Pair;
+import com.geophile.z.Record;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.space.SpatialIndexImpl;
+
+import java.io.IOException;
+
+/*
+
+Computes a spatial join by passing each output pair of records to a SpatialJoin.PairConsumer, directly from
+the exit event that finds it. Unlike SpatialJoinIterator, no Pair is created, and nothing is queued.
+
+Records are passed to the consumer as they are found in the nests of the SpatialJoinInputs, so if an index's
+records are not stable, they are valid only for the duration of the call. The one exception is duplicate
+elimination that can't use reference regions, (see DuplicateEliminator): Then each output has to be remembered,
+and a Pair of copies is created for the purpose.
+
+*/
+
+class PushSpatialJoin
+{
+    // PushSpatialJoin interface
+
+    // Runs the join to completion, or until the consumer stops it.
+    public void run() throws IOException, InterruptedException
+    {
+        long zMin;
+        do {
+            zMin = SpatialJoinInput.mergeStep(left, right);
+        } while (!stopped && zMin < SpatialJoinInput.EOF);
+        statistics.publish();
+    }
+
+    public JoinStatisticsImpl statistics()
+    {
+        return statistics;
+    }
+
+    public PushSpatialJoin(SpatialIndexImpl leftSpatialIndex,
+                           SpatialIndexImpl rightSpatialIndex,
+                           SpatialJoin.Filter filter,
+                           DuplicateEliminator duplicateEliminator,
+                           SpatialJoin.InputObserver leftInputObserver,
+                           SpatialJoin.InputObserver rightInputObserver,
+                           SpatialJoin.PairConsumer consumer) throws IOException, InterruptedException
+    {
+        this.filter = filter;
+        this.duplicateEliminator = duplicateEliminator;
+        this.consumer = consumer;
+        this.leftIndex = leftSpatialIndex.index();
+        this.rightIndex = rightSpatialIndex.index();
+        SpatialJoinOutput leftRight =
+            new SpatialJoinOutput()
+            {
+                @Override
+                public void add(Record left, Record right)
+                {
+                    output(left, right);
+                }
+            };
+        left = SpatialJoinInput.newSpatialJoinInput(leftSpatialIndex,
+                                                    leftRight,
+                                                    leftInputObserver,
+                                                    statistics);
+        SpatialJoinOutput rightLeft =
+            new SpatialJoinOutput()
+            {
+                @Override
+                public void add(Record right, Record left)
+                {
+                    output(left, right);
+                }
+            };
+        right = SpatialJoinInput.newSpatialJoinInput(rightSpatialIndex,
+                                                     rightLeft,
+                                                     rightInputObserver,
+                                                     statistics);
+        left.otherInput(right);
+        right.otherInput(left);
+    }
+
+    // For use by this class
+
+    private void output(Record left, Record right)
+    {
+        // An exit event generates output for the whole nest of the other input, which may continue after the
+        // consumer has stopped the join.
+        if (!stopped) {
+            boolean overlap = filter.overlap(left, right);
+            statistics.filter(overlap);
+            if (overlap && firstOccurrence(left, right)) {
+                statistics.output();
+                stopped = !consumer.accept(left, right);
+            }
+        }
+    }
+
+    private boolean firstOccurrence(Record left, Record right)
+    {
+        boolean first = true;
+        if (duplicateEliminator != null) {
+            Boolean firstByReferenceRegion = duplicateEliminator.firstOccurrence(left, right);
+            first =
+                firstByReferenceRegion == null
+                ? duplicateEliminator.firstOccurrence(new Pair<>(copy(left, leftIndex), copy(right, rightIndex)))
+                : firstByReferenceRegion;
+        }
+        return first;
+    }
+
+    private static Record copy(Record record, Index index)
+    {
+        Record copy = record;
+        if (!index.stableRecords()) {
+            copy = index.newRecord();
+            record.copyTo(copy);
+        }
+        return copy;
+    }
+
+    // Object state
+
+    private final SpatialJoin.Filter filter;
+    private final DuplicateEliminator duplicateEliminator;
+    private final SpatialJoin.PairConsumer consumer;
+    private final Index leftIndex;
+    private final Index rightIndex;
+    private final SpatialJoinInput left;
+    private final SpatialJoinInput right;
+    private final JoinStatisticsImpl statistics = new JoinStatisticsImpl();
+    private boolean stopped = false;
+}
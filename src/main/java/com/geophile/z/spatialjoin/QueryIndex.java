@@ -0,0 +1,235 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Cursor;
+import com.geophile.z.Index;
+import com.geophile.z.Record;
+import com.geophile.z.Space;
+import com.geophile.z.SpatialObject;
+import com.geophile.z.index.QueryRecord;
+import com.geophile.z.space.SpaceImpl;
+import com.geophile.z.util.IntroSort;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+
+The spatial join input for a batch of query objects. Each query object is decomposed once, (the decompositions
+are kept for DuplicateEliminator), and the resulting records are held in z-order, (ties broken by position in the batch), with their z-values in a parallel long[].
+The z-values and query positions are collected and sorted as primitives, and a QueryRecord is created for each
+only once they are in order. A QueryIndex is an Index so that SpatialJoinInput can consume it like any other
+input, but it is read-only, so add, remove and deleteCurrent are unsupported. QueryIndexCursor searches the
+long[] directly, instead of comparing records.
+
+*/
+
+class QueryIndex extends Index<QueryRecord>
+{
+    // Index interface
+
+    @Override
+    public void add(QueryRecord record)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean remove(long z, Record.Filter<QueryRecord> filter)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Cursor<QueryRecord> cursor()
+    {
+        return new QueryIndexCursor(this);
+    }
+
+    @Override
+    public QueryRecord newRecord()
+    {
+        return new QueryRecord();
+    }
+
+    @Override
+    public boolean blindUpdates()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean stableRecords()
+    {
+        return true;
+    }
+
+    // QueryIndex interface
+
+    // True if every query object was decomposed into a single z-value, (see SpatialIndex.Options.SINGLE_CELL).
+    public boolean singleCell()
+    {
+        return singleCell;
+    }
+
+    public QueryIndex(Space space, List<? extends SpatialObject> querySpatialObjects)
+    {
+        int n = 0;
+        long[] zs = new long[Math.max(querySpatialObjects.size(), 1)];
+        int[] queries = new int[zs.length];
+        long[][] decompositions = new long[querySpatialObjects.size()][];
+        boolean singleCell = true;
+        for (int q = 0; q < querySpatialObjects.size(); q++) {
+            SpatialObject querySpatialObject = querySpatialObjects.get(q);
+            int maxZ = querySpatialObject.maxZ();
+            if (zs.length < n + maxZ) {
+                int newLength = Math.max(n + maxZ, 2 * zs.length);
+                zs = Arrays.copyOf(zs, newLength);
+                queries = Arrays.copyOf(queries, newLength);
+            }
+            long[] queryZs = new long[maxZ];
+            space.decompose(querySpatialObject, queryZs);
+            decompositions[q] = queryZs;
+            for (int i = 0; i < maxZ && queryZs[i] != SpaceImpl.Z_NULL; i++) {
+                zs[n] = queryZs[i];
+                queries[n] = q;
+                n++;
+            }
+            singleCell = singleCell && maxZ == 1;
+        }
+        IntroSort.sort(new ZQuerySortable(zs, queries), 0, n);
+        this.zs = Arrays.copyOf(zs, n);
+        this.records = new QueryRecord[n];
+        for (int i = 0; i < n; i++) {
+            QueryRecord queryRecord = new QueryRecord();
+            queryRecord.z(zs[i]);
+            queryRecord.spatialObject(querySpatialObjects.get(queries[i]));
+            queryRecord.query(queries[i]);
+            records[i] = queryRecord;
+        }
+        this.decompositions = decompositions;
+        this.singleCell = singleCell;
+    }
+
+    // For use by this package
+
+    // The decomposition of the given query object, sorted and terminated by Z_NULL if not full, as returned
+    // by Space.decompose.
+    long[] decomposition(int query)
+    {
+        return decompositions[query];
+    }
+
+    // Position of the first record whose z-value is >= z.
+    int lowerBound(long z)
+    {
+        int lo = 0;
+        int hi = zs.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (zs[mid] < z) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Object state
+
+    final QueryRecord[] records;
+    final long[] zs;
+    private final long[][] decompositions;
+    private final boolean singleCell;
+
+    // Inner classes
+
+    // Orders (z, query) pairs held in parallel arrays, by z and then by query, so that records with the same
+    // z-value are in query order.
+    private static class ZQuerySortable implements IntroSort.Sortable
+    {
+        @Override
+        public boolean less(long i, long j)
+        {
+            long zi = zs[(int) i];
+            long zj = zs[(int) j];
+            return zi < zj || zi == zj && queries[(int) i] < queries[(int) j];
+        }
+
+        @Override
+        public void swap(long i, long j)
+        {
+            int a = (int) i;
+            int b = (int) j;
+            long z = zs[a];
+            zs[a] = zs[b];
+            zs[b] = z;
+            int query = queries[a];
+            queries[a] = queries[b];
+            queries[b] = query;
+        }
+
+        ZQuerySortable(long[] zs, int[] queries)
+        {
+            this.zs = zs;
+            this.queries = queries;
+        }
+
+        private final long[] zs;
+        private final int[] queries;
+    }
+
+    private static class QueryIndexCursor extends Cursor<QueryRecord>
+    {
+        // Cursor interface
+
+        @Override
+        public QueryRecord next() throws IOException, InterruptedException
+        {
+            State state = state();
+            if (state == State.DONE) {
+                return null;
+            }
+            position = state == State.NEVER_USED ? queryIndex.lowerBound(startAt) : position + 1;
+            if (position < queryIndex.records.length) {
+                current(queryIndex.records[position]);
+                state(State.IN_USE);
+            } else {
+                close();
+            }
+            return current();
+        }
+
+        @Override
+        public void goTo(QueryRecord key)
+        {
+            startAt = key.z();
+            state(State.NEVER_USED);
+        }
+
+        @Override
+        public boolean deleteCurrent()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        QueryIndexCursor(QueryIndex queryIndex)
+        {
+            super(queryIndex);
+            this.queryIndex = queryIndex;
+        }
+
+        // Object state
+
+        private final QueryIndex queryIndex;
+        private long startAt = SpaceImpl.Z_MIN;
+        private int position;
+    }
+}
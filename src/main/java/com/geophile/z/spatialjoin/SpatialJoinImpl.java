@@ -12,18 +12,24 @@
 
 package com.geophile.z.spatialjoin;
 
+import com.geophile.z.Flow;
+import com.geophile.z.JoinStatistics;
 import com.geophile.z.Pair;
 import com.geophile.z.Record;
 import com.geophile.z.SpatialIndex;
 import com.geophile.z.SpatialJoin;
 import com.geophile.z.SpatialJoinException;
 import com.geophile.z.SpatialObject;
-import com.geophile.z.index.RecordWithSpatialObject;
-import com.geophile.z.index.sortedarray.SortedArray;
+import com.geophile.z.index.QueryRecord;
 import com.geophile.z.space.SpatialIndexImpl;
 
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 public class SpatialJoinImpl extends SpatialJoin
 {
@@ -54,55 +60,163 @@ public class SpatialJoinImpl extends SpatialJoin
             SpatialJoinIterator.pairIterator((SpatialIndexImpl) leftSpatialIndex,
                                              (SpatialIndexImpl) rightSpatialIndex,
                                              filter,
+                                             duplicateEliminator(leftSpatialIndex, rightSpatialIndex),
                                              leftObserver,
                                              rightObserver);
-        if (duplicates == SpatialJoin.Duplicates.EXCLUDE) {
-            iterator = new DuplicateEliminatingIterator<Pair<LEFT_RECORD, RIGHT_RECORD>>(iterator);
+        return iterator;
+    }
+
+    @Override
+    public <LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    Iterator<Pair<LEFT_RECORD, RIGHT_RECORD>> iterator(SpatialIndex<LEFT_RECORD> leftSpatialIndex,
+                                                       SpatialIndex<RIGHT_RECORD> rightSpatialIndex,
+                                                       ForkJoinPool pool)
+        throws IOException, InterruptedException
+    {
+        if (!leftSpatialIndex.space().equals(rightSpatialIndex.space())) {
+            throw new SpatialJoinException("Attempt to join spatial indexes with incompatible spaces");
         }
+        Iterator iterator =
+            new ParallelSpatialJoinIterator((SpatialIndexImpl) leftSpatialIndex,
+                                            (SpatialIndexImpl) rightSpatialIndex,
+                                            filter,
+                                            duplicates == SpatialJoin.Duplicates.EXCLUDE,
+                                            leftObserver,
+                                            rightObserver,
+                                            pool);
         return iterator;
     }
 
+    @Override
+    public <LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    JoinStatistics join(SpatialIndex<LEFT_RECORD> leftSpatialIndex,
+                        SpatialIndex<RIGHT_RECORD> rightSpatialIndex,
+                        PairConsumer<? super LEFT_RECORD, ? super RIGHT_RECORD> consumer)
+        throws IOException, InterruptedException
+    {
+        if (!leftSpatialIndex.space().equals(rightSpatialIndex.space())) {
+            throw new SpatialJoinException("Attempt to join spatial indexes with incompatible spaces");
+        }
+        if (consumer == null) {
+            throw new IllegalArgumentException();
+        }
+        PushSpatialJoin spatialJoin =
+            new PushSpatialJoin((SpatialIndexImpl) leftSpatialIndex,
+                                (SpatialIndexImpl) rightSpatialIndex,
+                                filter,
+                                duplicateEliminator(leftSpatialIndex, rightSpatialIndex),
+                                leftObserver,
+                                rightObserver,
+                                consumer);
+        spatialJoin.run();
+        return spatialJoin.statistics();
+    }
+
     @Override
     public <RECORD extends Record>
-    Iterator<RECORD> iterator(final SpatialObject query,
+    Iterator<RECORD> iterator(SpatialObject query,
                               SpatialIndex<RECORD> data)
         throws IOException, InterruptedException
     {
-        final SortedArray<RecordWithSpatialObject> queryIndex = new SortedArray.OfBaseRecord();
-        SpatialIndex<RecordWithSpatialObject> querySpatialIndex =
-            SpatialIndex.newSpatialIndex(data.space(),
-                                         queryIndex,
-                                         query.maxZ() == 1
-                                         ? SpatialIndex.Options.SINGLE_CELL
-                                         : SpatialIndex.Options.DEFAULT);
-        querySpatialIndex.add(query,
-                              new Record.Factory<RecordWithSpatialObject>()
-                              {
-                                  @Override
-                                  public RecordWithSpatialObject newRecord()
-                                  {
-                                      RecordWithSpatialObject queryRecord = queryIndex.newRecord();
-                                      queryRecord.spatialObject(query);
-                                      return queryRecord;
-                                  }
-                              });
         Iterator<RECORD> iterator =
             (Iterator<RECORD>) SpatialJoinIterator.spatialObjectIterator(query,
                                                                          (SpatialIndexImpl) data,
                                                                          filter,
+                                                                         duplicateEliminator(data, data),
                                                                          leftObserver,
                                                                          rightObserver);
-        if (duplicates == SpatialJoin.Duplicates.EXCLUDE) {
-            iterator = new DuplicateEliminatingIterator<>(iterator);
-        }
         return iterator;
     }
 
+    @Override
+    public <RECORD extends Record>
+    Iterator<Pair<QueryRecord, RECORD>> iterator(List<? extends SpatialObject> queries,
+                                                 SpatialIndex<RECORD> data)
+        throws IOException, InterruptedException
+    {
+        Iterator iterator =
+            SpatialJoinIterator.queryBatchIterator(queries,
+                                                   (SpatialIndexImpl) data,
+                                                   filter,
+                                                   duplicateEliminator(data, data),
+                                                   leftObserver,
+                                                   rightObserver);
+        return iterator;
+    }
+
+    @Override
+    public <LEFT_RECORD extends Record, RIGHT_RECORD extends Record>
+    Flow.Publisher<Pair<LEFT_RECORD, RIGHT_RECORD>> publisher(final SpatialIndex<LEFT_RECORD> leftSpatialIndex,
+                                                              final SpatialIndex<RIGHT_RECORD> rightSpatialIndex,
+                                                              Executor executor)
+    {
+        if (!leftSpatialIndex.space().equals(rightSpatialIndex.space())) {
+            throw new SpatialJoinException("Attempt to join spatial indexes with incompatible spaces");
+        }
+        return new SpatialJoinPublisher<>(
+            new Callable<Iterator<Pair<LEFT_RECORD, RIGHT_RECORD>>>()
+            {
+                @Override
+                public Iterator<Pair<LEFT_RECORD, RIGHT_RECORD>> call() throws IOException, InterruptedException
+                {
+                    return iterator(leftSpatialIndex, rightSpatialIndex);
+                }
+            },
+            executor);
+    }
+
+    @Override
+    public <RECORD extends Record>
+    Flow.Publisher<RECORD> publisher(final SpatialObject query,
+                                     final SpatialIndex<RECORD> data,
+                                     Executor executor)
+    {
+        return new SpatialJoinPublisher<>(
+            new Callable<Iterator<RECORD>>()
+            {
+                @Override
+                public Iterator<RECORD> call() throws IOException, InterruptedException
+                {
+                    return iterator(query, data);
+                }
+            },
+            executor);
+    }
+
+    public static JoinStatistics statistics(Iterator<?> iterator)
+    {
+        if (iterator instanceof SpatialJoinIterator) {
+            return ((SpatialJoinIterator) iterator).statistics();
+        } else if (iterator instanceof ParallelSpatialJoinIterator) {
+            return ((ParallelSpatialJoinIterator) iterator).statistics();
+        } else {
+            throw new IllegalArgumentException(String.format("%s was not created by a SpatialJoin", iterator));
+        }
+    }
+
     public static boolean singleCellOptimization()
     {
         return Boolean.valueOf(System.getProperty(SINGLE_CELL_OPTIMIZATION_PROPERTY, "true"));
     }
 
+    private DuplicateEliminator duplicateEliminator(SpatialIndex<?> leftSpatialIndex,
+                                                    SpatialIndex<?> rightSpatialIndex)
+    {
+        return
+            duplicates == SpatialJoin.Duplicates.EXCLUDE
+            ? new DuplicateEliminator(leftSpatialIndex.space(),
+                                      useReferenceRegions(leftSpatialIndex, rightSpatialIndex),
+                                      new HashSet<Object>())
+            : null;
+    }
+
+    static boolean useReferenceRegions(SpatialIndex<?> leftSpatialIndex, SpatialIndex<?> rightSpatialIndex)
+    {
+        return
+            ((SpatialIndexImpl) leftSpatialIndex).defaultDecompositions() &&
+            ((SpatialIndexImpl) rightSpatialIndex).defaultDecompositions();
+    }
+
     private static SpatialJoin.Filter DEFAULT_FILTER =
         new SpatialJoin.Filter()
         {
@@ -8,9 +8,7 @@ import com.geophile.z.space.SpaceImpl;
 import com.geophile.z.space.SpatialIndexImpl;
 
 import java.io.IOException;
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -341,7 +339,7 @@ class SpatialJoinInput
 
     public long nextExit()
     {
-        return nest.isEmpty() ? EOF : SpaceImpl.zHi(nest.peek().z());
+        return nestSize == 0 ? EOF : SpaceImpl.zHi(nestZs[nestSize - 1]);
     }
 
     public void enterZ() throws IOException, InterruptedException
@@ -351,8 +349,8 @@ class SpatialJoinInput
         if (currentOverlapsOtherNest() ||
             !that.eof && overlap(current.z(), that.current.z())) {
             // Enter current
-            if (!nest.isEmpty()) {
-                long topZ = nest.peek().z();
+            if (nestSize > 0) {
+                long topZ = nestZs[nestSize - 1];
                 assert SpaceImpl.contains(topZ, current.z());
             }
             push(current);
@@ -365,10 +363,15 @@ class SpatialJoinInput
 
     public void exitZ()
     {
-        assert !nest.isEmpty();
-        Record top = nest.pop();
-        observer.exit(top.z());
+        assert nestSize > 0;
+        nestSize--;
+        Record top = nestRecords[nestSize];
+        observer.exit(nestZs[nestSize]);
+        statistics.exit();
         that.generateSpatialJoinOutput(top);
+        if (stableRecords) {
+            nestRecords[nestSize] = null;
+        }
         log("exit");
     }
 
@@ -379,14 +382,83 @@ class SpatialJoinInput
 
     public static SpatialJoinInput newSpatialJoinInput(SpatialIndexImpl spatialIndex,
                                                        SpatialJoinOutput spatialJoinOutput,
-                                                       SpatialJoin.InputObserver observer)
+                                                       SpatialJoin.InputObserver observer,
+                                                       JoinStatisticsImpl statistics)
+        throws IOException, InterruptedException
+    {
+        return newSpatialJoinInput(spatialIndex, SpaceImpl.Z_MIN, spatialJoinOutput, observer, statistics);
+    }
+
+    // partition is a z-value. The input sees only the records whose z-values are contained by the partition,
+    // or contain it. SpaceImpl.Z_MIN is the z-value of the entire space, so it imposes no restriction.
+    public static SpatialJoinInput newSpatialJoinInput(SpatialIndexImpl spatialIndex,
+                                                       long partition,
+                                                       SpatialJoinOutput spatialJoinOutput,
+                                                       SpatialJoin.InputObserver observer,
+                                                       JoinStatisticsImpl statistics)
+        throws IOException, InterruptedException
+    {
+        Index index = spatialIndex.index();
+        Cursor cursor =
+            partition == SpaceImpl.Z_MIN
+            ? index.cursor()
+            : new PartitionCursor(index, partition);
+        return new SpatialJoinInput(index,
+                                    cursor,
+                                    spatialIndex.singleCell(),
+                                    spatialJoinOutput,
+                                    observer,
+                                    statistics);
+    }
+
+    public static SpatialJoinInput newSpatialJoinInput(QueryIndex queryIndex,
+                                                       SpatialJoinOutput spatialJoinOutput,
+                                                       SpatialJoin.InputObserver observer,
+                                                       JoinStatisticsImpl statistics)
+        throws IOException, InterruptedException
+    {
+        return new SpatialJoinInput(queryIndex,
+                                    queryIndex.cursor(),
+                                    queryIndex.singleCell(),
+                                    spatialJoinOutput,
+                                    observer,
+                                    statistics);
+    }
+
+    // Processes the next event of the merge of left and right, (see above). Returns the position of the event,
+    // or EOF if the join is done.
+    public static long mergeStep(SpatialJoinInput left, SpatialJoinInput right)
         throws IOException, InterruptedException
     {
-        return new SpatialJoinInput(spatialIndex, spatialJoinOutput, observer);
+        long zLeftEnter = left.nextEntry();
+        long zLeftExit = left.nextExit();
+        long zRightEnter = right.nextEntry();
+        long zRightExit = right.nextExit();
+        long zMin = min(zLeftEnter, zLeftExit, zRightEnter, zRightExit);
+        if (zMin < EOF) {
+            // Prefer entry to exit to avoid missing join output
+            if (zMin == zLeftEnter) {
+                left.enterZ();
+            } else if (zMin == zRightEnter) {
+                right.enterZ();
+            } else if (zMin == zLeftExit) {
+                left.exitZ();
+            } else {
+                right.exitZ();
+            }
+        }
+        return zMin;
     }
 
     // For use by this class
 
+    private static long min(long a, long b, long c, long d)
+    {
+        long minAB = a < b ? a : b;
+        long minCD = c < d ? c : d;
+        return minAB < minCD ? minAB : minCD;
+    }
+
     private void advanceCursor() throws IOException, InterruptedException
     {
         // Use that.current to skip ahead
@@ -458,35 +530,27 @@ class SpatialJoinInput
         observer.ancestorSearch(cursor,
                                 zStart,
                                 foundAncestor ? current.z() : SpaceImpl.Z_NULL);
+        statistics.ancestorSearch(foundAncestor);
     }
 
     private boolean currentOverlapsOtherNest()
     {
         boolean overlap = false;
-        Record thatNestTop = that.nestTop();
-        if (thatNestTop != null) {
+        int thatNestSize = that.nestSize;
+        if (thatNestSize > 0) {
             long thisCurrentZ = current.z();
+            long[] thatNestZs = that.nestZs;
             overlap =
-                SpaceImpl.contains(thisCurrentZ, thatNestTop.z()) ||
-                SpaceImpl.contains(that.nestBottom().z(), thisCurrentZ);
+                SpaceImpl.contains(thisCurrentZ, thatNestZs[thatNestSize - 1]) ||
+                SpaceImpl.contains(thatNestZs[0], thisCurrentZ);
         }
         return overlap;
     }
 
-    private Record nestTop()
-    {
-        return nest.peek();
-    }
-
-    private Record nestBottom()
-    {
-        return nest.peekLast();
-    }
-
     private void generateSpatialJoinOutput(Record thatRecord)
     {
-        for (Record thisRecord : nest) {
-            spatialJoinOutput.add(thisRecord, thatRecord);
+        for (int i = nestSize - 1; i >= 0; i--) {
+            spatialJoinOutput.add(nestRecords[i], thatRecord);
         }
     }
 
@@ -500,17 +564,32 @@ class SpatialJoinInput
         return String.format("sjinput(%s)", id);
     }
 
-    private SpatialJoinInput(SpatialIndexImpl spatialIndex,
+    private SpatialJoinInput(Index index,
+                             Cursor cursor,
+                             boolean singleCell,
                              SpatialJoinOutput spatialJoinOutput,
-                             SpatialJoin.InputObserver observer)
+                             SpatialJoin.InputObserver observer,
+                             JoinStatisticsImpl statistics)
         throws IOException, InterruptedException
     {
-        Index index = spatialIndex.index();
         this.stableRecords = index.stableRecords();
-        this.spatialIndex = spatialIndex;
+        this.index = index;
         this.observer = observer == null ? DEFAULT_OBSERVER : observer;
+        this.statistics = statistics;
         // Initialize cursor
-        this.cursor = index.cursor();
+        this.cursor = cursor;
+        if (cursor.batchesSupported()) {
+            this.batchZs = new long[BATCH_SIZE];
+            this.batch = new Record[BATCH_SIZE];
+            if (!stableRecords) {
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    batch[i] = index.newRecord();
+                }
+            }
+        } else {
+            this.batchZs = null;
+            this.batch = null;
+        }
         Record zMinKey = index.newKeyRecord();
         zMinKey.z(SpaceImpl.Z_MIN);
         cursorGoTo(cursor, zMinKey);
@@ -519,7 +598,7 @@ class SpatialJoinInput
         this.randomAccessKey = index.newKeyRecord();
         copyToCurrent(cursorNext(this.cursor));
         this.spatialJoinOutput = spatialJoinOutput;
-        this.singleCell = spatialIndex.singleCell();
+        this.singleCell = singleCell;
         this.singleCellOptimization = SpatialJoinImpl.singleCellOptimization();
         log("initialize");
     }
@@ -540,26 +619,53 @@ class SpatialJoinInput
 
     private void push(Record record)
     {
+        if (nestSize == nestZs.length) {
+            nestZs = Arrays.copyOf(nestZs, 2 * nestSize);
+            nestRecords = Arrays.copyOf(nestRecords, 2 * nestSize);
+        }
+        nestZs[nestSize] = record.z();
         if (stableRecords) {
-            nest.push(record);
+            nestRecords[nestSize] = record;
         } else {
-            Record copy = spatialIndex.index().newRecord();
+            // Reuse the copy left in this slot by an earlier push, if there is one.
+            Record copy = nestRecords[nestSize];
+            if (copy == null) {
+                copy = index.newRecord();
+                nestRecords[nestSize] = copy;
+            }
             record.copyTo(copy);
-            nest.push(copy);
         }
+        nestSize++;
+        statistics.enter();
+        statistics.nestDepth(nestSize);
     }
 
     private void cursorGoTo(Cursor cursor, Record key) throws IOException, InterruptedException
     {
         cursor.goTo(key);
+        // Records retrieved before the goTo are no longer relevant.
+        batchSize = 0;
+        batchPosition = 0;
         lastZRandomAccess = key.z();
         observer.randomAccess(cursor, lastZRandomAccess);
+        statistics.randomAccess();
     }
 
     private Record cursorNext(Cursor cursor) throws IOException, InterruptedException
     {
-        Record record = cursor.next();
+        Record record;
+        if (batch == null) {
+            record = cursor.next();
+        } else {
+            if (batchPosition == batchSize) {
+                batchSize = cursor.nextBatch(batchZs, batch, BATCH_SIZE);
+                batchPosition = 0;
+            }
+            record = batchPosition < batchSize ? batch[batchPosition++] : null;
+        }
+        // With batches, the cursor may be ahead of record, (as documented for InputObserver.sequentialAccess).
         observer.sequentialAccess(cursor, lastZRandomAccess, record);
+        statistics.sequentialAccess();
         return record;
     }
 
@@ -567,13 +673,11 @@ class SpatialJoinInput
     {
         if (LOG.isLoggable(Level.FINE)) {
             StringBuilder buffer = new StringBuilder();
-            Iterator<Record> nestScan = nest.descendingIterator();
-            long[] zs = new long[64];
-            int[] counts = new int[64];
+            long[] zs = new long[nestSize];
+            int[] counts = new int[nestSize];
             int n = 0;
-            while (nestScan.hasNext()) {
-                Record record = nestScan.next();
-                long z = record.z();
+            for (int i = 0; i < nestSize; i++) {
+                long z = nestZs[i];
                 if (n > 0 && zs[n - 1] == z) {
                     counts[n - 1]++;
                 } else {
@@ -608,25 +712,39 @@ class SpatialJoinInput
     private static final Logger LOG = Logger.getLogger(SpatialJoinInput.class.getName());
     private static final AtomicInteger idGenerator = new AtomicInteger(0);
     private static final SpatialJoin.InputObserver DEFAULT_OBSERVER = new SpatialJoin.InputObserver();
+    private static final int BATCH_SIZE = 64;
+    private static final int INITIAL_NEST_CAPACITY = 64;
 
     // Object state
 
     private final int id = idGenerator.getAndIncrement();
-    private final SpatialIndexImpl spatialIndex;
+    private final Index index;
     private final boolean stableRecords;
     private final boolean singleCell;
     private SpatialJoinInput that;
     private final SpatialJoinOutput spatialJoinOutput;
-    // nest contains z-values that have been entered but not exited. current is the next z-value to enter,
-    // and cursor contains later z-values.
-    private final Deque<Record> nest = new ArrayDeque<>();
+    // The nest contains z-values that have been entered but not exited. current is the next z-value to enter,
+    // and cursor contains later z-values. The nest is nestZs[0 : nestSize), bottom to top, and nestRecords[i] is
+    // the record whose z-value is nestZs[i]. If !stableRecords, nestRecords[i] is a copy, and copies left beyond
+    // nestSize are reused by later pushes, so records passed to spatialJoinOutput are valid only for the duration
+    // of the call.
+    private long[] nestZs = new long[INITIAL_NEST_CAPACITY];
+    private Record[] nestRecords = new Record[INITIAL_NEST_CAPACITY];
+    private int nestSize = 0;
     private final Cursor cursor;
     private Record current;
     private final Record randomAccessKey;
     // For use in finding ancestors
     private final long[] zCandidates = new long[SpaceImpl.MAX_Z_BITS];
+    // If the cursor supports batches, records are retrieved BATCH_SIZE at a time, and returned by cursorNext
+    // from batch. Otherwise, batch is null, and cursorNext calls cursor.next().
+    private final long[] batchZs;
+    private final Record[] batch;
+    private int batchSize;
+    private int batchPosition;
     private long lastZRandomAccess; // For observing access pattern
     private boolean eof = false;
     private final boolean singleCellOptimization;
     private final SpatialJoin.InputObserver observer;
+    private final JoinStatisticsImpl statistics;
 }
@@ -1,18 +1,20 @@
 package com.geophile.z.spatialjoin;
 
+import com.geophile.z.Index;
 import com.geophile.z.Pair;
 import com.geophile.z.Record;
-import com.geophile.z.SpatialIndex;
 import com.geophile.z.SpatialJoin;
 import com.geophile.z.SpatialJoinRuntimeException;
 import com.geophile.z.SpatialObject;
-import com.geophile.z.index.RecordWithSpatialObject;
-import com.geophile.z.index.sortedarray.SortedArray;
+import com.geophile.z.index.QueryRecord;
+import com.geophile.z.space.SpaceImpl;
 import com.geophile.z.space.SpatialIndexImpl;
 
 import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Queue;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -66,14 +68,36 @@ class SpatialJoinIterator<T> implements Iterator<T>
     public static SpatialJoinIterator<Pair> pairIterator(SpatialIndexImpl leftSpatialIndex,
                                                          SpatialIndexImpl rightSpatialIndex,
                                                          SpatialJoin.Filter filter,
+                                                         DuplicateEliminator duplicateEliminator,
+                                                         SpatialJoin.InputObserver leftInputObserver,
+                                                         SpatialJoin.InputObserver rightInputObserver)
+        throws IOException, InterruptedException
+    {
+        return pairIterator(leftSpatialIndex,
+                            rightSpatialIndex,
+                            SpaceImpl.Z_MIN,
+                            filter,
+                            duplicateEliminator,
+                            leftInputObserver,
+                            rightInputObserver);
+    }
+
+    // Joins the part of the inputs in the given partition, (see PartitionCursor).
+    public static SpatialJoinIterator<Pair> pairIterator(SpatialIndexImpl leftSpatialIndex,
+                                                         SpatialIndexImpl rightSpatialIndex,
+                                                         long partition,
+                                                         SpatialJoin.Filter filter,
+                                                         DuplicateEliminator duplicateEliminator,
                                                          SpatialJoin.InputObserver leftInputObserver,
                                                          SpatialJoin.InputObserver rightInputObserver)
         throws IOException, InterruptedException
     {
         return new SpatialJoinIterator<>(leftSpatialIndex,
                                          rightSpatialIndex,
+                                         partition,
                                          PAIR_OUTPUT_GENERATOR,
                                          filter,
+                                         duplicateEliminator,
                                          leftInputObserver,
                                          rightInputObserver);
     }
@@ -82,52 +106,94 @@ class SpatialJoinIterator<T> implements Iterator<T>
     spatialObjectIterator(SpatialObject leftSpatialObject,
                           SpatialIndexImpl rightSpatialIndex,
                           SpatialJoin.Filter filter,
+                          DuplicateEliminator duplicateEliminator,
                           SpatialJoin.InputObserver leftInputObserver,
                           SpatialJoin.InputObserver rightInputObserver)
         throws IOException, InterruptedException
     {
 
-        return new SpatialJoinIterator<>(leftSpatialObject,
+        return new SpatialJoinIterator<>(Collections.singletonList(leftSpatialObject),
                                          rightSpatialIndex,
                                          RECORD_OUTPUT_GENERATOR,
                                          filter,
+                                         duplicateEliminator,
+                                         leftInputObserver,
+                                         rightInputObserver);
+    }
+
+    // Joins a batch of query objects with rightSpatialIndex in one pass. The left side of each output Pair
+    // is a QueryRecord identifying the query.
+    public static SpatialJoinIterator<Pair>
+    queryBatchIterator(List<? extends SpatialObject> leftSpatialObjects,
+                       SpatialIndexImpl rightSpatialIndex,
+                       SpatialJoin.Filter filter,
+                       DuplicateEliminator duplicateEliminator,
+                       SpatialJoin.InputObserver leftInputObserver,
+                       SpatialJoin.InputObserver rightInputObserver)
+        throws IOException, InterruptedException
+    {
+        return new SpatialJoinIterator<>(leftSpatialObjects,
+                                         rightSpatialIndex,
+                                         PAIR_OUTPUT_GENERATOR,
+                                         filter,
+                                         duplicateEliminator,
                                          leftInputObserver,
                                          rightInputObserver);
     }
 
+    public JoinStatisticsImpl statistics()
+    {
+        return statistics;
+    }
+
     // For use by this class
 
     private SpatialJoinIterator(SpatialIndexImpl leftSpatialIndex,
                                 SpatialIndexImpl rightSpatialIndex,
+                                final long partition,
                                 final OutputGenerator<T> outputGenerator,
                                 final SpatialJoin.Filter filter,
+                                final DuplicateEliminator duplicateEliminator,
                                 SpatialJoin.InputObserver leftInputObserver,
                                 SpatialJoin.InputObserver rightInputObserver) throws IOException, InterruptedException
     {
+        final boolean partitioned = partition != SpaceImpl.Z_MIN;
+        leftCopies = unstable(leftSpatialIndex.index());
+        rightCopies = unstable(rightSpatialIndex.index());
         SpatialJoinOutput pendingLeftRight =
             new SpatialJoinOutput()
             {
                 @Override
                 public void add(Record left, Record right)
                 {
-                    if (filter.overlap(left, right)) {
-                        pending.add(outputGenerator.generateOutput(left, right));
+                    if ((!partitioned || PartitionCursor.ownsOverlap(partition, left.z(), right.z())) &&
+                        overlap(filter, left, right)) {
+                        addOutput(left, right, outputGenerator, duplicateEliminator);
                     }
                 }
             };
-        left = SpatialJoinInput.newSpatialJoinInput(leftSpatialIndex, pendingLeftRight, leftInputObserver);
+        left = SpatialJoinInput.newSpatialJoinInput(leftSpatialIndex,
+                                                    partition,
+                                                    pendingLeftRight,
+                                                    leftInputObserver,
+                                                    statistics);
         SpatialJoinOutput pendingRightLeft =
             new SpatialJoinOutput()
             {
                 @Override
                 public void add(Record right, Record left)
                 {
-                    if (filter.overlap(left, right)) {
-                        pending.add(outputGenerator.generateOutput(left, right));
+                    if ((!partitioned || PartitionCursor.ownsOverlap(partition, left.z(), right.z())) &&
+                        overlap(filter, left, right)) {
+                        addOutput(left, right, outputGenerator, duplicateEliminator);
                     }
                 }
             };
-        right = SpatialJoinInput.newSpatialJoinInput(rightSpatialIndex, pendingRightLeft, rightInputObserver);
+        right = SpatialJoinInput.newSpatialJoinInput(rightSpatialIndex,
+                                                     partition,
+                                                     pendingRightLeft,
+                                                     rightInputObserver,
+                                                     statistics);
         left.otherInput(right);
         right.otherInput(left);
         if (LOG.isLoggable(Level.INFO)) {
@@ -138,59 +204,52 @@ class SpatialJoinIterator<T> implements Iterator<T>
         findPairs();
     }
 
-    private SpatialJoinIterator(final SpatialObject querySpatialObject,
+    // All query objects are decomposed into one QueryIndex, so that the data index is scanned once for the whole
+    // batch. Each query record carries its query object, which is passed to the filter.
+    private SpatialJoinIterator(List<? extends SpatialObject> querySpatialObjects,
                                 SpatialIndexImpl dataSpatialIndex,
                                 final OutputGenerator<T> outputGenerator,
                                 final SpatialJoin.Filter filter,
+                                final DuplicateEliminator duplicateEliminator,
                                 SpatialJoin.InputObserver leftInputObserver,
                                 SpatialJoin.InputObserver rightInputObserver) throws IOException, InterruptedException
     {
-        final SortedArray<RecordWithSpatialObject> queryIndex = new SortedArray.OfBaseRecord();
-        final SpatialIndex<RecordWithSpatialObject> querySpatialIndex =
-            SpatialIndex.newSpatialIndex(dataSpatialIndex.space(),
-                                         queryIndex,
-                                         querySpatialObject.maxZ() == 1
-                                         ? SpatialIndex.Options.SINGLE_CELL
-                                         : SpatialIndex.Options.DEFAULT);
-        querySpatialIndex.add(querySpatialObject,
-                              new Record.Factory<RecordWithSpatialObject>()
-                              {
-                                  @Override
-                                  public RecordWithSpatialObject newRecord()
-                                  {
-                                      RecordWithSpatialObject queryRecord = queryIndex.newRecord();
-                                      queryRecord.spatialObject(querySpatialObject);
-                                      return queryRecord;
-                                  }
-                              });
+        QueryIndex queryIndex = new QueryIndex(dataSpatialIndex.space(), querySpatialObjects);
+        if (duplicateEliminator != null) {
+            duplicateEliminator.queryIndex(queryIndex);
+        }
+        leftCopies = null;
+        rightCopies = unstable(dataSpatialIndex.index());
         SpatialJoinOutput pendingLeftRight =
             new SpatialJoinOutput()
             {
                 @Override
                 public void add(Record left, Record right)
                 {
-                    if (filter.overlap(querySpatialObject, right)) {
-                        pending.add(outputGenerator.generateOutput(left, right));
+                    if (overlap(filter, ((QueryRecord) left).spatialObject(), right)) {
+                        addOutput(left, right, outputGenerator, duplicateEliminator);
                     }
                 }
             };
-        left = SpatialJoinInput.newSpatialJoinInput((SpatialIndexImpl) querySpatialIndex,
+        left = SpatialJoinInput.newSpatialJoinInput(queryIndex,
                                                     pendingLeftRight,
-                                                    leftInputObserver);
+                                                    leftInputObserver,
+                                                    statistics);
         SpatialJoinOutput pendingRightLeft =
             new SpatialJoinOutput()
             {
                 @Override
                 public void add(Record right, Record left)
                 {
-                    if (filter.overlap(querySpatialObject, right)) {
-                        pending.add(outputGenerator.generateOutput(left, right));
+                    if (overlap(filter, ((QueryRecord) left).spatialObject(), right)) {
+                        addOutput(left, right, outputGenerator, duplicateEliminator);
                     }
                 }
             };
         right = SpatialJoinInput.newSpatialJoinInput(dataSpatialIndex,
                                                      pendingRightLeft,
-                                                     rightInputObserver);
+                                                     rightInputObserver,
+                                                     statistics);
         left.otherInput(right);
         right.otherInput(left);
         if (LOG.isLoggable(Level.INFO)) {
@@ -201,6 +260,37 @@ class SpatialJoinIterator<T> implements Iterator<T>
         findPairs();
     }
 
+    private void addOutput(Record left,
+                           Record right,
+                           OutputGenerator<T> outputGenerator,
+                           DuplicateEliminator duplicateEliminator)
+    {
+        // Duplicates are usually detected from the records' reference region, which doesn't need copies, so
+        // that is checked first. null means that the output has to be checked against the set of outputs.
+        Boolean first = duplicateEliminator == null ? Boolean.TRUE : duplicateEliminator.firstOccurrence(left, right);
+        if (first != Boolean.FALSE) {
+            // SpatialJoinInput reuses records of an index with unstable records, so output has to retain copies.
+            if (leftCopies != null) {
+                left = copy(left, leftCopies);
+            }
+            if (rightCopies != null) {
+                right = copy(right, rightCopies);
+            }
+            T output = outputGenerator.generateOutput(left, right);
+            if (first != null || duplicateEliminator.firstOccurrence(output)) {
+                pending.add(output);
+                statistics.output();
+            }
+        }
+    }
+
+    private boolean overlap(SpatialJoin.Filter filter, Object left, Object right)
+    {
+        boolean overlap = filter.overlap(left, right);
+        statistics.filter(overlap);
+        return overlap;
+    }
+
     private void ensurePending()
     {
         if (pending.isEmpty()) {
@@ -217,31 +307,23 @@ class SpatialJoinIterator<T> implements Iterator<T>
         assert pending.isEmpty();
         long zMin;
         do {
-            long zLeftEnter = left.nextEntry();
-            long zLeftExit = left.nextExit();
-            long zRightEnter = right.nextEntry();
-            long zRightExit = right.nextExit();
-            zMin = min(zLeftEnter, zLeftExit, zRightEnter, zRightExit);
-            if (zMin < SpatialJoinInput.EOF) {
-                // Prefer entry to exit to avoid missing join output
-                if (zMin == zLeftEnter) {
-                    left.enterZ();
-                } else if (zMin == zRightEnter) {
-                    right.enterZ();
-                } else if (zMin == zLeftExit) {
-                    left.exitZ();
-                } else {
-                    right.exitZ();
-                }
-            }
+            zMin = SpatialJoinInput.mergeStep(left, right);
         } while (pending.isEmpty() && zMin < SpatialJoinInput.EOF);
+        if (zMin >= SpatialJoinInput.EOF) {
+            statistics.publish();
+        }
+    }
+
+    private static Index unstable(Index index)
+    {
+        return index.stableRecords() ? null : index;
     }
 
-    private long min(long a, long b, long c, long d)
+    private static Record copy(Record record, Index index)
     {
-        long minAB = a < b ? a : b;
-        long minCD = c < d ? c : d;
-        return minAB < minCD ? minAB : minCD;
+        Record copy = index.newRecord();
+        record.copyTo(copy);
+        return copy;
     }
 
     // Class state
@@ -258,7 +340,11 @@ class SpatialJoinIterator<T> implements Iterator<T>
     private final String name = String.format("sj(%s)", idGenerator.getAndIncrement());
     private final SpatialJoinInput left;
     private final SpatialJoinInput right;
+    // Indexes whose records have to be copied for output, (see addOutput). null if an index's records are stable.
+    private final Index leftCopies;
+    private final Index rightCopies;
     private final Queue<T> pending = new ArrayDeque<>();
+    private final JoinStatisticsImpl statistics = new JoinStatisticsImpl();
 
     // Inner classes
 
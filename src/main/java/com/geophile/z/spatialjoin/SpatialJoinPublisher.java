@@ -0,0 +1,253 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialjoin;
+
+import com.geophile.z.Flow;
+import com.geophile.z.SpatialJoinRuntimeException;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+
+Publishes the output of a spatial join iterator. Each subscription runs its own spatial join, on the given
+Executor, so no thread is dedicated to a subscription, or blocked waiting for demand.
+
+The spatial join is only advanced, (by the iterator's hasNext, which calls findPairs), while there is outstanding
+demand, or to find out whether it is done once demand has been met, so output is never buffered beyond what one step
+of the join produces. Items are emitted in batches: A task
+on the executor emits at most BATCH_SIZE items, and then, if there is more demand, resubmits itself, so that
+subscriptions with a lot of demand share the executor's threads.
+
+A subscription's state is changed by request and cancel, on any thread, and by the task emitting items. The
+task is scheduled only when the number of pending signals, wip, goes from 0 to 1, so at most one task runs
+at a time, and the subscriber's methods are not called concurrently.
+
+*/
+
+class SpatialJoinPublisher<T> implements Flow.Publisher<T>
+{
+    // Flow.Publisher interface
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber)
+    {
+        if (subscriber == null) {
+            throw new NullPointerException();
+        }
+        JoinSubscription subscription = new JoinSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    // SpatialJoinPublisher interface
+
+    // spatialJoin creates the iterator. It is called on the executor, since the creation of a spatial join iterator
+    // starts the join.
+    public SpatialJoinPublisher(Callable<Iterator<T>> spatialJoin, Executor executor)
+    {
+        if (spatialJoin == null || executor == null) {
+            throw new IllegalArgumentException();
+        }
+        this.spatialJoin = spatialJoin;
+        this.executor = executor;
+    }
+
+    // Class state
+
+    static final int BATCH_SIZE = 256;
+
+    // Object state
+
+    private final Callable<Iterator<T>> spatialJoin;
+    private final Executor executor;
+
+    // Inner classes
+
+    private class JoinSubscription implements Flow.Subscription, Runnable
+    {
+        // Flow.Subscription interface
+
+        @Override
+        public void request(long n)
+        {
+            if (n <= 0) {
+                failure = new IllegalArgumentException(Long.toString(n));
+            } else {
+                long current;
+                long updated;
+                do {
+                    current = demand.get();
+                    updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!demand.compareAndSet(current, updated));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+            schedule();
+        }
+
+        // Runnable interface
+
+        @Override
+        public void run()
+        {
+            int missed = 1;
+            while (true) {
+                int emitted = 0;
+                while (!finished() && emitted < BATCH_SIZE && demand.get() > 0) {
+                    emitNext();
+                    emitted++;
+                }
+                if (demand.get() == 0) {
+                    completeIfExhausted();
+                }
+                if (!finished() && emitted == BATCH_SIZE && demand.get() > 0) {
+                    // There is more to do, but let other tasks use this thread first. wip stays positive, so
+                    // no other task is scheduled in the meantime.
+                    execute();
+                    return;
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        // JoinSubscription interface
+
+        JoinSubscription(Flow.Subscriber<? super T> subscriber)
+        {
+            this.subscriber = subscriber;
+        }
+
+        // For use by this class
+
+        private void schedule()
+        {
+            if (wip.getAndIncrement() == 0) {
+                execute();
+            }
+        }
+
+        private void execute()
+        {
+            try {
+                executor.execute(this);
+            } catch (RuntimeException e) {
+                // Most likely a RejectedExecutionException. This is either the running task, or no task is running,
+                // so it is safe to call the subscriber from here. wip stays positive, so no task will run later.
+                terminate(e);
+            }
+        }
+
+        // Returns true if nothing more is to be emitted. Completes the subscription if it has failed.
+        private boolean finished()
+        {
+            if (!done && !cancelled && failure != null) {
+                terminate(failure);
+            }
+            if (cancelled) {
+                iterator = null;
+            }
+            return done || cancelled;
+        }
+
+        // Emits the next item, or completes the subscription if there are no more.
+        private void emitNext()
+        {
+            T next = null;
+            Throwable error = null;
+            try {
+                if (iterator == null) {
+                    iterator = spatialJoin.call();
+                }
+                if (iterator.hasNext()) {
+                    next = iterator.next();
+                }
+            } catch (Exception e) {
+                error = failure(e);
+            }
+            if (error != null) {
+                terminate(error);
+            } else if (next == null) {
+                complete();
+            } else {
+                demand.decrementAndGet();
+                subscriber.onNext(next);
+            }
+        }
+
+        // Completion doesn't require demand. So once all requested items have been emitted, check whether there are
+        // any more, (advancing the join by at most one step), so that a subscriber that requested exactly the
+        // number of items produced is told that there are no more.
+        private void completeIfExhausted()
+        {
+            if (iterator != null && !finished()) {
+                boolean exhausted = false;
+                Throwable error = null;
+                try {
+                    exhausted = !iterator.hasNext();
+                } catch (Exception e) {
+                    error = failure(e);
+                }
+                if (error != null) {
+                    terminate(error);
+                } else if (exhausted) {
+                    complete();
+                }
+            }
+        }
+
+        private Throwable failure(Exception e)
+        {
+            Throwable failure = e;
+            if (e instanceof SpatialJoinRuntimeException && e.getCause() != null) {
+                failure = e.getCause();
+            } else if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            return failure;
+        }
+
+        private void complete()
+        {
+            done = true;
+            iterator = null;
+            subscriber.onComplete();
+        }
+
+        private void terminate(Throwable error)
+        {
+            if (!done) {
+                done = true;
+                iterator = null;
+                subscriber.onError(error);
+            }
+        }
+
+        // Object state
+
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        // Number of signals, (requests and cancellations), not yet processed by a task.
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled = false;
+        // Set by request(n) with n <= 0, and reported by the task.
+        private volatile Throwable failure;
+        // Accessed only by the task, (or by schedule, when no task is running).
+        private boolean done = false;
+        private Iterator<T> iterator;
+    }
+}
@@ -21,4 +21,10 @@ public class JTS
     {
         return new JTSSpatialObjectWithBoundingBox(space, geometry);
     }
+
+    // Region comparisons use the geometry, (prepared), instead of the bounding box.
+    public static JTSSpatialObject preparedSpatialObject(Space space, Geometry geometry)
+    {
+        return new JTSPreparedSpatialObject(space, geometry);
+    }
 }
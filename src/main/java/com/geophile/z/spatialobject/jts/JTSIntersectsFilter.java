@@ -0,0 +1,111 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialobject.jts;
+
+import com.geophile.z.Record;
+import com.geophile.z.SpatialJoin;
+import com.geophile.z.SpatialObject;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+/*
+
+A SpatialJoin.Filter that accepts a pair iff the JTS geometries of the two sides intersect. Each side may be a
+JTSSpatialObject, or a Record.HasSpatialObject whose spatial object is a JTSSpatialObject, so the same filter works
+for joins of two spatial indexes, and for joins of query objects with a spatial index.
+
+Envelopes are compared first. Then, if either side is a JTSPreparedSpatialObject, its PreparedGeometry is used.
+Otherwise, the larger geometry is prepared and kept for later pairs: a spatial join produces the pairs of a
+large spatial object consecutively, (in z-order), so one cached PreparedGeometry, per thread, gets most of the
+benefit. Geometries with fewer than MIN_PREPARED_POINTS points are not worth preparing.
+
+*/
+
+public class JTSIntersectsFilter<LEFT, RIGHT> implements SpatialJoin.Filter<LEFT, RIGHT>
+{
+    // SpatialJoin.Filter interface
+
+    @Override
+    public boolean overlap(LEFT left, RIGHT right)
+    {
+        return intersects(spatialObject(left), spatialObject(right));
+    }
+
+    // JTSIntersectsFilter interface
+
+    public JTSIntersectsFilter()
+    {}
+
+    // For use by this class
+
+    private boolean intersects(JTSSpatialObject left, JTSSpatialObject right)
+    {
+        left.ensureGeometry();
+        right.ensureGeometry();
+        Geometry leftGeometry = left.geometry();
+        Geometry rightGeometry = right.geometry();
+        if (!leftGeometry.getEnvelopeInternal().intersects(rightGeometry.getEnvelopeInternal())) {
+            return false;
+        }
+        if (left instanceof JTSPreparedSpatialObject) {
+            return ((JTSPreparedSpatialObject) left).preparedGeometry().intersects(rightGeometry);
+        }
+        if (right instanceof JTSPreparedSpatialObject) {
+            return ((JTSPreparedSpatialObject) right).preparedGeometry().intersects(leftGeometry);
+        }
+        Cache cache = caches.get();
+        if (cache.spatialObject == left) {
+            return cache.prepared.intersects(rightGeometry);
+        }
+        if (cache.spatialObject == right) {
+            return cache.prepared.intersects(leftGeometry);
+        }
+        boolean prepareLeft = leftGeometry.getNumPoints() >= rightGeometry.getNumPoints();
+        Geometry larger = prepareLeft ? leftGeometry : rightGeometry;
+        if (larger.getNumPoints() < MIN_PREPARED_POINTS) {
+            return leftGeometry.intersects(rightGeometry);
+        }
+        cache.spatialObject = prepareLeft ? left : right;
+        cache.prepared = PreparedGeometryFactory.prepare(larger);
+        return cache.prepared.intersects(prepareLeft ? rightGeometry : leftGeometry);
+    }
+
+    private static JTSSpatialObject spatialObject(Object o)
+    {
+        SpatialObject spatialObject =
+            o instanceof Record.HasSpatialObject
+            ? ((Record.HasSpatialObject) o).spatialObject()
+            : (SpatialObject) o;
+        return (JTSSpatialObject) spatialObject;
+    }
+
+    // Class state
+
+    private static final int MIN_PREPARED_POINTS = 16;
+
+    // Object state
+
+    // A filter may be used by the threads of a parallel spatial join, so each thread has its own cache.
+    private final ThreadLocal<Cache> caches =
+        new ThreadLocal<Cache>()
+        {
+            @Override
+            protected Cache initialValue()
+            {
+                return new Cache();
+            }
+        };
+
+    // Inner classes
+
+    private static class Cache
+    {
+        JTSSpatialObject spatialObject;
+        PreparedGeometry prepared;
+    }
+}
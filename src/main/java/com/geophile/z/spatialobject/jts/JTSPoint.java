@@ -3,9 +3,10 @@ package com.geophile.z.spatialobject.jts;
 import com.geophile.z.Space;
 import com.geophile.z.space.Region;
 import com.geophile.z.space.RegionComparison;
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Point;
 
+import java.nio.ByteBuffer;
+
 public class JTSPoint extends JTSSpatialObject
 {
     // SpatialObject interface (not implemented by JTSBase)
@@ -16,23 +17,30 @@ public class JTSPoint extends JTSSpatialObject
         return 1;
     }
 
+    @Override
+    public double[] arbitraryPoint()
+    {
+        ensureCoordinates();
+        return new double[]{x, y};
+    }
+
     @Override
     public boolean containedBy(Space space)
     {
-        Coordinate coordinate = geometry.getCoordinate();
+        ensureCoordinates();
         return
-            space == this.space &&
-            space.lo(0) <= coordinate.x && coordinate.x <= space.hi(0) &&
-            space.lo(1) <= coordinate.y && coordinate.y <= space.hi(1);
+            (this.space == null || space == this.space) && // space is null if deserialized
+            space.lo(0) <= x && x <= space.hi(0) &&
+            space.lo(1) <= y && y <= space.hi(1);
     }
 
     @Override
     public boolean containedBy(Region region)
     {
-        Point point = point();
+        ensureCoordinates();
         return
-            region.loLE(0, point.getX()) && region.hiGE(0, point.getX()) &&
-            region.loLE(1, point.getY()) && region.hiGE(1, point.getY());
+            region.loLE(0, x) && region.hiGE(0, x) &&
+            region.loLE(1, y) && region.hiGE(1, y);
     }
 
     @Override
@@ -55,10 +63,58 @@ public class JTSPoint extends JTSSpatialObject
     public JTSPoint()
     {}
 
+    // For use by subclasses
+
+    // The coordinates are serialized along with the WKB, so that a JTSPoint read lazily, (see
+    // JTSSpatialObject.readLazilyFrom), can be decomposed without parsing the WKB.
+
+    @Override
+    protected void read(ByteBuffer input, boolean copy)
+    {
+        super.read(input, copy);
+        x = input.getDouble();
+        y = input.getDouble();
+        coordinatesAvailable = true;
+    }
+
+    @Override
+    protected void write(ByteBuffer output)
+    {
+        super.write(output);
+        ensureCoordinates();
+        output.putDouble(x);
+        output.putDouble(y);
+    }
+
+    @Override
+    protected int envelopeHashCode()
+    {
+        ensureCoordinates();
+        return envelopeHashCode(x, x, y, y);
+    }
+
     // For use by this package
 
     JTSPoint(Space space, Point point)
     {
         super(space, point);
     }
+
+    // For use by this class
+
+    private void ensureCoordinates()
+    {
+        if (!coordinatesAvailable) {
+            Point point = point();
+            x = point.getX();
+            y = point.getY();
+            coordinatesAvailable = true;
+        }
+    }
+
+    // Object state
+
+    private boolean coordinatesAvailable;
+    private double x;
+    private double y;
 }
@@ -0,0 +1,84 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.spatialobject.jts;
+
+import com.geophile.z.Space;
+import com.geophile.z.space.Region;
+import com.geophile.z.space.RegionComparison;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+import java.nio.ByteBuffer;
+
+// Region comparisons use the geometry itself, not just its bounding box, so decompositions of irregular shapes
+// are tighter. The comparisons use a PreparedGeometry, which is created on first use and then cached, (and
+// shared by JTSIntersectsFilter). PreparedGeometry is safe for concurrent use, so this spatial object can be
+// decomposed in parallel, (see Space.decompose(SpatialObject, long[], ForkJoinPool)).
+
+public class JTSPreparedSpatialObject extends JTSSpatialObjectWithBoundingBox
+{
+    // SpatialObject interface
+
+    @Override
+    public RegionComparison compare(Region region)
+    {
+        // Regions outside the bounding box are outside the geometry. Otherwise, check the geometry.
+        RegionComparison comparison = super.compare(region);
+        if (comparison != RegionComparison.REGION_OUTSIDE_OBJECT) {
+            PreparedGeometry prepared = preparedGeometry();
+            Geometry regionGeometry =
+                geometry.getFactory().toGeometry(new Envelope(region.lo(0), region.hi(0),
+                                                              region.lo(1), region.hi(1)));
+            comparison =
+                !prepared.intersects(regionGeometry)
+                ? RegionComparison.REGION_OUTSIDE_OBJECT
+                : prepared.contains(regionGeometry)
+                  ? RegionComparison.REGION_INSIDE_OBJECT
+                  : RegionComparison.REGION_OVERLAPS_OBJECT;
+        }
+        return comparison;
+    }
+
+    // JTSPreparedSpatialObject interface
+
+    public PreparedGeometry preparedGeometry()
+    {
+        PreparedGeometry prepared = this.prepared;
+        if (prepared == null) {
+            ensureGeometry();
+            prepared = PreparedGeometryFactory.prepare(geometry);
+            this.prepared = prepared;
+        }
+        return prepared;
+    }
+
+    public JTSPreparedSpatialObject()
+    {}
+
+    // For use by subclasses
+
+    @Override
+    protected void read(ByteBuffer input, boolean copy)
+    {
+        super.read(input, copy);
+        prepared = null;
+    }
+
+    // For use by this package
+
+    JTSPreparedSpatialObject(Space space, Geometry geometry)
+    {
+        super(space, geometry);
+    }
+
+    // Object state
+
+    // Two threads may both prepare the geometry, which is harmless.
+    private volatile PreparedGeometry prepared;
+}
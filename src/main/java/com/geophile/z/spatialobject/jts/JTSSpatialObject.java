@@ -7,20 +7,24 @@ import com.geophile.z.space.Region;
 import com.geophile.z.space.RegionComparison;
 import com.geophile.z.space.SpaceImpl;
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.InStream;
 import com.vividsolutions.jts.io.ParseException;
 import com.vividsolutions.jts.io.WKBReader;
 import com.vividsolutions.jts.io.WKBWriter;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 
-public abstract class JTSSpatialObject implements SpatialObject
+public abstract class JTSSpatialObject implements SpatialObject.LazilyReadable
 {
     // Object interface
 
     @Override
     public final String toString()
     {
+        ensureGeometry();
         return geometry.toString();
     }
 
@@ -28,7 +32,7 @@ public abstract class JTSSpatialObject implements SpatialObject
     public final int hashCode()
     {
         if (!hashCodeKnown) {
-            hashCode = geometry.getEnvelopeInternal().hashCode();
+            hashCode = envelopeHashCode();
             hashCodeKnown = true;
         }
         return hashCode;
@@ -50,8 +54,9 @@ public abstract class JTSSpatialObject implements SpatialObject
     // SpatialObject interface
 
     @Override
-    public final double[] arbitraryPoint()
+    public double[] arbitraryPoint()
     {
+        ensureGeometry();
         double[] point = new double[2];
         Coordinate coordinate = geometry.getCoordinate();
         point[0] = coordinate.x;
@@ -78,7 +83,22 @@ public abstract class JTSSpatialObject implements SpatialObject
     @Override
     public final void readFrom(ByteBuffer buffer)
     {
-        read(buffer);
+        read(buffer, true);
+    }
+
+    /**
+     * Like {@link #readFrom(java.nio.ByteBuffer)}, but the WKB is not copied. This spatial object keeps a view of
+     * the WKB in the given buffer, and the JTS Geometry is parsed from it only if it is needed, (e.g. by
+     * {@link #geometry()}). Operations needing only what is stored alongside the WKB, (e.g. the bounding box of a
+     * {@link com.geophile.z.spatialobject.jts.JTSSpatialObjectWithBoundingBox}), never parse the geometry. The
+     * contents of the buffer must not change while this spatial object is in use. The buffer's position is
+     * advanced past the serialized spatial object, as by {@link #readFrom(java.nio.ByteBuffer)}.
+     * @param buffer Contains a serialized JTSSpatialObject.
+     */
+    @Override
+    public final void readLazilyFrom(ByteBuffer buffer)
+    {
+        read(buffer, false);
     }
 
     @Override
@@ -91,6 +111,7 @@ public abstract class JTSSpatialObject implements SpatialObject
 
     public final Geometry geometry()
     {
+        ensureGeometry();
         return geometry;
     }
 
@@ -99,15 +120,40 @@ public abstract class JTSSpatialObject implements SpatialObject
     protected void ensureGeometry()
     {
         if (geometry == null) {
-            assert wkb != null;
             try {
-                geometry = io().reader().read(wkb);
-            } catch (ParseException e) {
+                if (wkb != null) {
+                    geometry = io().reader().read(wkb);
+                } else {
+                    assert wkbBuffer != null;
+                    geometry = io().reader().read(new ByteBufferInStream(wkbBuffer.duplicate()));
+                }
+            } catch (ParseException | IOException e) {
                 throw new SpatialObjectException(e);
             }
         }
     }
 
+    // The hash code is based on the envelope, (so that equal geometries have the same hash code). Subclasses that
+    // store the envelope, or enough to compute it, override this, so that hashing a lazily read spatial object,
+    // (e.g. as a key of a decomposition cache), doesn't parse the geometry.
+    protected int envelopeHashCode()
+    {
+        ensureGeometry();
+        Envelope envelope = geometry.getEnvelopeInternal();
+        return envelopeHashCode(envelope.getMinX(), envelope.getMaxX(), envelope.getMinY(), envelope.getMaxY());
+    }
+
+    // Same as Envelope.hashCode, so the hash code doesn't depend on how the envelope was obtained.
+    protected static int envelopeHashCode(double xLo, double xHi, double yLo, double yHi)
+    {
+        int result = 17;
+        result = 37 * result + hashCode(xLo);
+        result = 37 * result + hashCode(xHi);
+        result = 37 * result + hashCode(yLo);
+        result = 37 * result + hashCode(yHi);
+        return result;
+    }
+
     protected JTSSpatialObject(Space space, Geometry geometry)
     {
         this.space = (SpaceImpl) space;
@@ -120,22 +166,37 @@ public abstract class JTSSpatialObject implements SpatialObject
         this.space = null;
     }
 
-    protected void read(ByteBuffer input)
+    // If copy is false, then the WKB is not copied out of input, (see readLazilyFrom).
+    protected void read(ByteBuffer input, boolean copy)
     {
         // WKB
         int size = input.getInt();
-        wkb = new byte[size];
-        input.get(wkb);
+        if (copy) {
+            wkb = new byte[size];
+            input.get(wkb);
+            wkbBuffer = null;
+        } else {
+            wkb = null;
+            wkbBuffer = input.slice();
+            wkbBuffer.limit(size);
+            input.position(input.position() + size);
+        }
         // geometry
         geometry = null;
+        hashCodeKnown = false;
     }
 
     protected void write(ByteBuffer output)
     {
         // WKB
-        ensureWKB();
-        output.putInt(wkb.length);
-        output.put(wkb);
+        if (wkb == null && wkbBuffer != null) {
+            output.putInt(wkbBuffer.remaining());
+            output.put(wkbBuffer.duplicate());
+        } else {
+            ensureWKB();
+            output.putInt(wkb.length);
+            output.put(wkb);
+        }
         // geometry: nothing to do
     }
 
@@ -146,6 +207,13 @@ public abstract class JTSSpatialObject implements SpatialObject
         return THREAD_IO.get();
     }
 
+    // Same as Coordinate.hashCode(double)
+    private static int hashCode(double x)
+    {
+        long bits = Double.doubleToLongBits(x);
+        return (int) (bits ^ (bits >>> 32));
+    }
+
     private void ensureWKB()
     {
         if (wkb == null) {
@@ -175,15 +243,17 @@ public abstract class JTSSpatialObject implements SpatialObject
     private int hashCode;
     //
     protected Geometry geometry;
-    // Well Known Binary representation, (i.e., serialized)
+    // Well Known Binary representation, (i.e., serialized), or, if read lazily, a view of it in the buffer
+    // it was read from.
     private byte[] wkb;
+    private ByteBuffer wkbBuffer;
     // Derivation of state (bounding boxes handled by subclass JTSBaseWithBoundingBox):
     // - New spatial object:
     //    - Start with geometry
     //    - Generate bounding box on addition to index.
     //    - Generate wkb on durability.
     // - Read spatial object from index:
-    //    - Start with bounding box and wkb.
+    //    - Start with bounding box and wkb, (or a view of the wkb in the index's buffer, if read lazily).
     //    - Generate geometry lazily.
 
     // Inner classes
@@ -209,4 +279,21 @@ public abstract class JTSSpatialObject implements SpatialObject
         private WKBReader reader;
         private WKBWriter writer;
     }
+
+    // Lets WKBReader read directly from a ByteBuffer.
+    private static class ByteBufferInStream implements InStream
+    {
+        @Override
+        public void read(byte[] buffer)
+        {
+            this.buffer.get(buffer);
+        }
+
+        ByteBufferInStream(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        private final ByteBuffer buffer;
+    }
 }
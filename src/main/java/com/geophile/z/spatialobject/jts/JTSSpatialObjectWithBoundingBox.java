@@ -9,22 +9,35 @@ package com.geophile.z.spatialobject.jts;
 import com.geophile.z.Space;
 import com.geophile.z.space.Region;
 import com.geophile.z.space.RegionComparison;
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 
-// Region comparisons use bounding box. Override to get more precise.
+import java.nio.ByteBuffer;
+
+// Region comparisons use bounding box. Override to get more precise. The bounding box is serialized along with the
+// WKB, so that a spatial object read from an index can be decomposed and compared to Regions without parsing
+// the geometry, (see JTSSpatialObject.readLazilyFrom).
 
 public class JTSSpatialObjectWithBoundingBox extends JTSSpatialObject
 {
     // SpatialObject interface
 
+    @Override
+    public double[] arbitraryPoint()
+    {
+        // A vertex of the geometry, kept with the bounding box, so that decomposition doesn't need the geometry.
+        ensureBoundingBox();
+        return new double[]{xPoint, yPoint};
+    }
+
     @Override
     public boolean containedBy(Space space)
     {
-        Envelope envelope = geometry.getEnvelopeInternal();
+        ensureBoundingBox();
         return
-            space.lo(0) <= envelope.getMinX() && envelope.getMaxX() <= space.hi(0) &&
-            space.lo(1) <= envelope.getMinY() && envelope.getMaxY() <= space.hi(1);
+            space.lo(0) <= xLo && xHi <= space.hi(0) &&
+            space.lo(1) <= yLo && yHi <= space.hi(1);
     }
 
     @Override
@@ -56,6 +69,40 @@ public class JTSSpatialObjectWithBoundingBox extends JTSSpatialObject
     public JTSSpatialObjectWithBoundingBox()
     {}
 
+    // For use by subclasses
+
+    @Override
+    protected void read(ByteBuffer input, boolean copy)
+    {
+        super.read(input, copy);
+        xLo = input.getDouble();
+        xHi = input.getDouble();
+        yLo = input.getDouble();
+        yHi = input.getDouble();
+        xPoint = input.getDouble();
+        yPoint = input.getDouble();
+    }
+
+    @Override
+    protected void write(ByteBuffer output)
+    {
+        super.write(output);
+        ensureBoundingBox();
+        output.putDouble(xLo);
+        output.putDouble(xHi);
+        output.putDouble(yLo);
+        output.putDouble(yHi);
+        output.putDouble(xPoint);
+        output.putDouble(yPoint);
+    }
+
+    @Override
+    protected int envelopeHashCode()
+    {
+        ensureBoundingBox();
+        return envelopeHashCode(xLo, xHi, yLo, yHi);
+    }
+
     // For use by this package
 
     JTSSpatialObjectWithBoundingBox(Space space, Geometry geometry)
@@ -68,8 +115,10 @@ public class JTSSpatialObjectWithBoundingBox extends JTSSpatialObject
     private void ensureBoundingBox()
     {
         if (!boundingBoxAvailable()) {
-            assert geometry != null;
-            assert space != null;
+            ensureGeometry();
+            Coordinate coordinate = geometry.getCoordinate();
+            xPoint = coordinate.x;
+            yPoint = coordinate.y;
             Envelope envelope = geometry.getEnvelopeInternal();
             xLo = envelope.getMinX();
             xHi = envelope.getMaxX();
@@ -78,6 +127,7 @@ public class JTSSpatialObjectWithBoundingBox extends JTSSpatialObject
             assert boundingBoxAvailable();
         }
     }
+
     private boolean boundingBoxAvailable()
     {
         return xLo <= xHi;
@@ -89,4 +139,7 @@ public class JTSSpatialObjectWithBoundingBox extends JTSSpatialObject
     protected double xHi = -1L;
     protected double yLo;
     protected double yHi;
+    // See arbitraryPoint
+    protected double xPoint;
+    protected double yPoint;
 }
@@ -9,6 +9,8 @@ package com.geophile.z.util;
 import com.geophile.z.Cursor;
 import com.geophile.z.Index;
 import com.geophile.z.Record;
+import com.geophile.z.Space;
+import com.geophile.z.space.SpaceImpl;
 
 import java.io.IOException;
 import java.io.PrintStream;
@@ -29,13 +31,24 @@ public class IndexDumper<RECORD extends Record>
 
     public String describe(RECORD record)
     {
-        return record.toString();
+        return
+            space == null
+            ? record.toString()
+            : String.format("%s %s", record, space.region(record.z()));
     }
 
     public IndexDumper(Index<RECORD> index)
+    {
+        this(index, null);
+    }
+
+    // Describes each record along with the Region represented by its z-value.
+    public IndexDumper(Index<RECORD> index, Space space)
     {
         this.index = index;
+        this.space = (SpaceImpl) space;
     }
 
     private final Index<RECORD> index;
+    private final SpaceImpl space;
 }
@@ -0,0 +1,149 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.geophile.z.util;
+
+/**
+ * Sorts, in place, a sequence whose elements are accessed by position, (e.g. parallel arrays, or the entries of a
+ * mapped file), so that nothing has to be copied into an array of objects first. The sort is an introsort:
+ * quicksort, switching to heapsort if recursion gets too deep, and insertion sort for short ranges. It is not
+ * stable, so ties that matter have to be broken by {@link Sortable#less(long, long)}.
+ */
+
+public final class IntroSort
+{
+    /**
+     * Sorts the elements in positions [from, to).
+     * @param sortable The elements to be sorted.
+     * @param from Position of the first element to be sorted.
+     * @param to Position following the last element to be sorted.
+     */
+    public static void sort(Sortable sortable, long from, long to)
+    {
+        sort(sortable, from, to, 2 * (64 - Long.numberOfLeadingZeros(to - from)));
+    }
+
+    // For use by this class
+
+    private static void sort(Sortable sortable, long from, long to, int depthLimit)
+    {
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            if (depthLimit-- == 0) {
+                heapSort(sortable, from, to);
+                return;
+            }
+            long p = partition(sortable, from, to);
+            // Recurse on the smaller side, iterate on the larger.
+            if (p - from < to - p - 1) {
+                sort(sortable, from, p, depthLimit);
+                from = p + 1;
+            } else {
+                sort(sortable, p + 1, to, depthLimit);
+                to = p;
+            }
+        }
+        insertionSort(sortable, from, to);
+    }
+
+    // Partitions [from, to) around a median-of-three pivot, and returns the final position of the pivot.
+    private static long partition(Sortable sortable, long from, long to)
+    {
+        long last = to - 1;
+        long mid = (from + last) >>> 1;
+        if (sortable.less(mid, from)) {
+            swap(sortable, mid, from);
+        }
+        if (sortable.less(last, from)) {
+            swap(sortable, last, from);
+        }
+        if (sortable.less(last, mid)) {
+            swap(sortable, last, mid);
+        }
+        // Pivot is now at mid. Move it to last.
+        swap(sortable, mid, last);
+        long store = from;
+        for (long i = from; i < last; i++) {
+            if (sortable.less(i, last)) {
+                swap(sortable, i, store++);
+            }
+        }
+        swap(sortable, store, last);
+        return store;
+    }
+
+    private static void insertionSort(Sortable sortable, long from, long to)
+    {
+        for (long i = from + 1; i < to; i++) {
+            for (long j = i; j > from && sortable.less(j, j - 1); j--) {
+                sortable.swap(j, j - 1);
+            }
+        }
+    }
+
+    private static void heapSort(Sortable sortable, long from, long to)
+    {
+        long n = to - from;
+        for (long i = n / 2 - 1; i >= 0; i--) {
+            siftDown(sortable, from, i, n);
+        }
+        for (long end = n - 1; end > 0; end--) {
+            swap(sortable, from, from + end);
+            siftDown(sortable, from, 0, end);
+        }
+    }
+
+    private static void siftDown(Sortable sortable, long from, long i, long n)
+    {
+        long child;
+        while ((child = 2 * i + 1) < n) {
+            if (child + 1 < n && sortable.less(from + child, from + child + 1)) {
+                child++;
+            }
+            if (!sortable.less(from + i, from + child)) {
+                return;
+            }
+            sortable.swap(from + i, from + child);
+            i = child;
+        }
+    }
+
+    private static void swap(Sortable sortable, long i, long j)
+    {
+        if (i != j) {
+            sortable.swap(i, j);
+        }
+    }
+
+    private IntroSort()
+    {}
+
+    // Class state
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    // Inner classes
+
+    /**
+     * A sequence of elements to be sorted by {@link IntroSort#sort(IntroSort.Sortable, long, long)}.
+     */
+    public interface Sortable
+    {
+        /**
+         * Compares two elements.
+         * @param i Position of an element.
+         * @param j Position of an element.
+         * @return true iff the element at position i precedes the element at position j.
+         */
+        boolean less(long i, long j);
+
+        /**
+         * Exchanges two elements.
+         * @param i Position of an element.
+         * @param j Position of another element.
+         */
+        void swap(long i, long j);
+    }
+}